@@ -0,0 +1,44 @@
+package com.tzavellas.dyndelegate;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with 1, 2, 4, ... threads up to the number of
+ * processors, with the GC profiler to report the allocation rate.
+ * <p>
+ * The usual JMH command line options can be used to select benchmarks
+ * or change the iterations, for example:
+ * <pre>
+ * java -jar target/benchmarks.jar DispatchBenchmark -f 1
+ * </pre>
+ * When the <code>-t</code> option is given only that number of threads
+ * is used.</p>
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if (cmd.getThreads().hasValue()) {
+			run(cmd, cmd.getThreads().get());
+			return;
+		}
+		int max = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= max; threads *= 2)
+			run(cmd, threads);
+		if (Integer.bitCount(max) != 1)
+			run(cmd, max);
+	}
+
+	private static void run(CommandLineOptions cmd, int threads) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.parent(cmd)
+				.threads(threads)
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
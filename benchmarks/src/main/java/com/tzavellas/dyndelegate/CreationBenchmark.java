@@ -0,0 +1,65 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The cost of creating delegates, and of the proxy creation that
+ * <code>ProxyClassCache</code> optimizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CreationBenchmark {
+
+	private static final InvocationHandler HANDLER = (proxy, method, args) -> null;
+	private static final Class<?>[] INTERFACES = { Stubs.Calculator.class };
+
+	private DynamicDelegateFactory factory;
+	private DynamicDelegateFactory generating;
+	private ClassLoader loader;
+
+	@Setup
+	public void setUp() {
+		factory = new DynamicDelegateFactory(new EJBExceptionConverter(), new Stubs.HomeFactory());
+		generating = new DynamicDelegateFactory(new EJBExceptionConverter(), new Stubs.HomeFactory());
+		generating.setGenerateDelegateClasses(true);
+		loader = Thread.currentThread().getContextClassLoader();
+	}
+
+	@Benchmark
+	public Object createLocalDelegate() {
+		return factory.createLocalDelegate("ejb/Calculator", Stubs.LocalHome.class, Stubs.Calculator.class);
+	}
+
+	@Benchmark
+	public Object createRemoteDelegate() {
+		return factory.createRemoteDelegate("ejb/Calculator", Stubs.RemoteHome.class, Stubs.Calculator.class);
+	}
+
+	@Benchmark
+	public Object createGeneratedDelegate() {
+		return generating.createLocalDelegate("ejb/Calculator", Stubs.LocalHome.class, Stubs.Calculator.class);
+	}
+
+	@Benchmark
+	public Object newProxyInstance() {
+		return Proxy.newProxyInstance(loader, INTERFACES, HANDLER);
+	}
+
+	@Benchmark
+	public Object cachedProxyConstructor() {
+		Constructor constructor = ProxyClassCache.getConstructor(loader, Stubs.Calculator.class);
+		return ProxyClassCache.newInstance(constructor, HANDLER);
+	}
+}
@@ -0,0 +1,84 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The cost of calling a business method through a delegate compared to
+ * calling the bean directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+	private Stubs.Calculator direct;
+	private Stubs.Calculator proxy;
+	private Stubs.Calculator generated;
+	private Stubs.Calculator pooled;
+	private Stubs.Calculator intercepted;
+	private int a = 1;
+	private String s = "value";
+
+	@Setup
+	public void setUp() {
+		direct = new Stubs.CalculatorBean();
+
+		DynamicDelegateFactory factory = newFactory();
+		proxy = (Stubs.Calculator) factory.createLocalDelegate("ejb/Calculator",
+				Stubs.LocalHome.class, Stubs.Calculator.class);
+		pooled = (Stubs.Calculator) factory.createPooledLocalDelegate("ejb/Calculator",
+				Stubs.LocalHome.class, Stubs.Calculator.class, new PoolConfig());
+
+		DynamicDelegateFactory generating = newFactory();
+		generating.setGenerateDelegateClasses(true);
+		generated = (Stubs.Calculator) generating.createLocalDelegate("ejb/Calculator",
+				Stubs.LocalHome.class, Stubs.Calculator.class);
+
+		DynamicDelegateFactory intercepting = newFactory();
+		intercepting.addInterceptor(DelegateInvocation::proceed);
+		intercepted = (Stubs.Calculator) intercepting.createLocalDelegate("ejb/Calculator",
+				Stubs.LocalHome.class, Stubs.Calculator.class);
+	}
+
+	private static DynamicDelegateFactory newFactory() {
+		return new DynamicDelegateFactory(new EJBExceptionConverter(), new Stubs.HomeFactory());
+	}
+
+	@Benchmark
+	public int direct() {
+		return direct.add(a, a);
+	}
+
+	@Benchmark
+	public int proxy() {
+		return proxy.add(a, a);
+	}
+
+	@Benchmark
+	public String proxyObjectArgument() {
+		return proxy.echo(s);
+	}
+
+	@Benchmark
+	public int generatedClass() {
+		return generated.add(a, a);
+	}
+
+	@Benchmark
+	public int pooled() {
+		return pooled.add(a, a);
+	}
+
+	@Benchmark
+	public int intercepted() {
+		return intercepted.add(a, a);
+	}
+}
@@ -0,0 +1,108 @@
+package com.tzavellas.dyndelegate;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The cost of converting the exceptions of the EJBs, in isolation and as
+ * part of a failing delegate call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExceptionConversionBenchmark {
+
+	private final ThrowableConverter ejbConverter = new EJBExceptionConverter();
+	private final ThrowableConverter wrapper = new RuntimeExceptionWrapper();
+	private final EJBExceptionConverter lightweightConverter = new EJBExceptionConverter();
+
+	private final Throwable remoteWithCause = new RemoteException("failure", new IllegalStateException());
+	private final Throwable remote = new RemoteException("failure");
+	private final Throwable deepRemote = deepRemoteException(40);
+	private final Throwable ejbException = Stubs.ejbException();
+	private final Throwable applicationException = new Stubs.ApplicationException("failure");
+
+	private Stubs.Calculator failing;
+
+	@Setup
+	public void setUp() {
+		lightweightConverter.setLightweightWrappers(true);
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new FailingHomeFactory());
+		failing = (Stubs.Calculator) factory.createLocalDelegate("ejb/Failing",
+				Stubs.LocalHome.class, Stubs.Calculator.class);
+	}
+
+	@Benchmark
+	public Throwable unwrapRemoteException() {
+		return ejbConverter.convert(remoteWithCause);
+	}
+
+	@Benchmark
+	public Throwable wrapRemoteException() {
+		return ejbConverter.convert(remote);
+	}
+
+	@Benchmark
+	public Throwable wrapDeepRemoteException() {
+		return ejbConverter.convert(deepRemote);
+	}
+
+	@Benchmark
+	public Throwable wrapDeepRemoteExceptionLightweight() {
+		return lightweightConverter.convert(deepRemote);
+	}
+
+	@Benchmark
+	public Throwable unwrapEJBException() {
+		return ejbConverter.convert(ejbException);
+	}
+
+	@Benchmark
+	public Throwable passApplicationException() {
+		return ejbConverter.convert(applicationException);
+	}
+
+	@Benchmark
+	public Throwable runtimeExceptionWrapper() {
+		return wrapper.convert(applicationException);
+	}
+
+	@Benchmark
+	public Object failingDelegateCall() {
+		try {
+			return failing.echo("value");
+		} catch (IllegalStateException e) {
+			return e;
+		}
+	}
+
+	/**
+	 * A RemoteException thrown the specified number of frames deep, like
+	 * the exceptions of an EJB call through a container.
+	 */
+	private static Throwable deepRemoteException(int depth) {
+		if (depth == 0)
+			return new RemoteException("failure");
+		return deepRemoteException(depth - 1);
+	}
+
+	private static class FailingHomeFactory extends Stubs.HomeFactory {
+		private final Stubs.LocalHome home = new Stubs.LocalHomeImpl(new Stubs.CalculatorBean() {
+			public String echo(String s) {
+				throw Stubs.ejbException();
+			}
+		});
+		public javax.ejb.EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+			return home;
+		}
+	}
+}
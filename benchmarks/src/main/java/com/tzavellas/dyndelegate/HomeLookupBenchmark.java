@@ -0,0 +1,68 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The cost of looking up homes with the <code>EJBHomeFactory</code>
+ * implementations against an in-memory JNDI provider.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HomeLookupBenchmark {
+
+	private static final String JNDI_NAME = "ejb/Calculator";
+
+	private SimpleEJBHomeFactory simple;
+	private SimpleEJBHomeFactory threadLocal;
+	private SimpleEJBHomeFactory pooled;
+	private CachingEJBHomeFactory caching;
+
+	@Setup
+	public void setUp() {
+		Stubs.InMemoryContextFactory.bind(JNDI_NAME, new Stubs.LocalHomeImpl(new Stubs.CalculatorBean()));
+		simple = new SimpleEJBHomeFactory(
+				new SimpleContextProvider(Stubs.InMemoryContextFactory.environment()));
+		threadLocal = new SimpleEJBHomeFactory(
+				new ThreadLocalContextProvider(Stubs.InMemoryContextFactory.environment()));
+		pooled = new SimpleEJBHomeFactory(
+				new PooledContextProvider(Stubs.InMemoryContextFactory.environment()));
+		caching = new CachingEJBHomeFactory(simple);
+	}
+
+	@TearDown
+	public void tearDown() {
+		simple.close();
+		threadLocal.close();
+		pooled.close();
+	}
+
+	@Benchmark
+	public Object simpleContextProvider() {
+		return simple.lookupLocal(JNDI_NAME, Stubs.LocalHome.class);
+	}
+
+	@Benchmark
+	public Object threadLocalContextProvider() {
+		return threadLocal.lookupLocal(JNDI_NAME, Stubs.LocalHome.class);
+	}
+
+	@Benchmark
+	public Object pooledContextProvider() {
+		return pooled.lookupLocal(JNDI_NAME, Stubs.LocalHome.class);
+	}
+
+	@Benchmark
+	public Object cachingHomeFactory() {
+		return caching.lookupLocal(JNDI_NAME, Stubs.LocalHome.class);
+	}
+}
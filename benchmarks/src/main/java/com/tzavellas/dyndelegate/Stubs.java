@@ -0,0 +1,121 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.ejb.EJBException;
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+import javax.ejb.EJBMetaData;
+import javax.ejb.EJBObject;
+import javax.ejb.Handle;
+import javax.ejb.HomeHandle;
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.spi.InitialContextFactory;
+
+/**
+ * In-process stand-ins for the EJB container and the JNDI provider, so
+ * that the benchmarks measure the overhead of dyndelegate and nothing else.
+ */
+public final class Stubs {
+
+	private Stubs() { }
+
+	public interface Calculator {
+		int add(int a, int b);
+		String echo(String s);
+	}
+
+	public static class CalculatorBean implements Calculator {
+		public int add(int a, int b) { return a + b; }
+		public String echo(String s) { return s; }
+	}
+
+	/** A remote EJB object that is also the bean, like a co-located EJB. */
+	public static class RemoteCalculatorBean extends CalculatorBean implements EJBObject {
+		public EJBHome getEJBHome() { return null; }
+		public Handle getHandle() { return null; }
+		public Object getPrimaryKey() { return null; }
+		public boolean isIdentical(EJBObject obj) { return obj == this; }
+		public void remove() { }
+	}
+
+	public interface LocalHome extends EJBLocalHome {
+		Object create();
+	}
+
+	public static class LocalHomeImpl implements LocalHome {
+		private final Object bean;
+		public LocalHomeImpl(Object bean) { this.bean = bean; }
+		public Object create() { return bean; }
+		public void remove(Object primaryKey) { }
+	}
+
+	public interface RemoteHome extends EJBHome {
+		RemoteCalculatorBean create() throws RemoteException;
+	}
+
+	public static class RemoteHomeImpl implements RemoteHome {
+		private final RemoteCalculatorBean bean = new RemoteCalculatorBean();
+		public RemoteCalculatorBean create() { return bean; }
+		public EJBMetaData getEJBMetaData() { return null; }
+		public HomeHandle getHomeHandle() { return null; }
+		public void remove(Handle handle) { }
+		public void remove(Object primaryKey) { }
+	}
+
+	public static class HomeFactory implements EJBHomeFactory {
+		private final LocalHome localHome = new LocalHomeImpl(new CalculatorBean());
+		private final RemoteHome remoteHome = new RemoteHomeImpl();
+		public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) { return localHome; }
+		public EJBHome lookupRemote(String jndiName, Class homeInterface) { return remoteHome; }
+	}
+
+	/**
+	 * A JNDI provider that keeps the bindings in memory.
+	 */
+	public static class InMemoryContextFactory implements InitialContextFactory {
+
+		static final Map<String, Object> bindings = new ConcurrentHashMap<String, Object>();
+
+		public static Hashtable<String, String> environment() {
+			Hashtable<String, String> env = new Hashtable<String, String>();
+			env.put(Context.INITIAL_CONTEXT_FACTORY, InMemoryContextFactory.class.getName());
+			return env;
+		}
+
+		public static void bind(String name, Object value) {
+			bindings.put(name, value);
+		}
+
+		public Context getInitialContext(Hashtable<?, ?> environment) {
+			return (Context) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class[] { Context.class },
+					(proxy, method, args) -> {
+						switch (method.getName()) {
+						case "lookup":
+							Object bound = bindings.get(String.valueOf(args[0]));
+							if (bound == null)
+								throw new NameNotFoundException(String.valueOf(args[0]));
+							return bound;
+						case "close":
+							return null;
+						default:
+							throw new UnsupportedOperationException(method.getName());
+						}
+					});
+		}
+	}
+
+	public static class ApplicationException extends Exception {
+		public ApplicationException(String message) { super(message); }
+	}
+
+	public static EJBException ejbException() {
+		return new EJBException(new IllegalStateException("failure"));
+	}
+}
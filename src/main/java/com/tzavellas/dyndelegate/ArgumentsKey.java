@@ -0,0 +1,96 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+
+/**
+ * A key that identifies the invocation of a method of an EJB with a set of
+ * arguments.
+ * <p>
+ * Two keys are equal when they refer to the same JNDI name and method and
+ * their arguments are equal. Array arguments are compared by their
+ * contents.</p>
+ *
+ * @author Spiros Tzavellas
+ */
+class ArgumentsKey {
+
+	private final String jndiName;
+	private final Method method;
+	private final Object[] args;
+	private final int hash;
+
+
+	ArgumentsKey(DelegateInvocation invocation) {
+		this(invocation.getJndiName(), invocation.getMethod(), invocation.getArguments());
+	}
+
+
+	ArgumentsKey(String jndiName, Method method, Object[] args) {
+		this.jndiName = jndiName;
+		this.method = method;
+		this.args = (args == null) ? new Object[0] : (Object[]) args.clone();
+		int h = (jndiName == null ? 0 : jndiName.hashCode()) * 31 + method.hashCode();
+		for (int i = 0; i < this.args.length; i++)
+			h = h * 31 + hash(this.args[i]);
+		this.hash = h;
+	}
+
+
+	Method getMethod() {
+		return method;
+	}
+
+
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ArgumentsKey))
+			return false;
+		ArgumentsKey other = (ArgumentsKey) obj;
+		if (hash != other.hash || !method.equals(other.method)
+				|| args.length != other.args.length)
+			return false;
+		if (jndiName == null ? other.jndiName != null : !jndiName.equals(other.jndiName))
+			return false;
+		for (int i = 0; i < args.length; i++) {
+			if (!equal(args[i], other.args[i]))
+				return false;
+		}
+		return true;
+	}
+
+
+	public int hashCode() {
+		return hash;
+	}
+
+
+	private static int hash(Object o) {
+		if (o == null)
+			return 0;
+		if (!o.getClass().isArray())
+			return o.hashCode();
+		int h = 1;
+		int length = Array.getLength(o);
+		for (int i = 0; i < length; i++)
+			h = h * 31 + hash(Array.get(o, i));
+		return h;
+	}
+
+
+	private static boolean equal(Object o1, Object o2) {
+		if (o1 == o2)
+			return true;
+		if (o1 == null || o2 == null)
+			return false;
+		if (!o1.getClass().isArray() || o1.getClass() != o2.getClass())
+			return o1.equals(o2);
+		int length = Array.getLength(o1);
+		if (length != Array.getLength(o2))
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (!equal(Array.get(o1, i), Array.get(o2, i)))
+				return false;
+		}
+		return true;
+	}
+}
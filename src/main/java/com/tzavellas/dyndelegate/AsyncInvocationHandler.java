@@ -0,0 +1,82 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The <code>InvocationHandler</code> of the asynchronous delegates.
+ * <p>
+ * Each method of the asynchronous companion interface is mapped to the
+ * business method with the same name and parameters. An invocation submits
+ * a task to the <code>TaskExecutor</code> that calls the business method on
+ * the wrapped delegate and completes the returned
+ * <code>FutureResult</code>. Since the wrapped delegate converts the
+ * exceptions of the EJB, the <code>FutureResult</code> completes with the
+ * converted exception.</p>
+ * 
+ * @author Spiros Tzavellas
+ */
+class AsyncInvocationHandler implements InvocationHandler {
+
+	private final Object delegate;
+	private final Map dispatchTable;
+	private final TaskExecutor executor;
+	
+	
+	AsyncInvocationHandler(Object delegate, Class businnessInterface, Class asyncInterface, TaskExecutor executor) {
+		this.delegate = delegate;
+		this.dispatchTable = createDispatchTable(businnessInterface, asyncInterface);
+		this.executor = executor;
+	}
+	
+	
+	private static Map createDispatchTable(Class businnessInterface, Class asyncInterface) {
+		Map table = new HashMap();
+		Method[] methods = asyncInterface.getMethods();
+		for (int i = 0; i < methods.length; i++) {
+			Method async = methods[i];
+			if (!async.getReturnType().isAssignableFrom(FutureResult.class))
+				throw new IllegalArgumentException("The method " + async
+						+ " must return " + FutureResult.class.getName());
+			try {
+				table.put(async, businnessInterface.getMethod(async.getName(), async.getParameterTypes()));
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("The business interface "
+						+ businnessInterface.getName() + " does not have a method matching " + async);
+			}
+		}
+		return Collections.unmodifiableMap(table);
+	}
+	
+	
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		final Method businessMethod = (Method) dispatchTable.get(method);
+		if (businessMethod == null) {
+			// one of the java.lang.Object methods
+			try {
+				return method.invoke(delegate, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+		
+		final Object[] arguments = args;
+		final FutureResult result = new FutureResult();
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					result.set(businessMethod.invoke(delegate, arguments));
+				} catch (InvocationTargetException e) {
+					result.setException(e.getTargetException());
+				} catch (Throwable t) {
+					result.setException(t);
+				}
+			}
+		});
+		return result;
+	}
+}
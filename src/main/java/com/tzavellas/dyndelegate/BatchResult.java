@@ -0,0 +1,50 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * The outcome of an item of a batch invocation.
+ *
+ * @see DynamicDelegateFactory#invokeBatch(Object, java.lang.reflect.Method, Object[][], int)
+ * @author Spiros Tzavellas
+ */
+public class BatchResult {
+
+	private final Object[] arguments;
+	private final Object result;
+	private final Throwable failure;
+
+	BatchResult(Object[] arguments, Object result, Throwable failure) {
+		this.arguments = arguments;
+		this.result = result;
+		this.failure = failure;
+	}
+
+	/** The arguments of the invocation. */
+	public Object[] getArguments() {
+		return arguments;
+	}
+
+	/** Whether the invocation completed without an exception. */
+	public boolean isSuccessful() {
+		return failure == null;
+	}
+
+	/**
+	 * The result of the invocation, or <code>null</code> if the invocation
+	 * failed or the method returns <code>void</code>.
+	 */
+	public Object getResult() {
+		return result;
+	}
+
+	/**
+	 * The (converted) exception that the invocation threw, or
+	 * <code>null</code> if the invocation succeeded.
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	public String toString() {
+		return "BatchResult[" + (failure == null ? "result: " + result : "failed: " + failure) + "]";
+	}
+}
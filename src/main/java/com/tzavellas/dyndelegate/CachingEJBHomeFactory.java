@@ -0,0 +1,281 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+import javax.ejb.NoSuchObjectLocalException;
+
+/**
+ * A caching implementation of the <code>EJBHomeFactory</code> interface.
+ * <p>
+ * The homes are looked up using another <code>EJBHomeFactory</code> (by
+ * default a <code>SimpleEJBHomeFactory</code>) and are kept in a size
+ * bounded cache that evicts the least recently used home. Optionally the
+ * cached homes expire after a configurable time to live.</p>
+ * <p>
+ * The returned homes are wrapped in dynamic proxies that implement the
+ * specified home interface. When a remote home throws a
+ * <code>RemoteException</code> (for example a
+ * <code>NoSuchObjectException</code> because the server was restarted),
+ * or a local home throws a <code>NoSuchObjectLocalException</code>, the
+ * home is evicted so that the next lookup gets a fresh one.</p>
+ * <p>
+ * When many threads lookup the same home at the same time, only the first
+ * one performs the lookup and the others wait for its result.</p>
+ *
+ * @see EJBHomeFactory
+ * @see SimpleEJBHomeFactory
+ * @author Spiros Tzavellas
+ */
+public class CachingEJBHomeFactory implements EJBHomeFactory {
+
+	/** The default maximum number of cached homes. */
+	public static final int DEFAULT_MAX_SIZE = 128;
+
+	private final EJBHomeFactory homeFactory;
+	private volatile int maxSize = DEFAULT_MAX_SIZE;
+	private volatile long timeToLive = 0;
+
+	private final Map cache = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > maxSize;
+		}
+	};
+
+
+	/**
+	 * Construct a <code>CachingEJBHomeFactory</code> that caches the homes
+	 * looked up by the specified <code>EJBHomeFactory</code>.
+	 */
+	public CachingEJBHomeFactory(EJBHomeFactory homeFactory) {
+		this.homeFactory = homeFactory;
+	}
+
+
+	/**
+	 * Construct a <code>CachingEJBHomeFactory</code> that caches the homes
+	 * looked up by a <code>SimpleEJBHomeFactory</code>.
+	 */
+	public CachingEJBHomeFactory() {
+		this(new SimpleEJBHomeFactory());
+	}
+
+
+	/**
+	 * Set the maximum number of homes to cache. When the cache is full the
+	 * least recently used home is evicted. The default is
+	 * {@value #DEFAULT_MAX_SIZE}.
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("The maximum size must be positive");
+		this.maxSize = maxSize;
+	}
+
+
+	/**
+	 * Set the time, in milliseconds, that a home stays in the cache after
+	 * it was looked up. A value of zero (the default) means that the homes
+	 * do not expire.
+	 */
+	public void setTimeToLive(long timeToLive) {
+		if (timeToLive < 0)
+			throw new IllegalArgumentException("The time to live cannot be negative");
+		this.timeToLive = timeToLive;
+	}
+
+
+	/** {@inheritDoc} */
+	public EJBHome lookupRemote(String jndiName, Class homeInterface) {
+		return (EJBHome) lookup(new Key(jndiName, homeInterface, true));
+	}
+
+
+	/** {@inheritDoc} */
+	public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+		return (EJBLocalHome) lookup(new Key(jndiName, homeInterface, false));
+	}
+
+
+	/**
+	 * Evict all the cached homes that are bound to the specified JNDI name.
+	 */
+	public void invalidate(String jndiName) {
+		synchronized (cache) {
+			for (Iterator i = cache.keySet().iterator(); i.hasNext(); ) {
+				if (((Key) i.next()).jndiName.equals(jndiName))
+					i.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * Evict all the cached homes.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+
+	/**
+	 * The number of cached homes.
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+
+	private Object lookup(Key key) {
+		Entry entry;
+		boolean owner = false;
+		synchronized (cache) {
+			entry = (Entry) cache.get(key);
+			if (entry == null || entry.isExpired(timeToLive)) {
+				entry = new Entry();
+				cache.put(key, entry);
+				owner = true;
+			}
+		}
+		if (owner) {
+			try {
+				Object home = key.remote
+						? (Object) homeFactory.lookupRemote(key.jndiName, key.homeInterface)
+						: (Object) homeFactory.lookupLocal(key.jndiName, key.homeInterface);
+				entry.setHome(wrap(home, key, entry));
+			} catch (RuntimeException e) {
+				evict(key, entry);
+				entry.setFailure(e);
+			} catch (Error e) {
+				evict(key, entry);
+				entry.setFailure(e);
+			}
+		}
+		return entry.getHome();
+	}
+
+
+	private Object wrap(Object home, Key key, Entry entry) {
+		return Proxy.newProxyInstance(key.homeInterface.getClassLoader(),
+				new Class[] { key.homeInterface },
+				new HomeInvocationHandler(home, key, entry));
+	}
+
+
+	private void evict(Key key, Entry entry) {
+		synchronized (cache) {
+			if (cache.get(key) == entry)
+				cache.remove(key);
+		}
+	}
+
+
+	private static class Key {
+		final String jndiName;
+		final Class homeInterface;
+		final boolean remote;
+
+		Key(String jndiName, Class homeInterface, boolean remote) {
+			this.jndiName = jndiName;
+			this.homeInterface = homeInterface;
+			this.remote = remote;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return jndiName.equals(other.jndiName)
+					&& homeInterface.equals(other.homeInterface)
+					&& remote == other.remote;
+		}
+
+		public int hashCode() {
+			return jndiName.hashCode() * 31 + homeInterface.hashCode() + (remote ? 1 : 0);
+		}
+	}
+
+
+	/**
+	 * A cached home, or a lookup in progress.
+	 */
+	private static class Entry {
+		private Object home;
+		private Throwable failure;
+		private boolean done;
+		private long loadedAt;
+
+		synchronized void setHome(Object home) {
+			this.home = home;
+			this.loadedAt = System.currentTimeMillis();
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized void setFailure(Throwable failure) {
+			this.failure = failure;
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized Object getHome() {
+			boolean interrupted = false;
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof Error)
+				throw (Error) failure;
+			return home;
+		}
+
+		synchronized boolean isExpired(long timeToLive) {
+			return done && timeToLive > 0
+					&& System.currentTimeMillis() - loadedAt >= timeToLive;
+		}
+	}
+
+
+	private class HomeInvocationHandler implements InvocationHandler {
+
+		private final Object home;
+		private final Key key;
+		private final Entry entry;
+
+		HomeInvocationHandler(Object home, Key key, Entry entry) {
+			this.home = home;
+			this.key = key;
+			this.entry = entry;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(home, args);
+			} catch (InvocationTargetException e) {
+				Throwable target = e.getTargetException();
+				if (target instanceof RemoteException || target instanceof NoSuchObjectLocalException)
+					evict(key, entry);
+				throw target;
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * Thrown when an invocation through a delegate is rejected because the
+ * EJB has reached the number of concurrent invocations allowed by a
+ * <code>ConcurrencyLimiter</code>.
+ * 
+ * @see ConcurrencyLimiter
+ * @author Spiros Tzavellas
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ConcurrencyLimitExceededException(String message) {
+		super(message);
+	}
+
+}
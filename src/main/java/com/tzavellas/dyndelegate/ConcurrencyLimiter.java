@@ -0,0 +1,208 @@
+package com.tzavellas.dyndelegate;
+
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A <code>DelegateInterceptor</code> that limits the number of concurrent
+ * invocations per JNDI name, adapting the limit to the behavior of the
+ * EJB.
+ * <p>
+ * The limit is estimated with an AIMD (additive increase, multiplicative
+ * decrease) algorithm. Each invocation that completes within the latency
+ * threshold increases the limit by <code>1/limit</code>, so the limit grows
+ * by one for every <i>limit</i> successful invocations. An invocation that
+ * is slower than the threshold, or that fails with a system exception (a
+ * <code>RemoteException</code>, a <code>RuntimeException</code> or an
+ * <code>Error</code>), multiplies the limit by the backoff ratio. The limit
+ * is decreased at most once per sampling window: the invocations that were
+ * already in flight when the limit was decreased do not decrease it again,
+ * so a burst of slow invocations backs off once. The limit only grows when
+ * it is actually used, so it does not drift upwards while the load is
+ * low. The limit is always kept within the limit range.</p>
+ * <p>
+ * When the limit is reached, the invocations either fail immediately with a
+ * <code>ConcurrencyLimitExceededException</code> (the default) or wait for
+ * up to <code>maxWait</code> milliseconds for another invocation to
+ * complete.</p>
+ *
+ * @see DynamicDelegateFactory#addInterceptor(DelegateInterceptor)
+ * @author Spiros Tzavellas
+ */
+public class ConcurrencyLimiter implements DelegateInterceptor {
+
+	private volatile int initialLimit = 20;
+	private volatile int minLimit = 1;
+	private volatile int maxLimit = 200;
+	private volatile double backoffRatio = 0.9;
+	private volatile long latencyThreshold = 1000;
+	private volatile long maxWait = 0;
+
+	/** JNDI name -> Limit */
+	private final Map limits = new HashMap();
+
+
+	/**
+	 * Set the limit that is used for a JNDI name before any invocation
+	 * completes. It is clamped to the limit range. The default is 20.
+	 */
+	public void setInitialLimit(int initialLimit) {
+		if (initialLimit < 1)
+			throw new IllegalArgumentException("The initial limit must be positive");
+		this.initialLimit = initialLimit;
+	}
+
+
+	/**
+	 * Set the bounds of the limit. The defaults are 1 and 200.
+	 */
+	public void setLimitRange(int minLimit, int maxLimit) {
+		if (minLimit < 1 || maxLimit < minLimit)
+			throw new IllegalArgumentException("Invalid limit range [" + minLimit + ", " + maxLimit + "]");
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+
+
+	/**
+	 * Set the ratio that the limit is multiplied with when an invocation is
+	 * slow or fails. The default is 0.9.
+	 */
+	public void setBackoffRatio(double backoffRatio) {
+		if (backoffRatio <= 0 || backoffRatio >= 1)
+			throw new IllegalArgumentException("The backoff ratio must be between 0 and 1");
+		this.backoffRatio = backoffRatio;
+	}
+
+
+	/**
+	 * Set the duration, in milliseconds, over which an invocation is
+	 * considered slow and decreases the limit. The default is 1000. A value
+	 * of zero means that only failures decrease the limit.
+	 */
+	public void setLatencyThreshold(long latencyThreshold) {
+		if (latencyThreshold < 0)
+			throw new IllegalArgumentException("The latency threshold cannot be negative");
+		this.latencyThreshold = latencyThreshold;
+	}
+
+
+	/**
+	 * Set the time, in milliseconds, that an invocation waits when the
+	 * limit is reached before it is rejected. The default is zero, the
+	 * invocations are rejected immediately.
+	 */
+	public void setMaxWait(long maxWait) {
+		if (maxWait < 0)
+			throw new IllegalArgumentException("The maximum wait cannot be negative");
+		this.maxWait = maxWait;
+	}
+
+
+	/**
+	 * Return a snapshot of the statistics for the specified JNDI name.
+	 */
+	public LimiterStatistics getStatistics(String jndiName) {
+		return getLimit(jndiName).getStatistics();
+	}
+
+
+	public Object invoke(DelegateInvocation invocation) throws Throwable {
+		Limit limit = getLimit(invocation.getJndiName());
+		long window = limit.acquire(invocation.getJndiName());
+		long start = System.currentTimeMillis();
+		Throwable failure = null;
+		try {
+			return invocation.proceed();
+		} catch (Throwable t) {
+			failure = t;
+			throw t;
+		} finally {
+			long elapsed = System.currentTimeMillis() - start;
+			boolean dropped = isSystemException(failure)
+					|| (latencyThreshold > 0 && elapsed > latencyThreshold);
+			limit.release(dropped, window);
+		}
+	}
+
+
+	private Limit getLimit(String jndiName) {
+		synchronized (limits) {
+			Limit limit = (Limit) limits.get(jndiName);
+			if (limit == null) {
+				limit = new Limit(Math.max(minLimit, Math.min(maxLimit, initialLimit)));
+				limits.put(jndiName, limit);
+			}
+			return limit;
+		}
+	}
+
+
+	private static boolean isSystemException(Throwable t) {
+		return t instanceof RuntimeException
+			|| t instanceof Error
+			|| t instanceof RemoteException;
+	}
+
+
+	/**
+	 * The estimated limit and the in-flight invocations of a JNDI name.
+	 */
+	private class Limit {
+		private double limit;
+		private int inFlight;
+		/** incremented on each decrease of the limit */
+		private long window;
+		private long accepted;
+		private long rejected;
+
+		Limit(int initialLimit) {
+			this.limit = initialLimit;
+		}
+
+		/**
+		 * @return the sampling window that the invocation started in
+		 */
+		synchronized long acquire(String jndiName) {
+			if (inFlight >= (int) limit && maxWait > 0) {
+				long deadline = System.currentTimeMillis() + maxWait;
+				long remaining = maxWait;
+				while (inFlight >= (int) limit && remaining > 0) {
+					try {
+						wait(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+					remaining = deadline - System.currentTimeMillis();
+				}
+			}
+			if (inFlight >= (int) limit) {
+				rejected++;
+				throw new ConcurrencyLimitExceededException("The limit of " + (int) limit
+						+ " concurrent invocations for '" + jndiName + "' was reached");
+			}
+			inFlight++;
+			accepted++;
+			return window;
+		}
+
+		synchronized void release(boolean dropped, long startWindow) {
+			if (dropped) {
+				if (startWindow == window) {
+					limit = Math.max(minLimit, limit * backoffRatio);
+					window++;
+				}
+			} else if (inFlight * 2 >= limit) {
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+			inFlight--;
+			notifyAll();
+		}
+
+		synchronized LimiterStatistics getStatistics() {
+			return new LimiterStatistics((int) limit, inFlight, accepted, rejected);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.tzavellas.dyndelegate;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+/**
+ * A strategy interface for providing the JNDI <code>Context</code> that
+ * an <code>EJBHomeFactory</code> uses to lookup the EJB homes.
+ * <p>
+ * Every context obtained with {@link #getContext()} must be given back
+ * with {@link #releaseContext(Context)} after a successful lookup, or
+ * with {@link #invalidateContext(Context)} if the lookup failed and the
+ * context might not be usable any more.</p>
+ * 
+ * @see SimpleContextProvider
+ * @see ThreadLocalContextProvider
+ * @see PooledContextProvider
+ * 
+ * @author Spiros Tzavellas
+ */
+public interface ContextProvider {
+
+	/**
+	 * Return a JNDI context. The context is used by one thread at a time
+	 * until it is released.
+	 * 
+	 * @throws NamingException if the context cannot be created
+	 */
+	Context getContext() throws NamingException;
+	
+	/**
+	 * Give back a context obtained from this provider.
+	 */
+	void releaseContext(Context ctx);
+	
+	/**
+	 * Give back a context that failed and must not be used again.
+	 */
+	void invalidateContext(Context ctx);
+	
+	/**
+	 * Close all the contexts that this provider holds. The provider
+	 * must not be used after it is closed.
+	 */
+	void close();
+
+}
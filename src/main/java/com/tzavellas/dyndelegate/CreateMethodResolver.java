@@ -0,0 +1,157 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the <code>create</code> method of an EJB home that matches
+ * a set of arguments and caches the result per home class and argument
+ * classes.
+ * <p>
+ * A <code>create</code> method matches when every argument is assignable
+ * to the corresponding parameter (wrappers match primitive parameters and
+ * <code>null</code> matches any reference parameter). When more than one
+ * method matches, the most specific one is chosen, like the Java compiler
+ * would do.</p>
+ *
+ * @author Spiros Tzavellas
+ */
+class CreateMethodResolver {
+
+	private static final Map WRAPPERS = new HashMap();
+	static {
+		WRAPPERS.put(Boolean.TYPE, Boolean.class);
+		WRAPPERS.put(Byte.TYPE, Byte.class);
+		WRAPPERS.put(Character.TYPE, Character.class);
+		WRAPPERS.put(Short.TYPE, Short.class);
+		WRAPPERS.put(Integer.TYPE, Integer.class);
+		WRAPPERS.put(Long.TYPE, Long.class);
+		WRAPPERS.put(Float.TYPE, Float.class);
+		WRAPPERS.put(Double.TYPE, Double.class);
+	}
+
+	/** Signature -> Method */
+	private final Map cache = new HashMap();
+
+
+	/**
+	 * Return the <code>create</code> method of the specified home class that
+	 * can be called with the specified arguments.
+	 *
+	 * @throws IllegalArgumentException if no method or more than one equally
+	 *         specific methods match the arguments
+	 */
+	Method resolve(Class homeClass, Object[] args) {
+		Signature signature = new Signature(homeClass, args);
+		Method create;
+		synchronized (cache) {
+			create = (Method) cache.get(signature);
+		}
+		if (create == null) {
+			create = findCreateMethod(homeClass, signature.argClasses);
+			synchronized (cache) {
+				cache.put(signature, create);
+			}
+		}
+		return create;
+	}
+
+
+	private static Method findCreateMethod(Class homeClass, Class[] argClasses) {
+		Method[] methods = homeClass.getMethods();
+		List candidates = new ArrayList();
+		for (int i = 0; i < methods.length; i++) {
+			if (methods[i].getName().equals("create") && isApplicable(methods[i], argClasses))
+				candidates.add(methods[i]);
+		}
+		if (candidates.isEmpty())
+			throw new IllegalArgumentException("The home " + homeClass.getName()
+					+ " does not have a create method matching the specified arguments");
+
+		Method mostSpecific = (Method) candidates.get(0);
+		for (Iterator i = candidates.iterator(); i.hasNext(); ) {
+			Method candidate = (Method) i.next();
+			if (isMoreSpecific(candidate, mostSpecific))
+				mostSpecific = candidate;
+		}
+		for (Iterator i = candidates.iterator(); i.hasNext(); ) {
+			Method candidate = (Method) i.next();
+			if (candidate != mostSpecific && !isMoreSpecific(mostSpecific, candidate))
+				throw new IllegalArgumentException("The create methods " + mostSpecific
+						+ " and " + candidate + " are ambiguous for the specified arguments");
+		}
+		return mostSpecific;
+	}
+
+
+	private static boolean isApplicable(Method method, Class[] argClasses) {
+		Class[] params = method.getParameterTypes();
+		if (params.length != argClasses.length)
+			return false;
+		for (int i = 0; i < params.length; i++) {
+			if (argClasses[i] == null) {
+				if (params[i].isPrimitive())
+					return false;
+			} else if (!wrapper(params[i]).isAssignableFrom(argClasses[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	private static boolean isMoreSpecific(Method m1, Method m2) {
+		Class[] p1 = m1.getParameterTypes();
+		Class[] p2 = m2.getParameterTypes();
+		for (int i = 0; i < p1.length; i++) {
+			if (!p2[i].isAssignableFrom(p1[i]))
+				return false;
+		}
+		return true;
+	}
+
+
+	private static Class wrapper(Class type) {
+		Class wrapper = (Class) WRAPPERS.get(type);
+		return (wrapper == null) ? type : wrapper;
+	}
+
+
+	private static class Signature {
+		final Class homeClass;
+		final Class[] argClasses;
+		private final int hash;
+
+		Signature(Class homeClass, Object[] args) {
+			this.homeClass = homeClass;
+			this.argClasses = new Class[args.length];
+			int h = homeClass.hashCode();
+			for (int i = 0; i < args.length; i++) {
+				argClasses[i] = (args[i] == null) ? null : args[i].getClass();
+				h = h * 31 + (argClasses[i] == null ? 0 : argClasses[i].hashCode());
+			}
+			this.hash = h;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Signature))
+				return false;
+			Signature other = (Signature) obj;
+			if (homeClass != other.homeClass || argClasses.length != other.argClasses.length)
+				return false;
+			for (int i = 0; i < argClasses.length; i++) {
+				if (argClasses[i] != other.argClasses[i])
+					return false;
+			}
+			return true;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * A thread scoped deadline for the invocations of the delegates.
+ * <p>
+ * A deadline starts with {@link #begin(long)} and must be ended, in a
+ * <code>finally</code> block, with {@link #end()}:</p>
+ * <pre>
+ * Deadline deadline = Deadline.begin(2000);
+ * try {
+ *     catalog.find(id);
+ *     orders.place(order);
+ * } finally {
+ *     deadline.end();
+ * }
+ * </pre>
+ * <p>
+ * While a deadline is active, a <code>TimeoutInterceptor</code> fails the
+ * invocations that do not complete before it. Deadlines nest: a nested
+ * deadline never expires after the enclosing one, so a call can shrink the
+ * time of the calls it makes but not extend it. The interceptor runs each
+ * invocation with the deadline of the invocation, so the delegate calls
+ * that an in-process bean makes inherit it.</p>
+ *
+ * @see TimeoutInterceptor
+ * @author Spiros Tzavellas
+ */
+public final class Deadline {
+
+	private static final ThreadLocal current = new ThreadLocal();
+
+	private final long expiresAt;
+	private final Deadline previous;
+
+
+	private Deadline(long expiresAt, Deadline previous) {
+		this.expiresAt = expiresAt;
+		this.previous = previous;
+	}
+
+
+	/**
+	 * Start a deadline for the current thread that expires after the
+	 * specified time, or when the enclosing deadline expires if that is
+	 * earlier.
+	 *
+	 * @param timeout the time in milliseconds
+	 */
+	public static Deadline begin(long timeout) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("The timeout cannot be negative");
+		return beginAt(System.currentTimeMillis() + timeout);
+	}
+
+
+	/**
+	 * Start a deadline for the current thread that expires at the specified
+	 * time, or when the enclosing deadline expires if that is earlier.
+	 */
+	static Deadline beginAt(long expiresAt) {
+		Deadline enclosing = (Deadline) current.get();
+		if (enclosing != null && enclosing.expiresAt < expiresAt)
+			expiresAt = enclosing.expiresAt;
+		Deadline deadline = new Deadline(expiresAt, enclosing);
+		current.set(deadline);
+		return deadline;
+	}
+
+
+	/**
+	 * End this deadline and restore the enclosing deadline, if any.
+	 *
+	 * @throws IllegalStateException if this is not the current deadline of
+	 *         the thread
+	 */
+	public void end() {
+		if (current.get() != this)
+			throw new IllegalStateException("The deadline is not the current deadline of the thread");
+		current.set(previous);
+	}
+
+
+	/**
+	 * The current deadline of the calling thread, or <code>null</code> if
+	 * there is no deadline.
+	 */
+	public static Deadline current() {
+		return (Deadline) current.get();
+	}
+
+
+	/**
+	 * The time, in milliseconds since the epoch, when this deadline expires.
+	 */
+	public long getExpirationTime() {
+		return expiresAt;
+	}
+
+
+	/**
+	 * The time, in milliseconds, until this deadline expires. Zero or
+	 * negative if it has expired.
+	 */
+	public long getRemainingTime() {
+		return expiresAt - System.currentTimeMillis();
+	}
+
+
+	public String toString() {
+		return "Deadline[" + getRemainingTime() + " ms remaining]";
+	}
+}
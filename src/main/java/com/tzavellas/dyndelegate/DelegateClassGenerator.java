@@ -0,0 +1,445 @@
+package com.tzavellas.dyndelegate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Generates, at runtime, a concrete delegate class for a business interface.
+ * <p>
+ * For every business method the generated class contains a method that
+ * casts the EJB to the business interface and calls the method directly,
+ * so there is no argument boxing and no reflection in the call path and
+ * the JIT is free to inline through the delegate. The exceptions thrown by
+ * the EJB are passed to {@link GeneratedDelegate#convert(Throwable, int)}
+ * from an exception handler, so the <code>ThrowableConverter</code> only
+ * costs something when the EJB actually throws.</p>
+ * <p>
+ * The class files are written directly (class file version 48, the JDK 1.4
+ * format) so that the library does not need a bytecode library at runtime.
+ * The generated classes are kept per business interface with weak
+ * references, so they do not prevent the unloading of redeployed
+ * applications.</p>
+ *
+ * @see GeneratedDelegate
+ * @author Spiros Tzavellas
+ */
+class DelegateClassGenerator {
+
+	private static final String SUPERCLASS = internalName(GeneratedDelegate.class);
+	private static final String CONSTRUCTOR_DESCRIPTOR =
+		"(Ljava/lang/Object;L" + internalName(DynamicDelegateFactory.class) + ";[Ljava/lang/reflect/Method;)V";
+	private static final Class[] CONSTRUCTOR_PARAMETERS =
+		new Class[] { Object.class, DynamicDelegateFactory.class, Method[].class };
+
+	/** Business interface -> WeakReference to a GeneratedClass. */
+	private static final Map generatedClasses = new WeakHashMap();
+	private static int counter;
+
+
+	/**
+	 * Whether a delegate class can be generated for the specified interface.
+	 * <p>
+	 * The generated classes live in their own class loader, so the business
+	 * interface must be public.</p>
+	 */
+	static boolean canGenerate(Class businessInterface) {
+		return Modifier.isPublic(businessInterface.getModifiers())
+				&& !businessInterface.getName().startsWith("java.");
+	}
+
+
+	/**
+	 * Create a new instance of the delegate class generated for the specified
+	 * business interface, generating the class if needed.
+	 */
+	static Object newDelegate(Class businessInterface, Object ejb, DynamicDelegateFactory factory) {
+		GeneratedClass generated = getGeneratedClass(businessInterface);
+		try {
+			return generated.constructor.newInstance(new Object[] { ejb, factory, generated.methods });
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("Error creating delegate for "
+					+ businessInterface.getName(), e.getTargetException());
+		} catch (Exception e) {
+			throw new RuntimeException("Error creating delegate for "
+					+ businessInterface.getName(), e);
+		}
+	}
+
+
+	private static GeneratedClass getGeneratedClass(Class businessInterface) {
+		synchronized (generatedClasses) {
+			WeakReference ref = (WeakReference) generatedClasses.get(businessInterface);
+			GeneratedClass generated = (ref == null) ? null : (GeneratedClass) ref.get();
+			if (generated == null) {
+				generated = generate(businessInterface);
+				generatedClasses.put(businessInterface, new WeakReference(generated));
+			}
+			return generated;
+		}
+	}
+
+
+	private static GeneratedClass generate(Class businessInterface) {
+		Method[] methods = businessMethods(businessInterface);
+		String className = businessInterface.getName() + "$$GeneratedDelegate$$" + (counter++);
+		byte[] bytes;
+		try {
+			bytes = new ClassFileWriter(className, businessInterface, methods).toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		DelegateClassLoader loader = new DelegateClassLoader(businessInterface.getClassLoader());
+		Class delegateClass = loader.define(className, bytes);
+		try {
+			// the loader keeps the GeneratedClass alive for as long as the
+			// generated class (and thus any of its delegates) is reachable
+			loader.generated = new GeneratedClass(delegateClass.getConstructor(CONSTRUCTOR_PARAMETERS), methods);
+			return loader.generated;
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+
+	/**
+	 * The public methods of the business interface, without the duplicates
+	 * that are inherited from more than one super interface.
+	 */
+	private static Method[] businessMethods(Class businessInterface) {
+		Method[] all = businessInterface.getMethods();
+		List methods = new ArrayList(all.length);
+		Set signatures = new HashSet();
+		for (int i = 0; i < all.length; i++) {
+			if (signatures.add(all[i].getName() + methodDescriptor(all[i])))
+				methods.add(all[i]);
+		}
+		return (Method[]) methods.toArray(new Method[methods.size()]);
+	}
+
+
+	private static String internalName(Class c) {
+		return c.getName().replace('.', '/');
+	}
+
+	private static String descriptor(Class c) {
+		if (c == Void.TYPE) return "V";
+		if (c == Integer.TYPE) return "I";
+		if (c == Long.TYPE) return "J";
+		if (c == Boolean.TYPE) return "Z";
+		if (c == Byte.TYPE) return "B";
+		if (c == Character.TYPE) return "C";
+		if (c == Short.TYPE) return "S";
+		if (c == Float.TYPE) return "F";
+		if (c == Double.TYPE) return "D";
+		if (c.isArray()) return internalName(c);
+		return "L" + internalName(c) + ";";
+	}
+
+	private static String methodDescriptor(Method m) {
+		StringBuffer buf = new StringBuffer("(");
+		Class[] params = m.getParameterTypes();
+		for (int i = 0; i < params.length; i++)
+			buf.append(descriptor(params[i]));
+		return buf.append(')').append(descriptor(m.getReturnType())).toString();
+	}
+
+	private static int slots(Class c) {
+		return (c == Long.TYPE || c == Double.TYPE) ? 2 : 1;
+	}
+
+
+	private static class GeneratedClass {
+		final Constructor constructor;
+		final Method[] methods;
+
+		GeneratedClass(Constructor constructor, Method[] methods) {
+			this.constructor = constructor;
+			this.methods = methods;
+		}
+	}
+
+
+	/**
+	 * Defines a generated class as a child of the business interface's class
+	 * loader. The classes of this library are always resolved from the loader
+	 * of this library, even if the parent loader can see another copy.
+	 */
+	private static class DelegateClassLoader extends ClassLoader {
+
+		GeneratedClass generated;
+
+		DelegateClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+		protected synchronized Class loadClass(String name, boolean resolve)
+		throws ClassNotFoundException {
+			if (name.equals(GeneratedDelegate.class.getName()))
+				return GeneratedDelegate.class;
+			if (name.equals(DynamicDelegateFactory.class.getName()))
+				return DynamicDelegateFactory.class;
+			return super.loadClass(name, resolve);
+		}
+	}
+
+
+	/**
+	 * A minimal class file writer that knows only how to write delegate
+	 * classes.
+	 */
+	private static class ClassFileWriter {
+
+		private static final int ACC_PUBLIC = 0x0001;
+		private static final int ACC_FINAL = 0x0010;
+		private static final int ACC_SUPER = 0x0020;
+
+		private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+		private final DataOutputStream pool = new DataOutputStream(poolBytes);
+		private final Map poolIndexes = new HashMap();
+		private int poolCount = 1;
+
+		private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(methodBytes);
+		private int methodCount;
+
+		private final String className;
+		private final String businessInterface;
+
+		ClassFileWriter(String className, Class businessInterface, Method[] methods) throws IOException {
+			this.className = className.replace('.', '/');
+			this.businessInterface = internalName(businessInterface);
+			writeConstructor();
+			for (int i = 0; i < methods.length; i++)
+				writeBusinessMethod(methods[i], i);
+		}
+
+		byte[] toByteArray() throws IOException {
+			int thisClass = classRef(className);
+			int superClass = classRef(SUPERCLASS);
+			int iface = classRef(businessInterface);
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream file = new DataOutputStream(bytes);
+			file.writeInt(0xCAFEBABE);
+			file.writeShort(0);
+			file.writeShort(48);
+			file.writeShort(poolCount);
+			poolBytes.writeTo(file);
+			file.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			file.writeShort(thisClass);
+			file.writeShort(superClass);
+			file.writeShort(1);
+			file.writeShort(iface);
+			file.writeShort(0); // fields
+			file.writeShort(methodCount);
+			methodBytes.writeTo(file);
+			file.writeShort(0); // attributes
+			file.flush();
+			return bytes.toByteArray();
+		}
+
+		private void writeConstructor() throws IOException {
+			ByteArrayOutputStream code = new ByteArrayOutputStream();
+			code.write(0x2a); // aload_0
+			code.write(0x2b); // aload_1
+			code.write(0x2c); // aload_2
+			code.write(0x2d); // aload_3
+			code.write(0xb7); // invokespecial
+			writeShort(code, methodRef(SUPERCLASS, "<init>", CONSTRUCTOR_DESCRIPTOR));
+			code.write(0xb1); // return
+			writeMethod("<init>", CONSTRUCTOR_DESCRIPTOR, ACC_PUBLIC, 4, 4, code.toByteArray(), -1, -1);
+		}
+
+		private void writeBusinessMethod(Method method, int index) throws IOException {
+			String descriptor = methodDescriptor(method);
+			Class[] params = method.getParameterTypes();
+			Class returnType = method.getReturnType();
+
+			ByteArrayOutputStream code = new ByteArrayOutputStream();
+			code.write(0x2a); // aload_0
+			code.write(0xb4); // getfield
+			writeShort(code, fieldRef(SUPERCLASS, "ejb", "Ljava/lang/Object;"));
+			code.write(0xc0); // checkcast
+			writeShort(code, classRef(businessInterface));
+
+			int slot = 1;
+			for (int i = 0; i < params.length; i++) {
+				code.write(loadOpcode(params[i]));
+				code.write(slot);
+				slot += slots(params[i]);
+			}
+			int argSlots = slot - 1;
+
+			code.write(0xb9); // invokeinterface
+			writeShort(code, interfaceMethodRef(businessInterface, method.getName(), descriptor));
+			code.write(argSlots + 1);
+			code.write(0);
+			int endPc = code.size();
+			code.write(returnOpcode(returnType));
+
+			int handlerPc = code.size();
+			code.write(0x3a); // astore
+			code.write(slot);
+			code.write(0x2a); // aload_0
+			code.write(0x19); // aload
+			code.write(slot);
+			pushInt(code, index);
+			code.write(0xb6); // invokevirtual
+			writeShort(code, methodRef(SUPERCLASS, "convert", "(Ljava/lang/Throwable;I)Ljava/lang/Throwable;"));
+			code.write(0xbf); // athrow
+
+			int maxStack = Math.max(argSlots + 1, 3);
+			writeMethod(method.getName(), descriptor, ACC_PUBLIC | ACC_FINAL,
+					maxStack, slot + 1, code.toByteArray(), endPc, handlerPc);
+		}
+
+		private void writeMethod(String name, String descriptor, int access,
+				int maxStack, int maxLocals, byte[] code, int endPc, int handlerPc) throws IOException {
+			boolean hasHandler = handlerPc >= 0;
+			int throwable = hasHandler ? classRef("java/lang/Throwable") : 0;
+
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(1);
+			out.writeShort(utf8("Code"));
+			out.writeInt(12 + code.length + (hasHandler ? 8 : 0));
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			if (hasHandler) {
+				out.writeShort(1);
+				out.writeShort(0);
+				out.writeShort(endPc);
+				out.writeShort(handlerPc);
+				out.writeShort(throwable);
+			} else {
+				out.writeShort(0);
+			}
+			out.writeShort(0);
+			methodCount++;
+		}
+
+		private static int loadOpcode(Class c) {
+			if (!c.isPrimitive()) return 0x19;           // aload
+			if (c == Long.TYPE) return 0x16;             // lload
+			if (c == Float.TYPE) return 0x17;            // fload
+			if (c == Double.TYPE) return 0x18;           // dload
+			return 0x15;                                 // iload
+		}
+
+		private static int returnOpcode(Class c) {
+			if (c == Void.TYPE) return 0xb1;             // return
+			if (!c.isPrimitive()) return 0xb0;           // areturn
+			if (c == Long.TYPE) return 0xad;             // lreturn
+			if (c == Float.TYPE) return 0xae;            // freturn
+			if (c == Double.TYPE) return 0xaf;           // dreturn
+			return 0xac;                                 // ireturn
+		}
+
+		private static void pushInt(ByteArrayOutputStream code, int value) {
+			if (value <= 5) {
+				code.write(0x03 + value); // iconst_<n>
+			} else if (value <= Byte.MAX_VALUE) {
+				code.write(0x10); // bipush
+				code.write(value);
+			} else {
+				code.write(0x11); // sipush
+				writeShort(code, value);
+			}
+		}
+
+		private static void writeShort(ByteArrayOutputStream code, int value) {
+			code.write((value >>> 8) & 0xff);
+			code.write(value & 0xff);
+		}
+
+		private int utf8(String value) throws IOException {
+			String key = "U" + value;
+			Integer index = (Integer) poolIndexes.get(key);
+			if (index == null) {
+				pool.writeByte(1);
+				pool.writeUTF(value);
+				index = register(key);
+			}
+			return index.intValue();
+		}
+
+		private int classRef(String internalName) throws IOException {
+			String key = "C" + internalName;
+			Integer index = (Integer) poolIndexes.get(key);
+			if (index == null) {
+				int name = utf8(internalName);
+				pool.writeByte(7);
+				pool.writeShort(name);
+				index = register(key);
+			}
+			return index.intValue();
+		}
+
+		private int nameAndType(String name, String descriptor) throws IOException {
+			String key = "N" + name + " " + descriptor;
+			Integer index = (Integer) poolIndexes.get(key);
+			if (index == null) {
+				int n = utf8(name);
+				int d = utf8(descriptor);
+				pool.writeByte(12);
+				pool.writeShort(n);
+				pool.writeShort(d);
+				index = register(key);
+			}
+			return index.intValue();
+		}
+
+		private int fieldRef(String owner, String name, String descriptor) throws IOException {
+			return memberRef(9, owner, name, descriptor);
+		}
+
+		private int methodRef(String owner, String name, String descriptor) throws IOException {
+			return memberRef(10, owner, name, descriptor);
+		}
+
+		private int interfaceMethodRef(String owner, String name, String descriptor) throws IOException {
+			return memberRef(11, owner, name, descriptor);
+		}
+
+		private int memberRef(int tag, String owner, String name, String descriptor) throws IOException {
+			String key = tag + owner + "." + name + descriptor;
+			Integer index = (Integer) poolIndexes.get(key);
+			if (index == null) {
+				int c = classRef(owner);
+				int nt = nameAndType(name, descriptor);
+				pool.writeByte(tag);
+				pool.writeShort(c);
+				pool.writeShort(nt);
+				index = register(key);
+			}
+			return index.intValue();
+		}
+
+		private Integer register(String key) {
+			Integer index = new Integer(poolCount++);
+			poolIndexes.put(key, index);
+			return index;
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+
+/**
+ * The identity of a delegate, that the delegate uses to answer
+ * <code>equals</code>, <code>hashCode</code> and <code>toString</code>
+ * without invoking the EJB.
+ * <p>
+ * The delegates of entity beans are identified by their JNDI name and the
+ * primary key of the bean, so two delegates of the same entity are equal.
+ * The EJB handles do not define equality, so all the other delegates are
+ * identified by the object they proxy: the delegates of the same EJB
+ * object (or pool, or set of endpoints) are equal.</p>
+ *
+ * @author Spiros Tzavellas
+ */
+class DelegateIdentity {
+
+	private final String description;
+	private final Object key;
+	private final boolean valueEquality;
+
+
+	private DelegateIdentity(String description, Object key, boolean valueEquality) {
+		this.description = description;
+		this.key = key;
+		this.valueEquality = valueEquality;
+	}
+
+
+	/**
+	 * Create the identity of a delegate of the specified EJB object.
+	 * <p>
+	 * The primary key is only requested when the home interface has a
+	 * <code>findByPrimaryKey</code> method, so the delegates of session
+	 * beans do not make an extra call to the EJB.</p>
+	 */
+	static DelegateIdentity forEJB(String jndiName, Class businessInterface,
+			Class homeInterface, Object ejb) {
+		if (isEntityHome(homeInterface)) {
+			Object primaryKey = getPrimaryKey(ejb);
+			if (primaryKey != null)
+				return new DelegateIdentity(describe(jndiName, businessInterface, primaryKey),
+						primaryKey, true);
+		}
+		return forSource(jndiName, businessInterface, ejb);
+	}
+
+
+	/**
+	 * Create the identity of a delegate that is identified by the object
+	 * that provides its EJBs.
+	 */
+	static DelegateIdentity forSource(String jndiName, Class businessInterface, Object source) {
+		return new DelegateIdentity(describe(jndiName, businessInterface, null), source, false);
+	}
+
+
+	private static boolean isEntityHome(Class homeInterface) {
+		Method[] methods = homeInterface.getMethods();
+		for (int i = 0; i < methods.length; i++) {
+			if (methods[i].getName().equals("findByPrimaryKey"))
+				return true;
+		}
+		return false;
+	}
+
+
+	private static Object getPrimaryKey(Object ejb) {
+		try {
+			return ejb.getClass().getMethod("getPrimaryKey", new Class[0])
+					.invoke(ejb, new Object[0]);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+
+	private static String describe(String jndiName, Class businessInterface, Object primaryKey) {
+		StringBuffer s = new StringBuffer(businessInterface.getName());
+		s.append('[').append(jndiName);
+		if (primaryKey != null)
+			s.append(", ").append(primaryKey);
+		return s.append(']').toString();
+	}
+
+
+	public boolean equals(Object obj) {
+		if (!(obj instanceof DelegateIdentity))
+			return false;
+		DelegateIdentity other = (DelegateIdentity) obj;
+		if (valueEquality != other.valueEquality)
+			return false;
+		return valueEquality ? description.equals(other.description) && key.equals(other.key)
+		                     : key == other.key;
+	}
+
+
+	public int hashCode() {
+		return valueEquality ? key.hashCode() : System.identityHashCode(key);
+	}
+
+
+	public String toString() {
+		return description;
+	}
+}
@@ -0,0 +1,31 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * Intercepts the invocations of the business methods of a delegate.
+ * <p>
+ * The interceptors of a <code>DynamicDelegateFactory</code> form a chain
+ * around the invocation of the EJB. An interceptor calls
+ * {@link DelegateInvocation#proceed()} to pass the invocation to the next
+ * interceptor (or to the EJB) or returns a result without proceeding.</p>
+ * <p>
+ * The exceptions that an interceptor sees are the ones thrown by the EJB,
+ * the <code>ThrowableConverter</code> of the factory converts whatever the
+ * chain throws.</p>
+ * 
+ * @see DynamicDelegateFactory#addInterceptor(DelegateInterceptor)
+ * @see DelegateInvocation
+ * 
+ * @author Spiros Tzavellas
+ */
+public interface DelegateInterceptor {
+
+	/**
+	 * Intercept the specified invocation.
+	 * 
+	 * @param invocation the invocation of a business method
+	 * @return the result of the invocation
+	 * @throws Throwable the exception of the invocation
+	 */
+	Object invoke(DelegateInvocation invocation) throws Throwable;
+
+}
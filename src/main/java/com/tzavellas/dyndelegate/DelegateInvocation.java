@@ -0,0 +1,92 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+
+/**
+ * An invocation of a business method of a delegate, as seen by a
+ * <code>DelegateInterceptor</code>.
+ * <p>
+ * Objects of this class are immutable, so {@link #proceed()} can be called
+ * more than once, and from different threads, to invoke the rest of the
+ * chain again.</p>
+ * 
+ * @see DelegateInterceptor
+ * @author Spiros Tzavellas
+ */
+public final class DelegateInvocation {
+
+	private final String jndiName;
+	private final Method method;
+	private final Object[] args;
+	private final boolean remote;
+	private final DelegateInterceptor[] interceptors;
+	private final int index;
+	private final InvocationTarget target;
+	
+	
+	DelegateInvocation(String jndiName, Method method, Object[] args, boolean remote,
+			DelegateInterceptor[] interceptors, int index, InvocationTarget target) {
+		this.jndiName = jndiName;
+		this.method = method;
+		this.args = args;
+		this.remote = remote;
+		this.interceptors = interceptors;
+		this.index = index;
+		this.target = target;
+	}
+	
+	
+	/**
+	 * The JNDI name of the EJB that the delegate proxies.
+	 */
+	public String getJndiName() {
+		return jndiName;
+	}
+	
+	
+	/**
+	 * The invoked method of the business interface.
+	 */
+	public Method getMethod() {
+		return method;
+	}
+	
+	
+	/**
+	 * The arguments of the invocation, <code>null</code> if the method has
+	 * no parameters. The returned array must not be modified.
+	 */
+	public Object[] getArguments() {
+		return args;
+	}
+	
+	
+	/**
+	 * Whether the delegate invokes the remote client interface of the EJB.
+	 * The invocations of local EJBs must stay in the calling thread, to
+	 * run in its transaction and security context.
+	 */
+	public boolean isRemote() {
+		return remote;
+	}
+	
+	
+	/**
+	 * Pass the invocation to the next interceptor of the chain, or to the
+	 * EJB if this is the last interceptor.
+	 * 
+	 * @return the result of the invocation
+	 * @throws Throwable the exception of the invocation
+	 */
+	public Object proceed() throws Throwable {
+		if (index < interceptors.length)
+			return interceptors[index].invoke(
+					new DelegateInvocation(jndiName, method, args, remote, interceptors, index + 1, target));
+		return target.invokeEJB(method, args);
+	}
+	
+	
+	public String toString() {
+		return "DelegateInvocation[" + jndiName + ", " + method + "]";
+	}
+}
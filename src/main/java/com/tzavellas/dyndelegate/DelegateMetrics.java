@@ -0,0 +1,246 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An <code>InvocationListener</code> that keeps call, error and timeout counts
+ * and latency histograms for the business methods of the delegates.
+ * <p>
+ * The metrics are kept per JNDI name and business method. The latencies
+ * are measured in milliseconds and are counted in fixed buckets.</p>
+ * <p>
+ * This class is a standard MBean, so on a JVM with JMX the metrics can be
+ * accessed by registering it in an <code>MBeanServer</code>. This library
+ * does not depend on JMX, the application registers the MBean:</p>
+ * <pre>
+ * DelegateMetrics metrics = new DelegateMetrics();
+ * server.registerMBean(metrics, new ObjectName("app:type=DelegateMetrics"));
+ * factory.addInvocationListener(metrics);
+ * </pre>
+ * <p>
+ * The map of the methods is copied on write, so the common case of
+ * updating the metrics of an already invoked method only locks the
+ * metrics of that method.</p>
+ *
+ * @see DelegateMetricsMBean
+ * @author Spiros Tzavellas
+ */
+public class DelegateMetrics implements InvocationListener, DelegateMetricsMBean {
+
+	private static final long[] BUCKETS = {
+		1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, Long.MAX_VALUE
+	};
+
+	/** Key -> MethodMetrics, replaced on each new method */
+	private volatile Map metrics = Collections.EMPTY_MAP;
+
+
+	public void invocationCompleted(String jndiName, Method method, long elapsedTime, Throwable failure) {
+		getMetrics(new Key(jndiName, method)).record(elapsedTime, failure);
+	}
+
+
+	public String[] getMethodKeys() {
+		Map current = metrics;
+		List keys = new ArrayList(current.size());
+		for (Iterator i = current.keySet().iterator(); i.hasNext(); )
+			keys.add(i.next().toString());
+		Collections.sort(keys);
+		return (String[]) keys.toArray(new String[keys.size()]);
+	}
+
+
+	public long[] getLatencyBuckets() {
+		return (long[]) BUCKETS.clone();
+	}
+
+
+	public long getTotalCallCount() {
+		long total = 0;
+		for (Iterator i = metrics.values().iterator(); i.hasNext(); )
+			total += ((MethodMetrics) i.next()).getCalls();
+		return total;
+	}
+
+
+	public long getTotalErrorCount() {
+		long total = 0;
+		for (Iterator i = metrics.values().iterator(); i.hasNext(); )
+			total += ((MethodMetrics) i.next()).getErrors();
+		return total;
+	}
+
+
+	public long getTotalTimeoutCount() {
+		long total = 0;
+		for (Iterator i = metrics.values().iterator(); i.hasNext(); )
+			total += ((MethodMetrics) i.next()).getTimeouts();
+		return total;
+	}
+
+
+	public long getCallCount(String methodKey) {
+		MethodMetrics m = findMetrics(methodKey);
+		return (m == null) ? 0 : m.getCalls();
+	}
+
+
+	public long getErrorCount(String methodKey) {
+		MethodMetrics m = findMetrics(methodKey);
+		return (m == null) ? 0 : m.getErrors();
+	}
+
+
+	public long getTimeoutCount(String methodKey) {
+		MethodMetrics m = findMetrics(methodKey);
+		return (m == null) ? 0 : m.getTimeouts();
+	}
+
+
+	public long getTotalTime(String methodKey) {
+		MethodMetrics m = findMetrics(methodKey);
+		return (m == null) ? 0 : m.getTotalTime();
+	}
+
+
+	public long getMaxTime(String methodKey) {
+		MethodMetrics m = findMetrics(methodKey);
+		return (m == null) ? 0 : m.getMaxTime();
+	}
+
+
+	public long[] getLatencyHistogram(String methodKey) {
+		MethodMetrics m = findMetrics(methodKey);
+		return (m == null) ? new long[BUCKETS.length] : m.getHistogram();
+	}
+
+
+	public Map getErrorsByType(String methodKey) {
+		MethodMetrics m = findMetrics(methodKey);
+		return (m == null) ? new HashMap() : m.getErrorsByType();
+	}
+
+
+	public synchronized void reset() {
+		metrics = Collections.EMPTY_MAP;
+	}
+
+
+	private MethodMetrics getMetrics(Key key) {
+		MethodMetrics m = (MethodMetrics) metrics.get(key);
+		if (m != null)
+			return m;
+		synchronized (this) {
+			m = (MethodMetrics) metrics.get(key);
+			if (m == null) {
+				Map copy = new HashMap(metrics);
+				m = new MethodMetrics();
+				copy.put(key, m);
+				metrics = copy;
+			}
+			return m;
+		}
+	}
+
+
+	private MethodMetrics findMetrics(String methodKey) {
+		Map current = metrics;
+		for (Iterator i = current.entrySet().iterator(); i.hasNext(); ) {
+			Map.Entry e = (Map.Entry) i.next();
+			if (e.getKey().toString().equals(methodKey))
+				return (MethodMetrics) e.getValue();
+		}
+		return null;
+	}
+
+
+	private static class Key {
+		final String jndiName;
+		final Method method;
+
+		Key(String jndiName, Method method) {
+			this.jndiName = jndiName;
+			this.method = method;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return method.equals(other.method)
+				&& (jndiName == null ? other.jndiName == null : jndiName.equals(other.jndiName));
+		}
+
+		public int hashCode() {
+			return (jndiName == null ? 0 : jndiName.hashCode()) * 31 + method.hashCode();
+		}
+
+		public String toString() {
+			StringBuffer s = new StringBuffer();
+			s.append(jndiName).append('#').append(method.getName()).append('(');
+			Class[] params = method.getParameterTypes();
+			for (int i = 0; i < params.length; i++) {
+				if (i > 0)
+					s.append(',');
+				s.append(params[i].getName());
+			}
+			return s.append(')').toString();
+		}
+	}
+
+
+	private static class MethodMetrics {
+		private long calls;
+		private long errors;
+		private long timeouts;
+		private long totalTime;
+		private long maxTime;
+		private final long[] histogram = new long[BUCKETS.length];
+		private final Map errorsByType = new HashMap();
+
+		synchronized void record(long elapsedTime, Throwable failure) {
+			calls++;
+			totalTime += elapsedTime;
+			if (elapsedTime > maxTime)
+				maxTime = elapsedTime;
+			int bucket = 0;
+			while (elapsedTime > BUCKETS[bucket])
+				bucket++;
+			histogram[bucket]++;
+			if (failure != null) {
+				errors++;
+				if (failure instanceof DelegateTimeoutException)
+					timeouts++;
+				String type = failure.getClass().getName();
+				long[] count = (long[]) errorsByType.get(type);
+				if (count == null) {
+					count = new long[1];
+					errorsByType.put(type, count);
+				}
+				count[0]++;
+			}
+		}
+
+		synchronized long getCalls() { return calls; }
+		synchronized long getErrors() { return errors; }
+		synchronized long getTimeouts() { return timeouts; }
+		synchronized long getTotalTime() { return totalTime; }
+		synchronized long getMaxTime() { return maxTime; }
+		synchronized long[] getHistogram() { return (long[]) histogram.clone(); }
+
+		synchronized Map getErrorsByType() {
+			Map copy = new HashMap();
+			for (Iterator i = errorsByType.entrySet().iterator(); i.hasNext(); ) {
+				Map.Entry e = (Map.Entry) i.next();
+				copy.put(e.getKey(), new Long(((long[]) e.getValue())[0]));
+			}
+			return copy;
+		}
+	}
+}
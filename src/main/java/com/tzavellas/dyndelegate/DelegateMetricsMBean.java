@@ -0,0 +1,92 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.Map;
+
+/**
+ * The management interface of <code>DelegateMetrics</code>.
+ * <p>
+ * The metrics are kept per JNDI name and business method. The key of a
+ * method is its JNDI name and its signature separated by <code>#</code>,
+ * for example <code>ejb/Catalog#find(java.lang.String)</code>.</p>
+ *
+ * @see DelegateMetrics
+ * @author Spiros Tzavellas
+ */
+public interface DelegateMetricsMBean {
+
+	/**
+	 * The keys of the methods that have been invoked.
+	 */
+	String[] getMethodKeys();
+
+	/**
+	 * The upper bounds, in milliseconds, of the buckets of the latency
+	 * histograms. The last bucket is unbounded.
+	 */
+	long[] getLatencyBuckets();
+
+	/**
+	 * The total number of invocations of all the methods.
+	 */
+	long getTotalCallCount();
+
+	/**
+	 * The total number of failed invocations of all the methods.
+	 */
+	long getTotalErrorCount();
+
+	/**
+	 * The total number of invocations of all the methods that timed out.
+	 */
+	long getTotalTimeoutCount();
+
+	/**
+	 * The number of invocations of the specified method.
+	 */
+	long getCallCount(String methodKey);
+
+	/**
+	 * The number of invocations of the specified method that threw an
+	 * exception.
+	 */
+	long getErrorCount(String methodKey);
+
+	/**
+	 * The number of invocations of the specified method that failed with a
+	 * <code>DelegateTimeoutException</code>.
+	 *
+	 * @see TimeoutInterceptor
+	 */
+	long getTimeoutCount(String methodKey);
+
+	/**
+	 * The total time, in milliseconds, spent in invocations of the
+	 * specified method.
+	 */
+	long getTotalTime(String methodKey);
+
+	/**
+	 * The maximum duration, in milliseconds, of an invocation of the
+	 * specified method.
+	 */
+	long getMaxTime(String methodKey);
+
+	/**
+	 * The number of invocations of the specified method per latency bucket.
+	 *
+	 * @see #getLatencyBuckets()
+	 */
+	long[] getLatencyHistogram(String methodKey);
+
+	/**
+	 * The number of failed invocations of the specified method per class
+	 * name of the (converted) exception.
+	 */
+	Map getErrorsByType(String methodKey);
+
+	/**
+	 * Reset all the metrics.
+	 */
+	void reset();
+
+}
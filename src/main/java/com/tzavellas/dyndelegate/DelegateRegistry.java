@@ -0,0 +1,183 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps one canonical delegate per JNDI name, home interface, business
+ * interface and access type.
+ * <p>
+ * When many threads ask for the same delegate at the same time, only the
+ * first one creates it and the others wait for the result. A failed
+ * creation is not kept, the next request tries again.</p>
+ *
+ * @author Spiros Tzavellas
+ */
+class DelegateRegistry {
+
+	/** Key -> Entry */
+	private final Map entries = new HashMap();
+
+	/**
+	 * delegate -> Key, by identity since the delegates of the same EJB
+	 * object are equal but each one has its own key
+	 */
+	private final Map keys = new IdentityHashMap();
+
+
+	/**
+	 * Return the delegate for the specified key, creating it with the
+	 * specified creator if it is not registered.
+	 */
+	Object get(Key key, DelegateCreator creator) {
+		Entry entry;
+		boolean owner = false;
+		synchronized (this) {
+			entry = (Entry) entries.get(key);
+			if (entry == null) {
+				entry = new Entry();
+				entries.put(key, entry);
+				owner = true;
+			}
+		}
+		if (owner) {
+			try {
+				Object delegate = creator.createDelegate();
+				synchronized (this) {
+					if (entries.get(key) == entry)
+						keys.put(delegate, key);
+				}
+				entry.setDelegate(delegate);
+			} catch (RuntimeException e) {
+				evict(key, entry);
+				entry.setFailure(e);
+			} catch (Error e) {
+				evict(key, entry);
+				entry.setFailure(e);
+			}
+		}
+		return entry.getDelegate();
+	}
+
+
+	/**
+	 * Evict the delegates that are registered for the specified JNDI name.
+	 */
+	synchronized void evict(String jndiName) {
+		for (Iterator i = entries.keySet().iterator(); i.hasNext(); ) {
+			if (((Key) i.next()).jndiName.equals(jndiName))
+				i.remove();
+		}
+		for (Iterator i = keys.values().iterator(); i.hasNext(); ) {
+			if (((Key) i.next()).jndiName.equals(jndiName))
+				i.remove();
+		}
+	}
+
+
+	/**
+	 * Evict the specified delegate, if it is registered.
+	 */
+	synchronized void evict(Object delegate) {
+		Key key = (Key) keys.remove(delegate);
+		if (key != null)
+			entries.remove(key);
+	}
+
+
+	synchronized void clear() {
+		entries.clear();
+		keys.clear();
+	}
+
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+
+	private synchronized void evict(Key key, Entry entry) {
+		if (entries.get(key) == entry)
+			entries.remove(key);
+	}
+
+
+	/**
+	 * Creates the delegate of a key.
+	 */
+	interface DelegateCreator {
+		Object createDelegate();
+	}
+
+
+	static class Key {
+		final String jndiName;
+		final Class homeInterface;
+		final Class businessInterface;
+		final boolean remote;
+
+		Key(String jndiName, Class homeInterface, Class businessInterface, boolean remote) {
+			this.jndiName = jndiName;
+			this.homeInterface = homeInterface;
+			this.businessInterface = businessInterface;
+			this.remote = remote;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return jndiName.equals(other.jndiName)
+					&& homeInterface.equals(other.homeInterface)
+					&& businessInterface.equals(other.businessInterface)
+					&& remote == other.remote;
+		}
+
+		public int hashCode() {
+			return (jndiName.hashCode() * 31 + homeInterface.hashCode()) * 31
+					+ businessInterface.hashCode() + (remote ? 1 : 0);
+		}
+	}
+
+
+	/**
+	 * A registered delegate, or a creation in progress.
+	 */
+	private static class Entry {
+		private Object delegate;
+		private Throwable failure;
+		private boolean done;
+
+		synchronized void setDelegate(Object delegate) {
+			this.delegate = delegate;
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized void setFailure(Throwable failure) {
+			this.failure = failure;
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized Object getDelegate() {
+			boolean interrupted = false;
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof Error)
+				throw (Error) failure;
+			return delegate;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * Thrown when an invocation through a delegate does not complete within
+ * the allowed time.
+ * 
+ * @author Spiros Tzavellas
+ */
+public class DelegateTimeoutException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public DelegateTimeoutException(String message) {
+		super(message);
+	}
+
+}
@@ -1,9 +1,19 @@
 package com.tzavellas.dyndelegate;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
 
 /**
  * A Dynamic Delegate for Session Beans.
@@ -43,6 +53,17 @@ public class DynamicDelegateFactory {
 	
 	private ThrowableConverter exceptionConverter;
 	private EJBHomeFactory homeFactory;
+	private boolean generateDelegateClasses = false;
+	private boolean suppressAccessChecks = false;
+	private final CreateMethodResolver createMethodResolver = new CreateMethodResolver();
+	private TaskExecutor taskExecutor;
+	private final List interceptors = new ArrayList();
+	private final List listeners = new ArrayList();
+	private long probeInterval = 30000;
+	private Timer probeTimer;
+	private final DelegateRegistry sharedDelegates = new DelegateRegistry();
+	private boolean forwardObjectMethods = false;
+	private final MethodSet localMethods = new MethodSet();
 	
 	
 	/**
@@ -86,6 +107,212 @@ public class DynamicDelegateFactory {
 	}
 	
 	
+	/**
+	 * Set whether this factory creates delegates from classes that are
+	 * generated at runtime instead of using dynamic proxies.
+	 * <p>
+	 * A generated delegate calls the EJB directly, without boxing the
+	 * arguments and without reflection, and uses the
+	 * <code>ThrowableConverter</code> only when the EJB throws an exception.
+	 * Classes can only be generated for public business interfaces, for any
+	 * other interface a dynamic proxy is created. The default is
+	 * <code>false</code>.</p>
+	 * 
+	 * @see GeneratedDelegate
+	 */
+	public void setGenerateDelegateClasses(boolean generateDelegateClasses) {
+		this.generateDelegateClasses = generateDelegateClasses;
+	}
+	
+	
+	/**
+	 * Set whether the EJB methods that a proxy delegate calls are made
+	 * accessible when the delegate is created.
+	 * <p>
+	 * Accessible methods are invoked without the Java language access
+	 * check, which is performed on every reflective call otherwise. This
+	 * requires the <code>suppressAccessChecks</code> permission, when it is
+	 * not granted by the security manager the methods are invoked with the
+	 * access check. The default is <code>false</code>.</p>
+	 * 
+	 * @see java.lang.reflect.AccessibleObject#setAccessible(boolean)
+	 */
+	public void setSuppressAccessChecks(boolean suppressAccessChecks) {
+		this.suppressAccessChecks = suppressAccessChecks;
+	}
+	
+	
+	/**
+	 * Set the <code>TaskExecutor</code> that runs the invocations of the
+	 * asynchronous delegates.
+	 * <p>
+	 * If no executor is set, a <code>SimpleTaskExecutor</code> with up to
+	 * 32 daemon threads is created when the first asynchronous delegate is
+	 * created.</p>
+	 * 
+	 * @see #createAsyncDelegate(Object, Class, Class)
+	 */
+	public synchronized void setTaskExecutor(TaskExecutor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+	
+	
+	/**
+	 * Set the time, in milliseconds, between the attempts to create a new
+	 * EJB object for an unavailable endpoint of a load balanced delegate.
+	 * The default is 30 seconds.
+	 * 
+	 * @see #createLoadBalancedRemoteDelegate(String[], Class, Class, LoadBalancingStrategy)
+	 */
+	public synchronized void setProbeInterval(long probeInterval) {
+		if (probeInterval < 1)
+			throw new IllegalArgumentException("The probe interval must be positive");
+		this.probeInterval = probeInterval;
+	}
+	
+	
+	/**
+	 * Set whether the delegates forward <code>equals</code>,
+	 * <code>hashCode</code> and <code>toString</code> to the EJB.
+	 * <p>
+	 * By default the delegates answer these methods locally, so putting a
+	 * delegate in a collection or logging it does not invoke the EJB. A
+	 * delegate of an entity bean is equal to the other delegates of the
+	 * same JNDI name and primary key, any other delegate is equal to the
+	 * delegates of the same EJB object. The default is <code>false</code>.</p>
+	 */
+	public void setForwardObjectMethods(boolean forwardObjectMethods) {
+		this.forwardObjectMethods = forwardObjectMethods;
+	}
+	
+	
+	/**
+	 * Answer the invocations of the specified business method from the
+	 * state of the delegate.
+	 * <p>
+	 * Only methods without parameters can be local, so each delegate keeps
+	 * at most one result per local method. The first invocation of a local
+	 * method invokes the EJB, the delegate keeps the result and returns it
+	 * for all the following invocations. Concurrent first invocations wait
+	 * for the one that invokes the EJB, and if it fails the next one tries
+	 * again. Use this for cheap metadata methods whose result does not
+	 * change during the life of the EJB object. Like the interceptors, the
+	 * local methods apply to the delegates that are created after they are
+	 * added and make the factory create dynamic proxies.</p>
+	 * 
+	 * @throws IllegalArgumentException if the method has parameters
+	 */
+	public void addLocalMethod(Method method) {
+		checkLocalMethod(method);
+		localMethods.add(method);
+	}
+	
+	
+	/**
+	 * Answer the invocations of all the methods with the specified name of
+	 * the specified business interface from the state of the delegate.
+	 * 
+	 * @throws IllegalArgumentException if the interface does not have a
+	 *         method with the specified name, or one of the methods has
+	 *         parameters
+	 * @see #addLocalMethod(Method)
+	 */
+	public void addLocalMethod(Class businnessInterface, String methodName) {
+		Method[] methods = businnessInterface.getMethods();
+		for (int i = 0; i < methods.length; i++) {
+			if (methods[i].getName().equals(methodName))
+				checkLocalMethod(methods[i]);
+		}
+		localMethods.add(businnessInterface, methodName);
+	}
+	
+	private static void checkLocalMethod(Method method) {
+		if (method.getParameterTypes().length != 0)
+			throw new IllegalArgumentException("The local method " + method.getName()
+					+ " has parameters");
+	}
+	
+	
+	private synchronized Timer getProbeTimer() {
+		if (probeTimer == null)
+			probeTimer = new Timer(true);
+		return probeTimer;
+	}
+	
+	
+	synchronized TaskExecutor getTaskExecutor() {
+		if (taskExecutor == null)
+			taskExecutor = new SimpleTaskExecutor("dyndelegate", 32);
+		return taskExecutor;
+	}
+	
+	
+	/**
+	 * Add a <code>DelegateInterceptor</code> at the end of the chain of
+	 * interceptors of this factory.
+	 * <p>
+	 * The interceptors apply to the delegates that are created after they
+	 * are added. When a factory has interceptors or listeners it always
+	 * creates dynamic proxies, even if it is configured to generate delegate
+	 * classes.</p>
+	 * 
+	 * @see DelegateInterceptor
+	 */
+	public void addInterceptor(DelegateInterceptor interceptor) {
+		synchronized (interceptors) {
+			interceptors.add(interceptor);
+		}
+	}
+	
+	
+	private DelegateInterceptor[] getInterceptors() {
+		synchronized (interceptors) {
+			return (DelegateInterceptor[]) interceptors.toArray(new DelegateInterceptor[interceptors.size()]);
+		}
+	}
+	
+	
+	/**
+	 * Add an <code>InvocationListener</code> that gets notified when the
+	 * invocations of the delegates complete.
+	 * <p>
+	 * The listeners apply to the delegates that are created after they
+	 * are added.</p>
+	 * 
+	 * @see InvocationListener
+	 */
+	public void addInvocationListener(InvocationListener listener) {
+		synchronized (listeners) {
+			listeners.add(listener);
+		}
+	}
+	
+	
+	private InvocationListener[] getInvocationListeners() {
+		synchronized (listeners) {
+			return (InvocationListener[]) listeners.toArray(new InvocationListener[listeners.size()]);
+		}
+	}
+	
+	
+	private boolean hasInvocationHooks() {
+		if (!localMethods.isEmpty())
+			return true;
+		synchronized (interceptors) {
+			if (!interceptors.isEmpty())
+				return true;
+		}
+		synchronized (listeners) {
+			return !listeners.isEmpty();
+		}
+	}
+	
+	
+	ThrowableConverter getExceptionConverter() {
+		return exceptionConverter;
+	}
+	
+	
 	/**
 	 * Dynamically create a Business Delegate for an EJB with remote access.
 	 * 
@@ -176,40 +403,727 @@ public class DynamicDelegateFactory {
 	protected Object createDelegate(String jndiName, Class homeInterface,
 			Class businnessInterface, Object[] createArgs, boolean isRemote) {
 
+		checkInterface(businnessInterface);
+		Object home = lookupHome(jndiName, homeInterface, isRemote);
+		Object ejb = createEJBFromHome(home, homeInterface, createArgs);
+		checkEJB(ejb, jndiName, businnessInterface);
+
+		DelegateIdentity identity = forwardObjectMethods ? null
+				: DelegateIdentity.forEJB(jndiName, businnessInterface, homeInterface, ejb);
+		if (generateDelegateClasses && !hasInvocationHooks()
+				&& DelegateClassGenerator.canGenerate(businnessInterface)) {
+			GeneratedDelegate delegate = (GeneratedDelegate)
+					DelegateClassGenerator.newDelegate(businnessInterface, ejb, this);
+			delegate.setIdentity(identity);
+			return delegate;
+		}
+		
+		return newProxy(jndiName, businnessInterface, new SingleEJBSource(ejb),
+				createDispatchTable(businnessInterface, ejb), isRemote, identity);
+	}
+	
+	
+	/**
+	 * Create a Business Delegate for an EJB with remote access, that looks
+	 * up the home and creates the EJB object on its first invocation.
+	 * <p>
+	 * The EJB object is created once, even if the first invocations happen
+	 * concurrently. If an invocation fails with a
+	 * <code>NoSuchObjectException</code>, for example because the server
+	 * was restarted, a new EJB object is created and the invocation is
+	 * retried once.</p>
+	 * <p>
+	 * Since the EJB is not available when the delegate is created, the
+	 * errors of the lookup and of the <code>create</code> method are thrown
+	 * from the first invocation.</p>
+	 * 
+	 * @param jndiName the JNDI name to lookup the EJB.
+	 * @param homeInterface the class of the home interface of the EJB that
+	 *        the created delegate will proxy
+	 * @param businnessInterface the interface that the created delegate
+	 *        will implement
+	 * 
+	 * @return a Business Delegate object for the EJB bound to the specified
+	 *         JNDI name implementing the specified interface.
+	 */
+	public Object createLazyRemoteDelegate(String jndiName, Class homeInterface, Class businnessInterface) {
+		return createLazyDelegate(jndiName, homeInterface, businnessInterface, true);
+	}
+	
+	
+	/**
+	 * Create a Business Delegate for an EJB with local access, that looks
+	 * up the home and creates the EJB object on its first invocation.
+	 * 
+	 * @see #createLazyRemoteDelegate(String, Class, Class)
+	 */
+	public Object createLazyLocalDelegate(String jndiName, Class homeInterface, Class businnessInterface) {
+		return createLazyDelegate(jndiName, homeInterface, businnessInterface, false);
+	}
+	
+	
+	/**
+	 * Create a Business Delegate that looks up the home and creates the EJB
+	 * object on its first invocation.
+	 * 
+	 * @see #createLazyRemoteDelegate(String, Class, Class)
+	 */
+	protected Object createLazyDelegate(final String jndiName, final Class homeInterface,
+			final Class businnessInterface, final boolean isRemote) {
+		
+		checkInterface(businnessInterface);
+		LazyEJBSource source = new LazyEJBSource(new EJBCreator() {
+			public Object createEJB() {
+				Object home = lookupHome(jndiName, homeInterface, isRemote);
+				Object ejb = createEJBFromHome(home, homeInterface, new Object[0]);
+				checkEJB(ejb, jndiName, businnessInterface);
+				return ejb;
+			}
+		});
+		// the class of the EJB object is not known yet, so the methods of
+		// the business interface are invoked directly
+		return newProxy(jndiName, businnessInterface, source, createDispatchTable(businnessInterface), isRemote);
+	}
+	
+	
+	/**
+	 * Return the shared Business Delegate for a stateless session bean with
+	 * remote access, creating it on the first call.
+	 * <p>
+	 * The factory keeps one delegate per JNDI name, home interface and
+	 * business interface, so that code that needs a delegate per request
+	 * does not create a new proxy and EJB object each time. Only use shared
+	 * delegates for stateless session beans, the delegate is used by many
+	 * threads at the same time.</p>
+	 * <p>
+	 * A shared delegate stays registered until it is evicted or removed
+	 * with {@link #remove(Object)}, then the next call creates a new one.</p>
+	 * 
+	 * @see #evictSharedDelegates(String)
+	 * @see #clearSharedDelegates()
+	 */
+	public Object getSharedRemoteDelegate(String jndiName, Class homeInterface, Class businnessInterface) {
+		return getSharedDelegate(jndiName, homeInterface, businnessInterface, true);
+	}
+	
+	
+	/**
+	 * Return the shared Business Delegate for a stateless session bean with
+	 * local access, creating it on the first call.
+	 * 
+	 * @see #getSharedRemoteDelegate(String, Class, Class)
+	 */
+	public Object getSharedLocalDelegate(String jndiName, Class homeInterface, Class businnessInterface) {
+		return getSharedDelegate(jndiName, homeInterface, businnessInterface, false);
+	}
+	
+	
+	private Object getSharedDelegate(final String jndiName, final Class homeInterface,
+			final Class businnessInterface, final boolean isRemote) {
+		DelegateRegistry.Key key = new DelegateRegistry.Key(jndiName, homeInterface, businnessInterface, isRemote);
+		return sharedDelegates.get(key, new DelegateRegistry.DelegateCreator() {
+			public Object createDelegate() {
+				return DynamicDelegateFactory.this.createDelegate(jndiName, homeInterface,
+						businnessInterface, new Object[0], isRemote);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Evict the shared delegates of the specified JNDI name. The evicted
+	 * delegates can still be used, but the next call to
+	 * <code>getShared*Delegate</code> creates a new delegate.
+	 */
+	public void evictSharedDelegates(String jndiName) {
+		sharedDelegates.evict(jndiName);
+	}
+	
+	
+	/**
+	 * Evict all the shared delegates.
+	 * 
+	 * @see #evictSharedDelegates(String)
+	 */
+	public void clearSharedDelegates() {
+		sharedDelegates.clear();
+	}
+	
+	
+	/**
+	 * Dynamically create a Business Delegate that is backed by a pool of
+	 * remote EJB objects.
+	 * <p>
+	 * Every invocation of the returned delegate borrows an EJB object from
+	 * the pool and returns it when the invocation completes, so a single
+	 * delegate can be shared by many threads. The EJB objects are created
+	 * using the no-argument <code>create</code> method of the home, so the
+	 * pooled delegates are meant for stateless session beans.</p>
+	 * 
+	 * @param jndiName the JNDI name to lookup the EJB.
+	 * @param homeInterface the class of the home interface of the EJB that
+	 *        the created delegate will proxy
+	 * @param businnessInterface the interface that the created delegate
+	 *        will implement
+	 * @param config the settings of the pool
+	 * 
+	 * @return a Business Delegate object for the EJB bound to the specified
+	 *         JNDI name implementing the specified interface.
+	 * 
+	 * @see #getPoolStatistics(Object)
+	 */
+	public Object createPooledRemoteDelegate(String jndiName, Class homeInterface, Class businnessInterface, PoolConfig config) {
+		return createPooledDelegate(jndiName, homeInterface, businnessInterface, config, true);
+	}
+	
+	
+	/**
+	 * Dynamically create a Business Delegate that is backed by a pool of
+	 * local EJB objects.
+	 * 
+	 * @param jndiName the JNDI name to lookup the EJB.
+	 * @param homeInterface the class of the home interface of the EJB that
+	 *        the created delegate will proxy
+	 * @param businnessInterface the interface that the created delegate
+	 *        will implement
+	 * @param config the settings of the pool
+	 * 
+	 * @return a Business Delegate object for the EJB bound to the specified
+	 *         JNDI name implementing the specified interface.
+	 * 
+	 * @see #createPooledRemoteDelegate(String, Class, Class, PoolConfig)
+	 */
+	public Object createPooledLocalDelegate(String jndiName, Class homeInterface, Class businnessInterface, PoolConfig config) {
+		return createPooledDelegate(jndiName, homeInterface, businnessInterface, config, false);
+	}
+	
+	
+	/**
+	 * Dynamically create a Business Delegate that is backed by a pool of
+	 * EJB objects.
+	 * 
+	 * @see #createPooledRemoteDelegate(String, Class, Class, PoolConfig)
+	 */
+	protected Object createPooledDelegate(final String jndiName, final Class homeInterface,
+			Class businnessInterface, PoolConfig config, boolean isRemote) {
+		
+		checkInterface(businnessInterface);
+		final Object home = lookupHome(jndiName, homeInterface, isRemote);
+		EJBObjectPool pool = new EJBObjectPool(config, new EJBCreator() {
+			public Object createEJB() {
+				return createEJBFromHome(home, homeInterface, new Object[0]);
+			}
+		});
+		
+		// the first EJB object is used to check the business interface
+		// and to build the dispatch table, then it goes to the pool
+		Object ejb = pool.getEJB();
+		Object delegate;
+		try {
+			checkEJB(ejb, jndiName, businnessInterface);
+			delegate = newProxy(jndiName, businnessInterface, pool,
+					createDispatchTable(businnessInterface, ejb), isRemote);
+		} catch (RuntimeException e) {
+			pool.releaseEJB(ejb, e);
+			pool.remove();
+			throw e;
+		}
+		pool.releaseEJB(ejb, null);
+		try {
+			pool.prefill();
+		} catch (RuntimeException e) {
+			pool.remove();
+			throw e;
+		}
+		return delegate;
+	}
+	
+	
+	/**
+	 * Dynamically create a Business Delegate that spreads the invocations
+	 * over the EJBs bound to several JNDI names, for example to the same
+	 * bean deployed on the servers of a cluster.
+	 * <p>
+	 * An EJB object is created for each JNDI name (endpoint) and the
+	 * specified strategy selects the endpoint of each invocation. When an
+	 * invocation fails because the endpoint cannot be reached, or its EJB
+	 * object is gone, the endpoint is marked as unavailable and a new EJB
+	 * object is created for it in the background, every
+	 * <code>probeInterval</code> milliseconds, until it succeeds. The
+	 * exceptions of the beans (a <code>ServerException</code> for example)
+	 * leave the endpoint available.</p>
+	 * <p>
+	 * The JNDI name that the interceptors and listeners of the delegate see
+	 * is the specified JNDI names separated with commas.</p>
+	 * 
+	 * @param jndiNames the JNDI names of the endpoints
+	 * @param homeInterface the class of the home interface of the EJBs
+	 * @param businnessInterface the interface that the created delegate
+	 *        will implement
+	 * @param strategy selects the endpoint of each invocation
+	 * 
+	 * @throws RuntimeException the exception of the first endpoint, if an
+	 *         EJB object could not be created for any of the endpoints
+	 * 
+	 * @see #setProbeInterval(long)
+	 * @see #getEndpoints(Object)
+	 */
+	public Object createLoadBalancedRemoteDelegate(String[] jndiNames, Class homeInterface,
+			Class businnessInterface, LoadBalancingStrategy strategy) {
+		return createLoadBalancedDelegate(jndiNames, homeInterface, businnessInterface, strategy, true);
+	}
+	
+	
+	/**
+	 * Dynamically create a Business Delegate that spreads the invocations
+	 * over the local EJBs bound to several JNDI names.
+	 * 
+	 * @see #createLoadBalancedRemoteDelegate(String[], Class, Class, LoadBalancingStrategy)
+	 */
+	public Object createLoadBalancedLocalDelegate(String[] jndiNames, Class homeInterface,
+			Class businnessInterface, LoadBalancingStrategy strategy) {
+		return createLoadBalancedDelegate(jndiNames, homeInterface, businnessInterface, strategy, false);
+	}
+	
+	
+	/**
+	 * Dynamically create a Business Delegate that spreads the invocations
+	 * over the EJBs bound to several JNDI names.
+	 * 
+	 * @see #createLoadBalancedRemoteDelegate(String[], Class, Class, LoadBalancingStrategy)
+	 */
+	protected Object createLoadBalancedDelegate(String[] jndiNames, final Class homeInterface,
+			final Class businnessInterface, LoadBalancingStrategy strategy, final boolean isRemote) {
+		
+		checkInterface(businnessInterface);
+		if (jndiNames.length == 0)
+			throw new IllegalArgumentException("At least one JNDI name is required");
+		
+		Endpoint[] endpoints = new Endpoint[jndiNames.length];
+		StringBuffer names = new StringBuffer();
+		for (int i = 0; i < jndiNames.length; i++) {
+			final String jndiName = jndiNames[i];
+			// the home is looked up on every attempt, so that a stale home
+			// can be replaced by the EJBHomeFactory
+			endpoints[i] = new Endpoint(jndiName, new EJBCreator() {
+				public Object createEJB() {
+					Object home = lookupHome(jndiName, homeInterface, isRemote);
+					Object ejb = createEJBFromHome(home, homeInterface, new Object[0]);
+					checkEJB(ejb, jndiName, businnessInterface);
+					return ejb;
+				}
+			});
+			if (i > 0)
+				names.append(',');
+			names.append(jndiName);
+		}
+		
+		long interval;
+		synchronized (this) {
+			interval = probeInterval;
+		}
+		LoadBalancedEJBSource source = new LoadBalancedEJBSource(endpoints, strategy, getProbeTimer(), interval);
+		source.start();
+		// the EJB objects of the endpoints can have different classes, so
+		// the methods of the business interface are invoked directly
+		return newProxy(names.toString(), businnessInterface, source,
+				createDispatchTable(businnessInterface), isRemote);
+	}
+	
+	
+	/**
+	 * Get the endpoints of the specified load balanced delegate.
+	 * 
+	 * @param delegate a delegate created with one of the
+	 *        <code>createLoadBalanced*Delegate</code> methods of this class
+	 * 
+	 * @throws IllegalArgumentException if the parameter is not a load
+	 *         balanced delegate generated with this class.
+	 */
+	public Endpoint[] getEndpoints(Object delegate) throws IllegalArgumentException {
+		if (!(delegate instanceof GeneratedDelegate)) {
+			EJBSource source = getInvocetionHandler(delegate).getSource();
+			if (source instanceof LoadBalancedEJBSource)
+				return ((LoadBalancedEJBSource) source).getEndpoints();
+		}
+		throw new IllegalArgumentException("The argument is not a load balanced delegate.");
+	}
+	
+	
+	/**
+	 * Create the delegates of the specified manifest in parallel, so that
+	 * the JNDI lookups, the <code>create</code> calls and the preparation of
+	 * the method dispatch happen before the delegates are needed.
+	 * <p>
+	 * The delegates are created in the calling thread and in up to
+	 * <code>parallelism - 1</code> tasks of the <code>TaskExecutor</code> of
+	 * this factory and this method returns when all of them are created or
+	 * have failed. Besides the created
+	 * delegates, the caches of the factory (and of a caching
+	 * <code>EJBHomeFactory</code>) are warmed up, so creating the same
+	 * delegates later is cheaper.</p>
+	 * 
+	 * @param manifest the delegates to create
+	 * @param parallelism the maximum number of delegates that are created
+	 *        at the same time
+	 * @return the result of each entry, in the order of the manifest
+	 * @throws Error if creating a delegate fails with an <code>Error</code>,
+	 *         the entries that have not started yet are skipped
+	 * 
+	 * @see #setTaskExecutor(TaskExecutor)
+	 */
+	public WarmUpResult[] warmUp(final WarmUpEntry[] manifest, int parallelism) {
+		final WarmUpResult[] results = new WarmUpResult[manifest.length];
+		ParallelTasks.run(getTaskExecutor(), manifest.length, parallelism, new ParallelTasks.Task() {
+			public void run(int index) {
+				results[index] = warmUp(manifest[index]);
+			}
+		});
+		return results;
+	}
+	
+	private WarmUpResult warmUp(WarmUpEntry entry) {
+		long start = System.currentTimeMillis();
+		try {
+			Object delegate = createDelegate(entry.getJndiName(), entry.getHomeInterface(),
+					entry.getBusinessInterface(), new Object[0], entry.isRemote());
+			return new WarmUpResult(entry, delegate, null, System.currentTimeMillis() - start);
+		} catch (Exception e) {
+			return new WarmUpResult(entry, null, e, System.currentTimeMillis() - start);
+		}
+	}
+	
+	
+	/**
+	 * Invoke the specified business method of a delegate once for each of
+	 * the specified argument arrays, in parallel.
+	 * <p>
+	 * The invocations run in the calling thread and in up to
+	 * <code>parallelism - 1</code> tasks of the <code>TaskExecutor</code> of
+	 * this factory and this method returns when all of them have completed.
+	 * Since the calling thread takes part, a batch does not wait for free
+	 * threads when it is invoked from a thread of the same executor, for
+	 * example by an asynchronous delegate. With a pooled delegate the concurrent
+	 * invocations use different EJB objects of the pool, with any other
+	 * delegate they are serialized or not by the container, like the
+	 * invocations of several threads would be. The exceptions of the
+	 * invocations are converted by the delegate and do not stop the batch.</p>
+	 * 
+	 * @param delegate a delegate created with this class
+	 * @param method a business method of the delegate
+	 * @param arguments the arguments of each invocation
+	 * @param parallelism the maximum number of invocations that run at the
+	 *        same time
+	 * @return the result of each invocation, in the order of the arguments
+	 * 
+	 * @throws IllegalArgumentException if the delegate does not implement
+	 *         the interface of the method, or the parallelism is not positive
+	 * @see #invokeBulk(Object, Method, Method, Object[][])
+	 * @see #setTaskExecutor(TaskExecutor)
+	 */
+	public BatchResult[] invokeBatch(final Object delegate, final Method method,
+			final Object[][] arguments, int parallelism) {
+		checkDelegateMethod(delegate, method);
+		final BatchResult[] results = new BatchResult[arguments.length];
+		ParallelTasks.run(getTaskExecutor(), arguments.length, parallelism, new ParallelTasks.Task() {
+			public void run(int index) {
+				results[index] = invokeBatchItem(delegate, method, arguments[index]);
+			}
+		});
+		return results;
+	}
+	
+	private BatchResult invokeBatchItem(Object delegate, Method method, Object[] args) {
+		try {
+			return new BatchResult(args, method.invoke(delegate, args), null);
+		} catch (InvocationTargetException e) {
+			return new BatchResult(args, null, e.getTargetException());
+		} catch (Throwable t) {
+			return new BatchResult(args, null, t);
+		}
+	}
+	
+	
+	/**
+	 * Route a batch of invocations of a business method to a single
+	 * invocation of the corresponding bulk method of the delegate.
+	 * <p>
+	 * For each parameter of the method, the bulk method has a parameter
+	 * that is an array of the same type, and it returns an array of the
+	 * return type of the method with the result of each item at the same
+	 * index (or <code>void</code> if the method returns <code>void</code>).
+	 * For example the bulk method of <code>String find(String key)</code>
+	 * is <code>String[] findAll(String[] keys)</code>. If the bulk method
+	 * throws an exception, every item of the batch fails with it.</p>
+	 * 
+	 * @param delegate a delegate created with this class
+	 * @param method a business method of the delegate
+	 * @param bulkMethod the bulk method that corresponds to the method
+	 * @param arguments the arguments of each invocation of the method
+	 * @return the result of each invocation, in the order of the arguments
+	 * 
+	 * @throws IllegalArgumentException if the delegate does not implement
+	 *         the methods, the bulk method does not correspond to the
+	 *         method, or the arguments of an item do not match the
+	 *         parameters of the method (a <code>null</code> argument of a
+	 *         primitive parameter for example)
+	 * @throws IllegalStateException if the bulk method does not return a
+	 *         result for each item
+	 * @see #invokeBatch(Object, Method, Object[][], int)
+	 */
+	public BatchResult[] invokeBulk(Object delegate, Method method, Method bulkMethod, Object[][] arguments) {
+		checkDelegateMethod(delegate, method);
+		checkDelegateMethod(delegate, bulkMethod);
+		checkBulkMethod(method, bulkMethod);
+		
+		Class[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < arguments.length; i++)
+			checkBulkArguments(method, arguments[i], i);
+		Object[] columns = new Object[parameterTypes.length];
+		for (int j = 0; j < parameterTypes.length; j++) {
+			columns[j] = Array.newInstance(parameterTypes[j], arguments.length);
+			for (int i = 0; i < arguments.length; i++) {
+				try {
+					Array.set(columns[j], i, arguments[i][j]);
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("The argument " + j + " of item " + i
+							+ " cannot be converted to " + parameterTypes[j].getName());
+				}
+			}
+		}
+		
+		BatchResult[] results = new BatchResult[arguments.length];
+		Object bulkResult;
+		try {
+			bulkResult = bulkMethod.invoke(delegate, columns);
+		} catch (InvocationTargetException e) {
+			for (int i = 0; i < results.length; i++)
+				results[i] = new BatchResult(arguments[i], null, e.getTargetException());
+			return results;
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		
+		if (bulkResult != null && Array.getLength(bulkResult) != arguments.length)
+			throw new IllegalStateException("The bulk method " + bulkMethod.getName() + " returned "
+					+ Array.getLength(bulkResult) + " results for " + arguments.length + " items");
+		for (int i = 0; i < results.length; i++) {
+			Object result = (bulkResult == null) ? null : Array.get(bulkResult, i);
+			results[i] = new BatchResult(arguments[i], result, null);
+		}
+		return results;
+	}
+	
+	
+	/**
+	 * Iterate over the result of a paged business method of a delegate,
+	 * one page at a time.
+	 * <p>
+	 * The last two parameters of the paged method are the offset of the
+	 * first item and the maximum number of items of a page, and it returns
+	 * the items of the page in a <code>Collection</code> or an array. The
+	 * iterator invokes the method with the specified leading arguments and
+	 * prefetches up to <code>prefetchDepth</code> pages in the
+	 * <code>TaskExecutor</code> of this factory while the current page is
+	 * consumed.</p>
+	 * 
+	 * @param delegate a delegate created with this class
+	 * @param pageMethod the paged business method of the delegate
+	 * @param args the arguments of the method before the offset and limit
+	 * @param pageSize the number of items to fetch with each invocation
+	 * @param prefetchDepth the number of pages to fetch ahead, zero to
+	 *        fetch each page when it is needed
+	 * 
+	 * @throws IllegalArgumentException if the delegate does not implement
+	 *         the method, or the method is not a paged method
+	 * @see PagedIterator
+	 * @see #setTaskExecutor(TaskExecutor)
+	 */
+	public PagedIterator iteratePages(Object delegate, Method pageMethod, Object[] args,
+			int pageSize, int prefetchDepth) {
+		checkDelegateMethod(delegate, pageMethod);
+		return new PagedIterator(delegate, pageMethod, args, pageSize, prefetchDepth, getTaskExecutor());
+	}
+	
+	private void checkDelegateMethod(Object delegate, Method method) {
+		if (!method.getDeclaringClass().isInstance(delegate))
+			throw new IllegalArgumentException("The delegate does not implement "
+					+ method.getDeclaringClass().getName());
+	}
+	
+	private static void checkBulkArguments(Method method, Object[] args, int item) {
+		Class[] params = method.getParameterTypes();
+		int length = (args == null) ? 0 : args.length;
+		if (length != params.length)
+			throw new IllegalArgumentException("Item " + item + " has " + length
+					+ " arguments, the method " + method.getName() + " has " + params.length + " parameters");
+		for (int j = 0; j < length; j++) {
+			if (args[j] == null && params[j].isPrimitive())
+				throw new IllegalArgumentException("The argument " + j + " of item " + item
+						+ " is null but the parameter is a " + params[j].getName());
+		}
+	}
+	
+	private void checkBulkMethod(Method method, Method bulkMethod) {
+		Class[] params = method.getParameterTypes();
+		Class[] bulkParams = bulkMethod.getParameterTypes();
+		boolean matches = params.length == bulkParams.length;
+		for (int i = 0; matches && i < params.length; i++)
+			matches = params[i] == bulkParams[i].getComponentType();
+		if (method.getReturnType() == Void.TYPE)
+			matches = matches && bulkMethod.getReturnType() == Void.TYPE;
+		else
+			matches = matches && method.getReturnType() == bulkMethod.getReturnType().getComponentType();
+		if (!matches)
+			throw new IllegalArgumentException("The method " + bulkMethod
+					+ " is not a bulk method of " + method);
+	}
+	
+	
+	/**
+	 * Create an asynchronous delegate for the specified delegate.
+	 * <p>
+	 * The asynchronous companion interface declares, for some or all the
+	 * methods of the business interface, a method with the same name and
+	 * parameters that returns a <code>FutureResult</code>. Invoking such a
+	 * method on the returned object submits the invocation of the business
+	 * method to the <code>TaskExecutor</code> of this factory and returns
+	 * immediately, so independent calls to one or more beans can run
+	 * concurrently.</p>
+	 * <p>
+	 * Since the business method is invoked on the specified delegate, the
+	 * exceptions of the EJB are converted by the delegate's
+	 * <code>ThrowableConverter</code> before they complete the
+	 * <code>FutureResult</code>. Pooled delegates work best with this method,
+	 * because concurrent invocations can use different EJB objects.</p>
+	 * 
+	 * @param delegate a delegate created with this class
+	 * @param businnessInterface the business interface of the delegate
+	 * @param asyncInterface the asynchronous companion interface
+	 * 
+	 * @return an object that implements the asynchronous companion interface
+	 * 
+	 * @throws IllegalArgumentException if a method of the companion interface
+	 *         does not return <code>FutureResult</code> or does not match a
+	 *         method of the business interface
+	 * 
+	 * @see #setTaskExecutor(TaskExecutor)
+	 */
+	public Object createAsyncDelegate(Object delegate, Class businnessInterface, Class asyncInterface) {
+		checkInterface(asyncInterface);
+		if (!businnessInterface.isInstance(delegate))
+			throw new IllegalArgumentException("The delegate does not implement "
+					+ businnessInterface.getName());
+		
+		Constructor proxyConstructor = ProxyClassCache.getConstructor(
+				Thread.currentThread().getContextClassLoader(), asyncInterface);
+		return ProxyClassCache.newInstance(proxyConstructor,
+				new AsyncInvocationHandler(delegate, businnessInterface, asyncInterface, getTaskExecutor()));
+	}
+	
+	
+	private void checkInterface(Class businnessInterface) {
 		if (!businnessInterface.isInterface())
 			throw new IllegalArgumentException("The specified class '"
 					+ businnessInterface.getName() + "' must be an interface!");
-
-			Object home = null;
-			if (isRemote)
-				home = homeFactory.lookupRemote(jndiName, homeInterface);
-			else
-				home = homeFactory.lookupLocal(jndiName, homeInterface);
-			
-			Object ejb = createEJBFromHome(home, createArgs);
-
-			if (!businnessInterface.isAssignableFrom(ejb.getClass())) {
-				throw new IllegalArgumentException(
-						"The object assigned to JNDI name '" + jndiName
-								+ "' does not implement " + businnessInterface.getName());
+	}
+	
+	private Object lookupHome(String jndiName, Class homeInterface, boolean isRemote) {
+		if (isRemote)
+			return homeFactory.lookupRemote(jndiName, homeInterface);
+		else
+			return homeFactory.lookupLocal(jndiName, homeInterface);
+	}
+	
+	private void checkEJB(Object ejb, String jndiName, Class businnessInterface) {
+		if (!businnessInterface.isAssignableFrom(ejb.getClass())) {
+			throw new IllegalArgumentException(
+					"The object assigned to JNDI name '" + jndiName
+							+ "' does not implement " + businnessInterface.getName());
+		}
+	}
+	
+	private Object newProxy(String jndiName, Class businnessInterface, EJBSource source,
+			Map dispatchTable, boolean isRemote) {
+		return newProxy(jndiName, businnessInterface, source, dispatchTable, isRemote, forwardObjectMethods ? null
+				: DelegateIdentity.forSource(jndiName, businnessInterface, source));
+	}
+	
+	private Object newProxy(String jndiName, Class businnessInterface, EJBSource source,
+			Map dispatchTable, boolean isRemote, DelegateIdentity identity) {
+		Constructor proxyConstructor = ProxyClassCache.getConstructor(
+					Thread.currentThread().getContextClassLoader(), businnessInterface);
+		return ProxyClassCache.newInstance(proxyConstructor,
+					new EJBInvocationHandler(jndiName, source, dispatchTable, isRemote,
+							getInterceptors(), getInvocationListeners(), identity,
+							localMethods.toSet(), proxyConstructor));
+	}
+	
+	
+	/**
+	 * Resolve every method of the specified business interface (and the
+	 * <code>java.lang.Object</code> methods that a proxy forwards) to the
+	 * corresponding method of the EJB's client interface.
+	 * <p>
+	 * The methods are resolved using the declared parameter types of the
+	 * business methods, so primitive parameters and <code>null</code>
+	 * arguments need no special treatment at invocation time.</p>
+	 * 
+	 * @return an unmodifiable <code>Map</code> from the business interface
+	 *         <code>Method</code> to the EJB <code>Method</code>
+	 */
+	private Map createDispatchTable(Class businnessInterface, Object ejb) {
+		return createDispatchTable(businnessInterface, ejb.getClass());
+	}
+	
+	private Map createDispatchTable(Class businnessInterface) {
+		return createDispatchTable(businnessInterface, businnessInterface);
+	}
+	
+	private Map createDispatchTable(Class businnessInterface, Class ejbClass) {
+		Map table = new HashMap();
+		addToDispatchTable(table, businnessInterface.getMethods(), ejbClass);
+		// interfaces do not have the methods of Object
+		Class objectClass = ejbClass.isInterface() ? Object.class : ejbClass;
+		try {
+			addToDispatchTable(table, new Method[] {
+					Object.class.getMethod("hashCode", new Class[0]),
+					Object.class.getMethod("equals", new Class[] { Object.class }),
+					Object.class.getMethod("toString", new Class[0]) }, objectClass);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+		return Collections.unmodifiableMap(table);
+	}
+	
+	private void addToDispatchTable(Map table, Method[] methods, Class ejbClass) {
+		for (int i = 0; i < methods.length; i++) {
+			Method method = methods[i];
+			try {
+				Method target = ejbClass.getMethod(method.getName(), method.getParameterTypes());
+				if (suppressAccessChecks)
+					makeAccessible(target);
+				table.put(method, target);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("The EJB " + ejbClass.getName()
+						+ " does not have a method matching " + method);
 			}
+		}
+	}
 
-			return Proxy.newProxyInstance(
-						Thread.currentThread().getContextClassLoader(),
-						new Class[] { businnessInterface },
-						new EJBInvocationHandler(ejb));
-
+	private static void makeAccessible(Method method) {
+		try {
+			method.setAccessible(true);
+		} catch (SecurityException ignore) { }
 	}
 
 	
-	private Object createEJBFromHome(Object home, Object[] createArgs) {
+	private Object createEJBFromHome(Object home, Class homeInterface, Object[] createArgs) {
+		// the create methods are resolved on the home interface when possible
+		// so that the cache does not depend on the class of the home stub
+		Class homeClass = homeInterface.isInstance(home) ? homeInterface : home.getClass();
 		try {
-			Class[] args = new Class[createArgs.length];
-			for (int i = 0; i < args.length; i++)
-				args[i] = createArgs[i].getClass();
-			
-			return home.getClass()
-						.getMethod("create", args)
+			return createMethodResolver.resolve(homeClass, createArgs)
 						.invoke(home, createArgs);
 		
 		} catch (Exception e) {
@@ -230,7 +1144,29 @@ public class DynamicDelegateFactory {
 	 * @return a reference of the bean's client interface (local or remote).
 	 */
 	public Object getBean(Object delegate) throws IllegalArgumentException {	
-		return getInvocetionHandler(delegate).getEJB();
+		if (delegate instanceof GeneratedDelegate)
+			return ((GeneratedDelegate) delegate).getEJB();
+		return getInvocetionHandler(delegate).getSource().getBean();
+	}
+	
+	
+	/**
+	 * Get the statistics of the pool of EJB objects behind the specified
+	 * pooled delegate.
+	 * 
+	 * @param delegate a delegate created with one of the
+	 *        <code>createPooled*Delegate</code> methods of this class
+	 * 
+	 * @throws IllegalArgumentException if the parameter is not a pooled
+	 *         delegate generated with this class.
+	 */
+	public PoolStatistics getPoolStatistics(Object delegate) throws IllegalArgumentException {
+		if (!(delegate instanceof GeneratedDelegate)) {
+			EJBSource source = getInvocetionHandler(delegate).getSource();
+			if (source instanceof EJBObjectPool)
+				return ((EJBObjectPool) source).getStatistics();
+		}
+		throw new IllegalArgumentException("The argument is not a pooled delegate.");
 	}
 	
 	
@@ -239,7 +1175,12 @@ public class DynamicDelegateFactory {
 	 * <p>
 	 * Since this method calls <code>remove()</code> on the bean's client
 	 * interface, you cannot invoke methods on the specified delegate object
-	 * after this method is invoked.</p>
+	 * after this method is invoked.
+	 * <p>
+	 * 
+	 * For a pooled delegate all the EJB objects of the pool are removed. A
+	 * shared delegate is also evicted, so that the next call to
+	 * <code>getShared*Delegate</code> creates a new one.</p>
 	 * 
 	 * @param delegate the delegate that proxies the bean that we want to
 	 *                 remove.
@@ -248,13 +1189,43 @@ public class DynamicDelegateFactory {
 	 *         delegate generated with this class.
 	 */
 	public void remove(Object delegate) throws IllegalArgumentException {
-		Object ejb = getInvocetionHandler(delegate).getEJB();
+		sharedDelegates.evict(delegate);
+		if (delegate instanceof GeneratedDelegate)
+			removeEJB(((GeneratedDelegate) delegate).getEJB());
+		else
+			getInvocetionHandler(delegate).getSource().remove();
+	}
+
+	
+	static void removeEJB(Object ejb) {
 		try {
 			ejb.getClass().getMethod("remove", new Class[0])
 							.invoke(ejb, new Object[0]);
 		} catch (Exception ignore) { }
 	}
-
+	
+	/**
+	 * Get the identity of the specified delegate, or <code>null</code> if
+	 * the object is not a delegate that answers the methods of
+	 * <code>Object</code> locally.
+	 */
+	static DelegateIdentity getIdentity(Object delegate) {
+		if (delegate instanceof GeneratedDelegate)
+			return ((GeneratedDelegate) delegate).getIdentity();
+		if (delegate != null && Proxy.isProxyClass(delegate.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(delegate);
+			if (handler instanceof EJBInvocationHandler)
+				return ((EJBInvocationHandler) handler).identity;
+		}
+		return null;
+	}
+	
+	/**
+	 * The dispatch table of a dynamic delegate, for the tests.
+	 */
+	Map getDispatchTable(Object delegate) {
+		return getInvocetionHandler(delegate).dispatchTable;
+	}
 	
 	private EJBInvocationHandler getInvocetionHandler(Object delegate)
 	throws IllegalArgumentException {
@@ -266,44 +1237,167 @@ public class DynamicDelegateFactory {
 		throw new IllegalArgumentException("The argument is not a dynamic delegate.");
 	}
 
-	private class EJBInvocationHandler implements InvocationHandler {
+	private class EJBInvocationHandler implements InvocationHandler, InvocationTarget {
 
-		private Object ejb;
+		private String jndiName;
+		private EJBSource source;
+		private Map dispatchTable;
+		private boolean remote;
+		private DelegateInterceptor[] interceptors;
+		private InvocationListener[] listeners;
+		private DelegateIdentity identity;
+		private Set localMethods;
+		/** Method -> LocalResult, one for each local method */
+		private final Map localResults = new HashMap();
+		// keeps the weakly cached constructor alive, see ProxyClassCache
+		private Constructor proxyConstructor;
 		
-		public EJBInvocationHandler(Object ejb) {
-			this.ejb = ejb;
+		public EJBInvocationHandler(String jndiName, EJBSource source, Map dispatchTable, boolean remote,
+				DelegateInterceptor[] interceptors, InvocationListener[] listeners,
+				DelegateIdentity identity, Set localMethods, Constructor proxyConstructor) {
+			this.jndiName = jndiName;
+			this.source = source;
+			this.dispatchTable = dispatchTable;
+			this.remote = remote;
+			this.interceptors = interceptors;
+			this.listeners = listeners;
+			this.identity = identity;
+			this.localMethods = localMethods;
+			this.proxyConstructor = proxyConstructor;
+			for (Iterator i = localMethods.iterator(); i.hasNext(); )
+				localResults.put(i.next(), new LocalResult());
 		}
 
 		public Object invoke(Object proxy, Method method, Object[] args)
 				throws Throwable {
 
-			if (args == null)
-				args = new Object[0];
-			Class[] argsClass = new Class[args.length];
-			for (int i = 0; i < args.length; i++)
-				argsClass[i] = args[i].getClass();
-
+			if (identity != null && method.getDeclaringClass() == Object.class)
+				return invokeObjectMethod(proxy, method, args);
+			if (!localMethods.isEmpty() && localMethods.contains(method))
+				return invokeLocalMethod(method, args);
+			return invokeMonitored(method, args);
+		}
+		
+		private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("equals"))
+				return (proxy == args[0] || identity.equals(getIdentity(args[0])))
+						? Boolean.TRUE : Boolean.FALSE;
+			if (name.equals("hashCode"))
+				return new Integer(identity.hashCode());
+			return identity.toString();
+		}
+		
+		private Object invokeLocalMethod(Method method, Object[] args) throws Throwable {
+			// the map is not modified after the constructor
+			LocalResult local = (LocalResult) localResults.get(method);
+			synchronized (local) {
+				if (!local.done) {
+					local.value = invokeMonitored(method, args);
+					local.done = true;
+				}
+				return local.value;
+			}
+		}
+		
+		private Object invokeMonitored(Method method, Object[] args) throws Throwable {
+			if (listeners.length == 0)
+				return invokeChain(method, args);
+			
+			long start = System.currentTimeMillis();
+			Throwable failure = null;
+			try {
+				return invokeChain(method, args);
+			} catch (Throwable t) {
+				failure = t;
+				throw t;
+			} finally {
+				fireInvocationCompleted(method, System.currentTimeMillis() - start, failure);
+			}
+		}
+		
+		private Object invokeChain(Method method, Object[] args) throws Throwable {
+			if (interceptors.length == 0)
+				return invokeDirectly(method, args);
+			
+			try {
+				return new DelegateInvocation(jndiName, method, args, remote, interceptors, 0, this).proceed();
+			} catch (Throwable t) {
+				throw exceptionConverter.convert(t);
+			}
+		}
+		
+		private Object invokeDirectly(Method method, Object[] args) throws Throwable {
+			return invokeEJB(method, args, true);
+		}
+		
+		public Object invokeEJB(Method method, Object[] args) throws Throwable {
+			return invokeEJB(method, args, false);
+		}
+		
+		private Object invokeEJB(Method method, Object[] args, boolean convert) throws Throwable {
+			Method ejbMethod = getEJBMethod(method);
+			try {
+				return invokeOnce(ejbMethod, args);
+			} catch (InvocationTargetException e) {
+				Throwable failure = e.getTargetException();
+				if (source.isRetryable(failure)) {
+					try {
+						return invokeOnce(ejbMethod, args);
+					} catch (InvocationTargetException retryFailure) {
+						failure = retryFailure.getTargetException();
+					}
+				}
+				throw convert ? exceptionConverter.convert(failure) : failure;
+			}
+		}
+		
+		private Object invokeOnce(Method ejbMethod, Object[] args) throws InvocationTargetException {
+			Object ejb = source.getEJB();
+			Throwable failure = null;
 			try {
-				Method ejbMethod = ejb.getClass().getMethod(method.getName(),
-						argsClass);
-				if (ejbMethod == null)
-					throw new NoSuchMethodException(
-							"Could not find the specified method on the proxied EJB.");
 				return ejbMethod.invoke(ejb, args);
 
-			} catch (NoSuchMethodException e) {
-				throw new RuntimeException(e);
 			} catch (IllegalAccessException e) {
+				failure = e;
 				throw new RuntimeException(e);
 			} catch (InvocationTargetException e) {
-
-				throw exceptionConverter.convert(e.getTargetException());
+				failure = e.getTargetException();
+				throw e;
+			} finally {
+				source.releaseEJB(ejb, failure);
+			}
+		}
+		
+		private void fireInvocationCompleted(Method method, long elapsedTime, Throwable failure) {
+			for (int i = 0; i < listeners.length; i++) {
+				try {
+					listeners[i].invocationCompleted(jndiName, method, elapsedTime, failure);
+				} catch (RuntimeException ignored) {
+					// a listener must not affect the invocation
+				}
 			}
 		}
+		
+		private Method getEJBMethod(Method method) {
+			Method ejbMethod = (Method) dispatchTable.get(method);
+			if (ejbMethod == null)
+				throw new RuntimeException(new NoSuchMethodException(
+						"Could not find the specified method on the proxied EJB."));
+			return ejbMethod;
+		}
 
-		public Object getEJB() {
-			return ejb;
+		public EJBSource getSource() {
+			return source;
 		}
 	}
+	
+	/**
+	 * The result of a local method of a delegate, guarded by its own lock.
+	 */
+	private static class LocalResult {
+		boolean done;
+		Object value;
+	}
 
 }
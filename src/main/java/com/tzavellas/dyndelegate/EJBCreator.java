@@ -0,0 +1,15 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * Creates EJB objects (client interfaces) from a home.
+ * 
+ * @author Spiros Tzavellas
+ */
+interface EJBCreator {
+
+	/**
+	 * Create a new EJB object.
+	 */
+	Object createEJB();
+
+}
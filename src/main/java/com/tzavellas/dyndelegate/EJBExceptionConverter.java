@@ -19,6 +19,20 @@ import javax.ejb.EJBException;
  */
 public class EJBExceptionConverter implements ThrowableConverter {
 
+	private boolean lightweightWrappers = false;
+
+
+	/**
+	 * Whether to wrap the <code>RemoteException</code>s in
+	 * <code>LightweightRuntimeException</code>s, that do not capture a stack
+	 * trace of their own, instead of <code>RuntimeException</code>s.
+	 * Default is <code>false</code>.
+	 */
+	public void setLightweightWrappers(boolean lightweightWrappers) {
+		this.lightweightWrappers = lightweightWrappers;
+	}
+
+
 	/**
 	 *  If the specified Throwable is a RemoteException that wraps
 	 * an unchecked exception return the wrapped unchecked exception,
@@ -38,6 +52,8 @@ public class EJBExceptionConverter implements ThrowableConverter {
 			Throwable cause = ex.getCause();
 			if (cause != null && cause instanceof RuntimeException)
 				return cause;
+			else if (lightweightWrappers)
+				return new LightweightRuntimeException(ex);
 			else
 				return new RuntimeException(ex);
 		}
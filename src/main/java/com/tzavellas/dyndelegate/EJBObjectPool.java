@@ -0,0 +1,221 @@
+package com.tzavellas.dyndelegate;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A bounded pool of EJB objects created from the same home.
+ * <p>
+ * Each invocation of a pooled delegate borrows an EJB object from the pool
+ * and returns it when the invocation completes. EJB objects that throw a
+ * system exception (a <code>RemoteException</code>, a
+ * <code>RuntimeException</code> or an <code>Error</code>) are discarded
+ * instead of being returned to the pool.</p>
+ * <p>
+ * The idle objects are kept in LIFO order, so that the most recently used
+ * objects are reused and the ones at the tail become idle long enough to be
+ * evicted. Eviction happens when objects are borrowed and returned, there is
+ * no background thread.</p>
+ *
+ * @see PoolConfig
+ * @author Spiros Tzavellas
+ */
+class EJBObjectPool implements EJBSource {
+
+	private final PoolConfig config;
+	private final EJBCreator creator;
+
+	/** The idle objects, most recently returned first. */
+	private final LinkedList idle = new LinkedList();
+	private int active;
+	private int creating;
+	private boolean closed;
+
+	private long created;
+	private long destroyed;
+	private long borrowed;
+	private long waited;
+
+
+	/**
+	 * @throws IllegalArgumentException if the settings of the config are
+	 *         not consistent
+	 */
+	EJBObjectPool(PoolConfig config, EJBCreator creator) {
+		config.checkLimits();
+		this.config = config;
+		this.creator = creator;
+	}
+
+
+	/**
+	 * Fill the pool with <code>minIdle</code> objects.
+	 */
+	void prefill() {
+		for (int i = 0; i < config.getMinIdle(); i++) {
+			Object ejb = creator.createEJB();
+			synchronized (this) {
+				created++;
+				idle.addFirst(new IdleObject(ejb));
+			}
+		}
+	}
+
+
+	public Object getEJB() {
+		List expired = new ArrayList();
+		try {
+			synchronized (this) {
+				long maxWait = config.getMaxWait();
+				long deadline = System.currentTimeMillis() + maxWait;
+				boolean counted = false;
+				while (true) {
+					if (closed)
+						throw new IllegalStateException("The pool of EJB objects is closed");
+					evictExpired(expired);
+					if (!idle.isEmpty()) {
+						active++;
+						borrowed++;
+						return ((IdleObject) idle.removeFirst()).ejb;
+					}
+					if (active + creating < config.getMaxActive()) {
+						creating++;
+						break;
+					}
+					if (!counted) {
+						waited++;
+						counted = true;
+					}
+					long remaining = deadline - System.currentTimeMillis();
+					if (maxWait >= 0 && remaining <= 0)
+						throw new IllegalStateException("Timeout waiting for an EJB object from the pool");
+					try {
+						wait(maxWait < 0 ? 0 : remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException("Interrupted while waiting for an EJB object from the pool");
+					}
+				}
+			}
+		} finally {
+			destroy(expired);
+		}
+
+		Object ejb = null;
+		try {
+			ejb = creator.createEJB();
+			return ejb;
+		} finally {
+			synchronized (this) {
+				creating--;
+				if (ejb != null) {
+					created++;
+					borrowed++;
+					active++;
+				}
+				notifyAll();
+			}
+		}
+	}
+
+
+	public void releaseEJB(Object ejb, Throwable failure) {
+		boolean discard = isSystemException(failure);
+		List expired = new ArrayList();
+		synchronized (this) {
+			active--;
+			if (discard || closed) {
+				destroyed++;
+				discard = true;
+			} else {
+				idle.addFirst(new IdleObject(ejb));
+				evictExpired(expired);
+			}
+			notifyAll();
+		}
+		// a failed object is just dropped, calling remove() would fail too
+		if (discard && failure == null)
+			DynamicDelegateFactory.removeEJB(ejb);
+		destroy(expired);
+	}
+
+
+	public boolean isRetryable(Throwable failure) {
+		return false;
+	}
+
+
+	public Object getBean() {
+		throw new IllegalArgumentException("The delegate is backed by a pool of EJB objects");
+	}
+
+
+	/**
+	 * Close the pool and remove all the idle objects. The objects that are in
+	 * use are removed when they are returned.
+	 */
+	public void remove() {
+		List removed;
+		synchronized (this) {
+			closed = true;
+			removed = new ArrayList(idle.size());
+			for (Iterator i = idle.iterator(); i.hasNext(); )
+				removed.add(((IdleObject) i.next()).ejb);
+			destroyed += idle.size();
+			idle.clear();
+			notifyAll();
+		}
+		destroy(removed);
+	}
+
+
+	synchronized PoolStatistics getStatistics() {
+		return new PoolStatistics(active, idle.size(), created, destroyed, borrowed, waited);
+	}
+
+
+	/**
+	 * Move the objects that were idle for too long into the specified list.
+	 * Must be called holding the lock of the pool.
+	 */
+	private void evictExpired(List expired) {
+		long timeout = config.getIdleTimeout();
+		if (timeout == 0)
+			return;
+		long now = System.currentTimeMillis();
+		while (idle.size() > config.getMinIdle()) {
+			IdleObject oldest = (IdleObject) idle.getLast();
+			if (now - oldest.since < timeout)
+				break;
+			idle.removeLast();
+			destroyed++;
+			expired.add(oldest.ejb);
+		}
+	}
+
+
+	private static void destroy(List ejbs) {
+		for (Iterator i = ejbs.iterator(); i.hasNext(); )
+			DynamicDelegateFactory.removeEJB(i.next());
+	}
+
+
+	private static boolean isSystemException(Throwable t) {
+		return t instanceof RuntimeException
+			|| t instanceof Error
+			|| t instanceof RemoteException;
+	}
+
+
+	private static class IdleObject {
+		final Object ejb;
+		final long since = System.currentTimeMillis();
+
+		IdleObject(Object ejb) {
+			this.ejb = ejb;
+		}
+	}
+}
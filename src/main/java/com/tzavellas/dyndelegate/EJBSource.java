@@ -0,0 +1,44 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * Provides the EJB (client interface) that a delegate invokes.
+ * 
+ * @author Spiros Tzavellas
+ */
+interface EJBSource {
+
+	/**
+	 * Return the EJB to use for an invocation.
+	 */
+	Object getEJB();
+	
+	/**
+	 * Called after an invocation on an EJB returned by {@link #getEJB()}.
+	 * 
+	 * @param ejb the EJB that was invoked
+	 * @param failure the exception thrown by the EJB, or <code>null</code>
+	 *        if the invocation completed normally
+	 */
+	void releaseEJB(Object ejb, Throwable failure);
+	
+	/**
+	 * Whether an invocation that failed with the specified exception,
+	 * returned to {@link #releaseEJB(Object, Throwable)}, should be retried
+	 * once with another EJB from this source.
+	 */
+	boolean isRetryable(Throwable failure);
+	
+	/**
+	 * Return the EJB behind the delegate.
+	 * 
+	 * @throws IllegalArgumentException if the delegate is not backed by
+	 *         a single EJB
+	 */
+	Object getBean() throws IllegalArgumentException;
+	
+	/**
+	 * Remove the EJB(s) of this source.
+	 */
+	void remove();
+
+}
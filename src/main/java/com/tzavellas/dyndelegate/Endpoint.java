@@ -0,0 +1,124 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * One of the JNDI names behind a load balanced delegate.
+ * <p>
+ * An endpoint keeps the EJB object that was created from the home bound
+ * to its JNDI name, the number of invocations that are in progress and
+ * an exponentially weighted moving average (EWMA) of the latencies of its
+ * invocations. An endpoint is marked as unavailable when an invocation
+ * fails because the endpoint cannot be reached or its EJB object is gone
+ * (a <code>ConnectException</code> or a <code>NoSuchObjectException</code>
+ * for example, but not a <code>ServerException</code> that wraps an
+ * exception of the bean) and becomes available again when a new EJB
+ * object is created successfully.</p>
+ * 
+ * @see LoadBalancingStrategy
+ * @see DynamicDelegateFactory#getEndpoints(Object)
+ * @author Spiros Tzavellas
+ */
+public class Endpoint {
+
+	/** The weight of the latest latency in the moving average. */
+	private static final double ALPHA = 0.3;
+
+	private final String jndiName;
+	private final EJBCreator creator;
+	private Object ejb;
+	private boolean available;
+	private int outstanding;
+	private double averageLatency;
+	private long invocations;
+	private long completed;
+	private long failures;
+	
+	
+	Endpoint(String jndiName, EJBCreator creator) {
+		this.jndiName = jndiName;
+		this.creator = creator;
+	}
+	
+	
+	/** The JNDI name of this endpoint. */
+	public String getJndiName() {
+		return jndiName;
+	}
+	
+	/** Whether this endpoint is used for invocations. */
+	public synchronized boolean isAvailable() {
+		return available;
+	}
+	
+	/** The number of invocations that are in progress. */
+	public synchronized int getOutstandingCount() {
+		return outstanding;
+	}
+	
+	/** The moving average of the latencies of the invocations, in milliseconds. */
+	public synchronized double getAverageLatency() {
+		return averageLatency;
+	}
+	
+	/** The number of invocations that were routed to this endpoint. */
+	public synchronized long getInvocationCount() {
+		return invocations;
+	}
+	
+	/** The number of times this endpoint was marked as unavailable. */
+	public synchronized long getFailureCount() {
+		return failures;
+	}
+	
+	public String toString() {
+		return "Endpoint[" + jndiName + "]";
+	}
+	
+	
+	EJBCreator getCreator() {
+		return creator;
+	}
+	
+	synchronized Object getEJB() {
+		return ejb;
+	}
+	
+	synchronized void markUp(Object ejb) {
+		this.ejb = ejb;
+		this.available = true;
+	}
+	
+	/**
+	 * @return whether the endpoint was available
+	 */
+	synchronized boolean markDown() {
+		boolean wasAvailable = available;
+		if (wasAvailable) {
+			available = false;
+			failures++;
+		}
+		return wasAvailable;
+	}
+	
+	/**
+	 * Mark the endpoint as unavailable without counting a failure.
+	 * 
+	 * @return the EJB object of the endpoint if it was available
+	 */
+	synchronized Object close() {
+		Object current = available ? ejb : null;
+		available = false;
+		return current;
+	}
+	
+	synchronized Object acquire() {
+		outstanding++;
+		invocations++;
+		return ejb;
+	}
+	
+	synchronized void release(long latency) {
+		outstanding--;
+		averageLatency = (++completed == 1) ? latency
+				: averageLatency * (1 - ALPHA) + latency * ALPHA;
+	}
+}
@@ -0,0 +1,92 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * The result of an asynchronous invocation through a delegate.
+ * <p>
+ * The methods of an asynchronous companion interface return objects of
+ * this class.</p>
+ * 
+ * @see DynamicDelegateFactory#createAsyncDelegate(Object, Class, Class)
+ * @author Spiros Tzavellas
+ */
+public class FutureResult {
+
+	private Object value;
+	private Throwable exception;
+	private boolean done;
+	
+	
+	/**
+	 * Complete this result with the specified value.
+	 */
+	synchronized void set(Object value) {
+		this.value = value;
+		this.done = true;
+		notifyAll();
+	}
+	
+	
+	/**
+	 * Complete this result with the specified exception.
+	 */
+	synchronized void setException(Throwable exception) {
+		this.exception = exception;
+		this.done = true;
+		notifyAll();
+	}
+	
+	
+	/**
+	 * Whether the invocation has completed.
+	 */
+	public synchronized boolean isDone() {
+		return done;
+	}
+	
+	
+	/**
+	 * Wait for the invocation to complete and return its result.
+	 * 
+	 * @return the value returned by the invocation (primitive values are
+	 *         wrapped), or <code>null</code> for <code>void</code> methods
+	 * @throws InvocationTargetException if the invocation threw an
+	 *         exception, the exception is the target exception
+	 * @throws InterruptedException if the current thread is interrupted
+	 *         while waiting
+	 */
+	public synchronized Object get() throws InvocationTargetException, InterruptedException {
+		while (!done)
+			wait();
+		return getResult();
+	}
+	
+	
+	/**
+	 * Wait at most the specified time for the invocation to complete and
+	 * return its result.
+	 * 
+	 * @param timeout the time to wait in milliseconds
+	 * @throws DelegateTimeoutException if the invocation did not complete
+	 *         in time
+	 * @see #get()
+	 */
+	public synchronized Object get(long timeout) throws InvocationTargetException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (!done) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0)
+				throw new DelegateTimeoutException("The invocation did not complete in " + timeout + " ms");
+			wait(remaining);
+		}
+		return getResult();
+	}
+	
+	
+	private Object getResult() throws InvocationTargetException {
+		if (exception != null)
+			throw new InvocationTargetException(exception);
+		return value;
+	}
+}
@@ -0,0 +1,100 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * The superclass of the delegate classes that are generated at runtime
+ * when a <code>DynamicDelegateFactory</code> is configured to generate
+ * delegate classes.
+ * <p>
+ * This class is public only because the generated classes are defined
+ * in their own class loader. It is not meant to be used or extended
+ * directly.</p>
+ *
+ * @see DynamicDelegateFactory#setGenerateDelegateClasses(boolean)
+ *
+ * @author Spiros Tzavellas
+ */
+public abstract class GeneratedDelegate {
+
+	/** The client interface (local or remote) of the proxied EJB. */
+	protected final Object ejb;
+
+	private final DynamicDelegateFactory factory;
+	private final Method[] methods;
+	private DelegateIdentity identity;
+
+
+	/**
+	 * @param ejb the client interface of the proxied EJB
+	 * @param factory the factory that created this delegate
+	 * @param methods the business methods of the delegate, in the order
+	 *        that the generated class refers to them
+	 */
+	protected GeneratedDelegate(Object ejb, DynamicDelegateFactory factory, Method[] methods) {
+		this.ejb = ejb;
+		this.factory = factory;
+		this.methods = methods;
+	}
+
+
+	/**
+	 * Convert an exception thrown by the EJB using the factory's
+	 * <code>ThrowableConverter</code>.
+	 * <p>
+	 * Like a <code>java.lang.reflect.Proxy</code> would do, a checked
+	 * exception that is not declared by the business method gets wrapped
+	 * in an <code>UndeclaredThrowableException</code>.</p>
+	 *
+	 * @param ex the exception thrown by the EJB
+	 * @param methodIndex the index of the business method that was called
+	 * @return the exception that the delegate must throw
+	 */
+	protected final Throwable convert(Throwable ex, int methodIndex) {
+		Throwable converted = factory.getExceptionConverter().convert(ex);
+		if (converted instanceof RuntimeException || converted instanceof Error)
+			return converted;
+
+		Class[] declared = methods[methodIndex].getExceptionTypes();
+		for (int i = 0; i < declared.length; i++) {
+			if (declared[i].isInstance(converted))
+				return converted;
+		}
+		return new UndeclaredThrowableException(converted);
+	}
+
+
+	Object getEJB() {
+		return ejb;
+	}
+
+
+	DelegateIdentity getIdentity() {
+		return identity;
+	}
+
+
+	/**
+	 * Set the identity that answers the methods of <code>Object</code>, or
+	 * <code>null</code> to forward them to the EJB.
+	 */
+	void setIdentity(DelegateIdentity identity) {
+		this.identity = identity;
+	}
+
+
+	public boolean equals(Object obj) {
+		if (identity == null)
+			return ejb.equals(obj);
+		return this == obj || identity.equals(DynamicDelegateFactory.getIdentity(obj));
+	}
+
+	public int hashCode() {
+		return (identity == null) ? ejb.hashCode() : identity.hashCode();
+	}
+
+	public String toString() {
+		return (identity == null) ? ejb.toString() : identity.toString();
+	}
+}
@@ -0,0 +1,103 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * A snapshot of the statistics of a <code>PersistentEJBHomeFactory</code>.
+ *
+ * @see PersistentEJBHomeFactory#getStatistics()
+ *
+ * @author Spiros Tzavellas
+ */
+public class HandleCacheStatistics {
+
+	private final int handles;
+	private final long hits;
+	private final long misses;
+	private final long staleHandles;
+	private final long restoreTime;
+	private final long loadTime;
+	private final long writes;
+	private final long writeFailures;
+
+	HandleCacheStatistics(int handles, long hits, long misses, long staleHandles,
+			long restoreTime, long loadTime, long writes, long writeFailures) {
+		this.handles = handles;
+		this.hits = hits;
+		this.misses = misses;
+		this.staleHandles = staleHandles;
+		this.restoreTime = restoreTime;
+		this.loadTime = loadTime;
+		this.writes = writes;
+		this.writeFailures = writeFailures;
+	}
+
+	/** The number of home handles in the cache. */
+	public int getHandleCount() {
+		return handles;
+	}
+
+	/** The number of remote homes that were restored from a handle. */
+	public long getHitCount() {
+		return hits;
+	}
+
+	/** The number of remote homes that were looked up in JNDI. */
+	public long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * The ratio of the remote lookups that were restored from a handle, or
+	 * zero if there were no lookups.
+	 */
+	public double getHitRatio() {
+		long lookups = hits + misses;
+		return (lookups == 0) ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * The number of handles that could not be restored and were replaced
+	 * with a JNDI lookup. Each is also counted as a miss.
+	 */
+	public long getStaleHandleCount() {
+		return staleHandles;
+	}
+
+	/** The total time, in milliseconds, spent restoring homes from handles. */
+	public long getRestoreTime() {
+		return restoreTime;
+	}
+
+	/**
+	 * The average time, in milliseconds, to restore a home from a handle,
+	 * or zero if no home was restored.
+	 */
+	public double getAverageRestoreTime() {
+		return (hits == 0) ? 0 : (double) restoreTime / hits;
+	}
+
+	/** The time, in milliseconds, that loading the cache file took. */
+	public long getLoadTime() {
+		return loadTime;
+	}
+
+	/** The number of times that the cache file was written. */
+	public long getWriteCount() {
+		return writes;
+	}
+
+	/**
+	 * The number of times that the cache file could not be written or
+	 * replaced. The changes of a failed write are retried with the next
+	 * write.
+	 */
+	public long getWriteFailureCount() {
+		return writeFailures;
+	}
+
+	public String toString() {
+		return "HandleCacheStatistics[handles=" + handles + ", hits=" + hits
+			+ ", misses=" + misses + ", stale=" + staleHandles
+			+ ", restoreTime=" + restoreTime + ", loadTime=" + loadTime
+			+ ", writes=" + writes + ", writeFailures=" + writeFailures + "]";
+	}
+}
@@ -0,0 +1,316 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A <code>DelegateInterceptor</code> that sends a second, <i>hedged</i>,
+ * invocation of an idempotent business method when the first one is slow,
+ * and returns the response that arrives first.
+ * <p>
+ * Only the methods that are registered with {@link #addMethod(Method)} are
+ * hedged, and only for remote delegates. The invocations of these methods
+ * run in the threads of a <code>TaskExecutor</code> while the caller
+ * waits. If the first invocation has not completed after the hedging
+ * delay, the invocation proceeds a second time. For pooled delegates the
+ * second invocation uses a different EJB object from the pool, so hedging
+ * is most useful with pooled delegates of stateless session beans spread
+ * across a cluster.</p>
+ * <p>
+ * The threads of the executor do not have the transaction or the security
+ * context of the caller. The invocations of local delegates must run in
+ * the caller's transaction, so they are never hedged and always proceed in
+ * the calling thread.</p>
+ * <p>
+ * The delay is either fixed or, when
+ * {@link #setPercentileDelay(boolean) percentile delay} is enabled, the
+ * 95th percentile of the recent latencies of the first invocations of the
+ * method. To cap the extra
+ * load, hedges are only sent while they are fewer than the budget ratio of
+ * the invocations.</p>
+ * <p>
+ * The first successful response wins and the caller returns as soon as it
+ * arrives. If both invocations fail, the exception of the first invocation
+ * to fail is thrown. The slower invocation is not cancelled, its result is
+ * discarded.</p>
+ *
+ * @see DynamicDelegateFactory#addInterceptor(DelegateInterceptor)
+ * @author Spiros Tzavellas
+ */
+public class HedgingInterceptor implements DelegateInterceptor {
+
+	/** The number of recent latencies kept per method for the percentile. */
+	private static final int SAMPLES = 100;
+
+	private final TaskExecutor executor;
+	private final MethodSet methods = new MethodSet();
+	private volatile long delay = 100;
+	private volatile boolean percentileDelay = false;
+	private volatile double budgetRatio = 0.05;
+
+	/** Method -> Latencies */
+	private final Map latencies = new HashMap();
+
+	private long calls;
+	private long hedges;
+	private long hedgesWon;
+
+
+	/**
+	 * Construct a <code>HedgingInterceptor</code> that runs the invocations
+	 * in the specified <code>TaskExecutor</code>.
+	 */
+	public HedgingInterceptor(TaskExecutor executor) {
+		this.executor = executor;
+	}
+
+
+	/**
+	 * Hedge the invocations of the specified method of a business interface.
+	 */
+	public void addMethod(Method method) {
+		methods.add(method);
+	}
+
+
+	/**
+	 * Hedge the invocations of all the methods with the specified name of
+	 * the specified business interface.
+	 *
+	 * @throws IllegalArgumentException if the interface does not have a
+	 *         method with the specified name
+	 */
+	public void addMethod(Class businessInterface, String methodName) {
+		methods.add(businessInterface, methodName);
+	}
+
+
+	/**
+	 * Set the time, in milliseconds, to wait for the first invocation before
+	 * sending a hedge. When percentile delay is enabled this is used until
+	 * enough latencies of a method are recorded. The default is 100.
+	 */
+	public void setDelay(long delay) {
+		if (delay < 0)
+			throw new IllegalArgumentException("The delay cannot be negative");
+		this.delay = delay;
+	}
+
+
+	/**
+	 * Whether the delay is the 95th percentile of the recent latencies of
+	 * each method. Default is <code>false</code>.
+	 */
+	public void setPercentileDelay(boolean percentileDelay) {
+		this.percentileDelay = percentileDelay;
+	}
+
+
+	/**
+	 * Set the maximum ratio of hedges to invocations. The default is 0.05,
+	 * that is at most one hedge per 20 invocations.
+	 */
+	public void setBudgetRatio(double budgetRatio) {
+		if (budgetRatio < 0 || budgetRatio > 1)
+			throw new IllegalArgumentException("The budget ratio must be between 0 and 1");
+		this.budgetRatio = budgetRatio;
+	}
+
+
+	public Object invoke(DelegateInvocation invocation) throws Throwable {
+		Method method = invocation.getMethod();
+		if (!invocation.isRemote() || !methods.contains(method))
+			return invocation.proceed();
+
+		synchronized (this) {
+			calls++;
+		}
+		Latencies methodLatencies = getLatencies(method);
+		long hedgeDelay = percentileDelay ? methodLatencies.getPercentile95(delay) : delay;
+
+		Race race = new Race();
+		race.start(invocation, methodLatencies);
+		if (!race.await(hedgeDelay) && tryAcquireHedge())
+			race.start(invocation, null);
+
+		try {
+			return race.getResult();
+		} finally {
+			if (race.isHedgeWinner()) {
+				synchronized (this) {
+					hedgesWon++;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * The number of invocations of the hedged methods.
+	 */
+	public synchronized long getCallCount() {
+		return calls;
+	}
+
+
+	/**
+	 * The number of hedges that were sent.
+	 */
+	public synchronized long getHedgeCount() {
+		return hedges;
+	}
+
+
+	/**
+	 * The number of hedges that completed before the first invocation.
+	 */
+	public synchronized long getHedgeWinCount() {
+		return hedgesWon;
+	}
+
+
+	private synchronized boolean tryAcquireHedge() {
+		if (hedges >= budgetRatio * calls)
+			return false;
+		hedges++;
+		return true;
+	}
+
+
+	private Latencies getLatencies(Method method) {
+		synchronized (latencies) {
+			Latencies l = (Latencies) latencies.get(method);
+			if (l == null) {
+				l = new Latencies();
+				latencies.put(method, l);
+			}
+			return l;
+		}
+	}
+
+
+	/**
+	 * The invocations of a method call that compete for the response.
+	 */
+	private class Race {
+		private int started;
+		private int failed;
+		private boolean done;
+		private Object result;
+		private Throwable failure;
+		private boolean hedgeWinner;
+
+		/**
+		 * Start an invocation in the executor. The first invocation records
+		 * its latency in the specified latencies, the hedge passes
+		 * <code>null</code>.
+		 */
+		void start(final DelegateInvocation invocation, final Latencies latencies) {
+			synchronized (this) {
+				started++;
+			}
+			final boolean hedge = (latencies == null);
+			executor.execute(new Runnable() {
+				public void run() {
+					long start = System.currentTimeMillis();
+					try {
+						succeeded(invocation.proceed(), hedge);
+					} catch (Throwable t) {
+						failed(t);
+					} finally {
+						if (!hedge)
+							latencies.add(System.currentTimeMillis() - start);
+					}
+				}
+			});
+		}
+
+		synchronized void succeeded(Object result, boolean hedge) {
+			if (done)
+				return;
+			this.result = result;
+			this.failure = null;
+			this.hedgeWinner = hedge;
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized void failed(Throwable t) {
+			if (done)
+				return;
+			if (failure == null)
+				failure = t;
+			if (++failed == started) {
+				done = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Wait for the specified time for the race to complete.
+		 *
+		 * @return whether the race completed
+		 */
+		synchronized boolean await(long timeout) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			while (!done && remaining > 0) {
+				wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return done;
+		}
+
+		synchronized Object getResult() throws Throwable {
+			boolean interrupted = false;
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (failure != null)
+				throw failure;
+			return result;
+		}
+
+		synchronized boolean isHedgeWinner() {
+			return hedgeWinner;
+		}
+	}
+
+
+	/**
+	 * The recent latencies of a method, in a ring buffer.
+	 */
+	private static class Latencies {
+		private final long[] samples = new long[SAMPLES];
+		private int count;
+		private int next;
+
+		synchronized void add(long latency) {
+			samples[next] = latency;
+			next = (next + 1) % samples.length;
+			if (count < samples.length)
+				count++;
+		}
+
+		/**
+		 * The 95th percentile of the recorded latencies, or the specified
+		 * default if too few latencies are recorded.
+		 */
+		synchronized long getPercentile95(long defaultValue) {
+			if (count < 20)
+				return defaultValue;
+			long[] sorted = new long[count];
+			System.arraycopy(samples, 0, sorted, 0, count);
+			Arrays.sort(sorted);
+			return sorted[(count * 95 - 1) / 100];
+		}
+	}
+}
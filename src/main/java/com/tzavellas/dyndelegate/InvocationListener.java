@@ -0,0 +1,31 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+
+/**
+ * Gets notified when an invocation of a business method of a delegate
+ * completes.
+ * <p>
+ * The listeners are called by the thread that invoked the delegate, so
+ * they must be thread safe and fast. Any <code>RuntimeException</code>
+ * thrown by a listener is ignored.</p>
+ *
+ * @see DynamicDelegateFactory#addInvocationListener(InvocationListener)
+ * @see DelegateMetrics
+ * @author Spiros Tzavellas
+ */
+public interface InvocationListener {
+
+	/**
+	 * Called after an invocation of a business method of a delegate.
+	 *
+	 * @param jndiName the JNDI name of the EJB that the delegate proxies
+	 * @param method the invoked method of the business interface
+	 * @param elapsedTime the duration of the invocation in milliseconds
+	 * @param failure the exception thrown to the caller, after the
+	 *        conversion of the <code>ThrowableConverter</code>, or
+	 *        <code>null</code> if the invocation completed normally
+	 */
+	void invocationCompleted(String jndiName, Method method, long elapsedTime, Throwable failure);
+
+}
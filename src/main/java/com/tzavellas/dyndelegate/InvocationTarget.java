@@ -0,0 +1,20 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+
+/**
+ * The end of a chain of interceptors, invokes the EJB.
+ * 
+ * @author Spiros Tzavellas
+ */
+interface InvocationTarget {
+
+	/**
+	 * Invoke the EJB method that corresponds to the specified business
+	 * method.
+	 * 
+	 * @throws Throwable the exception thrown by the EJB, not converted
+	 */
+	Object invokeEJB(Method method, Object[] args) throws Throwable;
+
+}
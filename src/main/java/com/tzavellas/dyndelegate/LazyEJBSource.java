@@ -0,0 +1,75 @@
+package com.tzavellas.dyndelegate;
+
+import java.rmi.NoSuchObjectException;
+
+import javax.ejb.NoSuchObjectLocalException;
+
+/**
+ * An <code>EJBSource</code> that creates its EJB object when it is first
+ * needed.
+ * <p>
+ * The EJB object is created once, even when the first invocations happen
+ * concurrently. When an invocation fails because the EJB object does not
+ * exist any more (a <code>NoSuchObjectException</code> or a
+ * <code>NoSuchObjectLocalException</code>, for example after a restart of
+ * the server) the EJB object is discarded and the invocation is retried
+ * once with a new one. Since the EJB object did not exist, the failed
+ * invocation did not execute.</p>
+ *
+ * @author Spiros Tzavellas
+ */
+class LazyEJBSource implements EJBSource {
+
+	private final EJBCreator creator;
+	private Object ejb;
+	
+	
+	LazyEJBSource(EJBCreator creator) {
+		this.creator = creator;
+	}
+	
+	
+	public synchronized Object getEJB() {
+		if (ejb == null)
+			ejb = creator.createEJB();
+		return ejb;
+	}
+
+	
+	public void releaseEJB(Object ejb, Throwable failure) {
+		if (isStale(failure)) {
+			synchronized (this) {
+				// another invocation might have already replaced it
+				if (this.ejb == ejb)
+					this.ejb = null;
+			}
+		}
+	}
+
+	
+	public boolean isRetryable(Throwable failure) {
+		return isStale(failure);
+	}
+
+	
+	public Object getBean() {
+		return getEJB();
+	}
+
+	
+	public void remove() {
+		Object removed;
+		synchronized (this) {
+			removed = ejb;
+			ejb = null;
+		}
+		if (removed != null)
+			DynamicDelegateFactory.removeEJB(removed);
+	}
+	
+	
+	private static boolean isStale(Throwable failure) {
+		return failure instanceof NoSuchObjectException
+			|| failure instanceof NoSuchObjectLocalException;
+	}
+}
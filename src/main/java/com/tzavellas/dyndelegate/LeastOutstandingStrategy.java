@@ -0,0 +1,23 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * A <code>LoadBalancingStrategy</code> that selects the endpoint with the
+ * fewest invocations in progress.
+ * 
+ * @author Spiros Tzavellas
+ */
+public class LeastOutstandingStrategy implements LoadBalancingStrategy {
+
+	public Endpoint select(Endpoint[] endpoints) {
+		Endpoint selected = endpoints[0];
+		int least = selected.getOutstandingCount();
+		for (int i = 1; i < endpoints.length; i++) {
+			int outstanding = endpoints[i].getOutstandingCount();
+			if (outstanding < least) {
+				selected = endpoints[i];
+				least = outstanding;
+			}
+		}
+		return selected;
+	}
+}
@@ -0,0 +1,51 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * A <code>RuntimeException</code> that wraps another exception without
+ * capturing a stack trace of its own.
+ * <p>
+ * Filling in the stack trace is the most expensive part of creating an
+ * exception. Since a wrapper is created at a known place (the delegate),
+ * it has no stack trace of its own and {@link #getStackTrace()} returns
+ * the trace of the wrapped exception. The trace is only built when it is
+ * requested, so wrapping an exception does not copy it.
+ * <code>printStackTrace</code> prints the trace of the wrapped exception
+ * after the message of the wrapper.</p>
+ *
+ * @see EJBExceptionConverter#setLightweightWrappers(boolean)
+ * @see RuntimeExceptionWrapper#setLightweightWrappers(boolean)
+ * @author Spiros Tzavellas
+ */
+public class LightweightRuntimeException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+
+	/**
+	 * Construct a <code>LightweightRuntimeException</code> that wraps the
+	 * specified exception.
+	 */
+	public LightweightRuntimeException(Throwable cause) {
+		super(cause);
+	}
+
+
+	/**
+	 * Does not fill in the stack trace, the trace of the cause is used.
+	 */
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+
+
+	/**
+	 * The stack trace that was set with <code>setStackTrace</code>, if any,
+	 * else the stack trace of the wrapped exception.
+	 */
+	public StackTraceElement[] getStackTrace() {
+		StackTraceElement[] own = super.getStackTrace();
+		if (own.length == 0 && getCause() != null)
+			return getCause().getStackTrace();
+		return own;
+	}
+}
@@ -0,0 +1,49 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * A snapshot of the statistics of a <code>ConcurrencyLimiter</code> for
+ * a JNDI name.
+ * 
+ * @see ConcurrencyLimiter#getStatistics(String)
+ * 
+ * @author Spiros Tzavellas
+ */
+public class LimiterStatistics {
+
+	private final int limit;
+	private final int inFlight;
+	private final long accepted;
+	private final long rejected;
+	
+	LimiterStatistics(int limit, int inFlight, long accepted, long rejected) {
+		this.limit = limit;
+		this.inFlight = inFlight;
+		this.accepted = accepted;
+		this.rejected = rejected;
+	}
+	
+	/** The current estimate of the number of concurrent invocations. */
+	public int getLimit() {
+		return limit;
+	}
+	
+	/** The number of invocations that are currently in progress. */
+	public int getInFlightCount() {
+		return inFlight;
+	}
+	
+	/** The number of invocations that were allowed to proceed. */
+	public long getAcceptedCount() {
+		return accepted;
+	}
+	
+	/** The number of invocations that were rejected. */
+	public long getRejectedCount() {
+		return rejected;
+	}
+	
+	public String toString() {
+		return "LimiterStatistics[limit=" + limit + ", inFlight=" + inFlight
+			+ ", accepted=" + accepted + ", rejected=" + rejected + "]";
+	}
+}
@@ -0,0 +1,175 @@
+package com.tzavellas.dyndelegate;
+
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.MarshalException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.ejb.NoSuchObjectLocalException;
+
+/**
+ * An <code>EJBSource</code> that spreads the invocations over the EJB
+ * objects of several endpoints.
+ * <p>
+ * An endpoint is marked as unavailable when an invocation fails because
+ * the endpoint cannot be reached or its EJB object is gone: a
+ * <code>ConnectException</code>, <code>ConnectIOException</code>,
+ * <code>UnknownHostException</code>, <code>MarshalException</code>,
+ * <code>NoSuchObjectException</code> or
+ * <code>NoSuchObjectLocalException</code>. Other exceptions, like a
+ * <code>ServerException</code> that wraps an exception of the bean, leave
+ * the endpoint available. The unavailable endpoints are probed in the
+ * background, by creating a new EJB object, until they recover.</p>
+ * 
+ * @see LoadBalancingStrategy
+ * @author Spiros Tzavellas
+ */
+class LoadBalancedEJBSource implements EJBSource {
+
+	private final Endpoint[] endpoints;
+	private final LoadBalancingStrategy strategy;
+	private final Timer timer;
+	private final long probeInterval;
+	private volatile boolean closed;
+	
+	/** The endpoints of the invocations in progress of the current thread */
+	private final ThreadLocal leases = new ThreadLocal() {
+		protected Object initialValue() {
+			return new LinkedList();
+		}
+	};
+	
+	
+	LoadBalancedEJBSource(Endpoint[] endpoints, LoadBalancingStrategy strategy,
+			Timer timer, long probeInterval) {
+		this.endpoints = endpoints;
+		this.strategy = strategy;
+		this.timer = timer;
+		this.probeInterval = probeInterval;
+	}
+	
+	
+	/**
+	 * Create the EJB objects of the endpoints. The endpoints that fail are
+	 * scheduled for probing.
+	 * 
+	 * @return an EJB object of one of the endpoints
+	 * @throws RuntimeException the exception of the first endpoint, if no
+	 *         EJB object could be created
+	 */
+	Object start() {
+		Object ejb = null;
+		RuntimeException firstFailure = null;
+		for (int i = 0; i < endpoints.length; i++) {
+			try {
+				endpoints[i].markUp(endpoints[i].getCreator().createEJB());
+				if (ejb == null)
+					ejb = endpoints[i].getEJB();
+			} catch (RuntimeException e) {
+				if (firstFailure == null)
+					firstFailure = e;
+				scheduleProbe(endpoints[i]);
+			}
+		}
+		if (ejb == null) {
+			closed = true;
+			throw firstFailure;
+		}
+		return ejb;
+	}
+	
+	
+	Endpoint[] getEndpoints() {
+		return (Endpoint[]) endpoints.clone();
+	}
+
+
+	public Object getEJB() {
+		List available = new ArrayList(endpoints.length);
+		for (int i = 0; i < endpoints.length; i++) {
+			if (endpoints[i].isAvailable())
+				available.add(endpoints[i]);
+		}
+		if (available.isEmpty())
+			throw new IllegalStateException("None of the endpoints of the delegate is available");
+		
+		Endpoint endpoint = strategy.select((Endpoint[]) available.toArray(new Endpoint[available.size()]));
+		Object ejb = endpoint.acquire();
+		((LinkedList) leases.get()).addLast(new Lease(endpoint));
+		return ejb;
+	}
+
+	
+	public void releaseEJB(Object ejb, Throwable failure) {
+		Lease lease = (Lease) ((LinkedList) leases.get()).removeLast();
+		lease.endpoint.release(System.currentTimeMillis() - lease.start);
+		if (isEndpointFailure(failure)) {
+			if (lease.endpoint.markDown())
+				scheduleProbe(lease.endpoint);
+		}
+	}
+	
+	
+	private static boolean isEndpointFailure(Throwable failure) {
+		return failure instanceof ConnectException
+			|| failure instanceof ConnectIOException
+			|| failure instanceof UnknownHostException
+			|| failure instanceof MarshalException
+			|| failure instanceof NoSuchObjectException
+			|| failure instanceof NoSuchObjectLocalException;
+	}
+
+	
+	public boolean isRetryable(Throwable failure) {
+		return false;
+	}
+
+	
+	public Object getBean() {
+		throw new IllegalArgumentException("The delegate is backed by the EJB objects of several endpoints");
+	}
+
+	
+	public void remove() {
+		closed = true;
+		for (int i = 0; i < endpoints.length; i++) {
+			Object ejb = endpoints[i].close();
+			if (ejb != null)
+				DynamicDelegateFactory.removeEJB(ejb);
+		}
+	}
+	
+	
+	private void scheduleProbe(final Endpoint endpoint) {
+		if (closed)
+			return;
+		timer.schedule(new TimerTask() {
+			public void run() {
+				if (closed)
+					return;
+				try {
+					endpoint.markUp(endpoint.getCreator().createEJB());
+				} catch (Throwable t) {
+					// an error would kill the timer thread
+					scheduleProbe(endpoint);
+				}
+			}
+		}, probeInterval);
+	}
+	
+	
+	private static class Lease {
+		final Endpoint endpoint;
+		final long start = System.currentTimeMillis();
+		
+		Lease(Endpoint endpoint) {
+			this.endpoint = endpoint;
+		}
+	}
+}
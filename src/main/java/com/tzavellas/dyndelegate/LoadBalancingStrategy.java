@@ -0,0 +1,24 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * A strategy interface for selecting the endpoint that serves an
+ * invocation of a load balanced delegate.
+ * 
+ * @see RoundRobinStrategy
+ * @see LeastOutstandingStrategy
+ * @see PowerOfTwoChoicesStrategy
+ * @see DynamicDelegateFactory#createLoadBalancedRemoteDelegate(String[], Class, Class, LoadBalancingStrategy)
+ * 
+ * @author Spiros Tzavellas
+ */
+public interface LoadBalancingStrategy {
+
+	/**
+	 * Select one of the specified endpoints.
+	 * 
+	 * @param endpoints the available endpoints, never empty
+	 * @return the selected endpoint
+	 */
+	Endpoint select(Endpoint[] endpoints);
+
+}
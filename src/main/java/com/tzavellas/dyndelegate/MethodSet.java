@@ -0,0 +1,60 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A thread safe set of the business methods that an interceptor applies to.
+ *
+ * @author Spiros Tzavellas
+ */
+class MethodSet {
+
+	private final Set methods = new HashSet();
+
+
+	synchronized void add(Method method) {
+		methods.add(method);
+	}
+
+
+	/**
+	 * Add all the methods with the specified name of the specified business
+	 * interface.
+	 *
+	 * @throws IllegalArgumentException if the interface does not have a
+	 *         method with the specified name
+	 */
+	void add(Class businessInterface, String methodName) {
+		Method[] candidates = businessInterface.getMethods();
+		boolean found = false;
+		for (int i = 0; i < candidates.length; i++) {
+			if (candidates[i].getName().equals(methodName)) {
+				add(candidates[i]);
+				found = true;
+			}
+		}
+		if (!found)
+			throw new IllegalArgumentException("The interface " + businessInterface.getName()
+					+ " does not have a method named " + methodName);
+	}
+
+
+	synchronized boolean contains(Method method) {
+		return methods.contains(method);
+	}
+
+
+	synchronized boolean isEmpty() {
+		return methods.isEmpty();
+	}
+
+
+	/**
+	 * A copy of the methods of this set.
+	 */
+	synchronized Set toSet() {
+		return new HashSet(methods);
+	}
+}
@@ -0,0 +1,209 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An <code>Iterator</code> over the result of a paged business method,
+ * that fetches the result one page at a time and prefetches the next
+ * pages in the background.
+ * <p>
+ * A paged business method follows the <i>Value List Handler</i>
+ * convention: its last two parameters are the <code>int</code> offset of
+ * the first item and the maximum number of items to return, and it returns
+ * a <code>Collection</code> or an array with the items of the page. A page
+ * with fewer items than the page size is the last page.</p>
+ * <p>
+ * While the items of a page are consumed, up to the prefetch depth of the
+ * following pages are fetched in the threads of a
+ * <code>TaskExecutor</code>, so the client holds at most
+ * <code>(1 + prefetch depth) * page size</code> items and the network time
+ * overlaps the processing of the items. The pages that are prefetched after
+ * the last page are discarded.</p>
+ * <p>
+ * The exceptions of the delegate are thrown from {@link #hasNext()} and
+ * {@link #next()}, checked exceptions wrapped in an
+ * <code>UndeclaredThrowableException</code>. Call {@link #close()} to
+ * discard the prefetched pages when the iteration is abandoned.</p>
+ *
+ * @see DynamicDelegateFactory#iteratePages(Object, Method, Object[], int, int)
+ * @author Spiros Tzavellas
+ */
+public class PagedIterator implements Iterator {
+
+	private final Object delegate;
+	private final Method pageMethod;
+	private final Object[] args;
+	private final int pageSize;
+	private final int prefetchDepth;
+	private final TaskExecutor executor;
+
+	/** The FutureResults of the pages that are requested but not consumed. */
+	private final LinkedList pending = new LinkedList();
+	private Iterator current = Collections.EMPTY_LIST.iterator();
+	private int nextOffset;
+	private boolean lastPage;
+	private int pages;
+
+
+	PagedIterator(Object delegate, Method pageMethod, Object[] args,
+			int pageSize, int prefetchDepth, TaskExecutor executor) {
+		checkPageMethod(pageMethod, args);
+		if (pageSize < 1)
+			throw new IllegalArgumentException("The page size must be positive");
+		if (prefetchDepth < 0)
+			throw new IllegalArgumentException("The prefetch depth cannot be negative");
+		this.delegate = delegate;
+		this.pageMethod = pageMethod;
+		this.args = (args == null) ? new Object[0] : (Object[]) args.clone();
+		this.pageSize = pageSize;
+		this.prefetchDepth = prefetchDepth;
+		this.executor = executor;
+	}
+
+
+	private static void checkPageMethod(Method method, Object[] args) {
+		Class[] params = method.getParameterTypes();
+		int argCount = (args == null) ? 0 : args.length;
+		Class returnType = method.getReturnType();
+		if (params.length != argCount + 2
+				|| params[argCount] != Integer.TYPE || params[argCount + 1] != Integer.TYPE
+				|| !(returnType.isArray() || Collection.class.isAssignableFrom(returnType)))
+			throw new IllegalArgumentException("The method " + method + " is not a paged method "
+					+ "with " + argCount + " arguments, an offset and a limit");
+	}
+
+
+	public synchronized boolean hasNext() {
+		while (!current.hasNext()) {
+			if (lastPage && pending.isEmpty())
+				return false;
+			current = nextPage().iterator();
+		}
+		return true;
+	}
+
+
+	public synchronized Object next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		return current.next();
+	}
+
+
+	/**
+	 * @throws UnsupportedOperationException always
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+
+	/**
+	 * Stop the iteration and discard the pages that are prefetched. The
+	 * invocations that are in progress complete in the background.
+	 */
+	public synchronized void close() {
+		lastPage = true;
+		pending.clear();
+		current = Collections.EMPTY_LIST.iterator();
+	}
+
+
+	/**
+	 * The number of pages that have been consumed.
+	 */
+	public synchronized int getPageCount() {
+		return pages;
+	}
+
+
+	private List nextPage() {
+		requestPages(1);
+		FutureResult future = (FutureResult) pending.removeFirst();
+		Object page;
+		try {
+			page = future.get();
+		} catch (InvocationTargetException e) {
+			close();
+			Throwable failure = e.getTargetException();
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof Error)
+				throw (Error) failure;
+			throw new UndeclaredThrowableException(failure);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for a page", e);
+		}
+
+		List items = toList(page);
+		pages++;
+		if (items.size() < pageSize) {
+			// the pages that were prefetched after the last page are empty
+			lastPage = true;
+			pending.clear();
+		} else {
+			requestPages(prefetchDepth);
+		}
+		return items;
+	}
+
+
+	/**
+	 * Request the next pages until the specified number of pages is in
+	 * progress.
+	 */
+	private void requestPages(int count) {
+		while (!lastPage && pending.size() < count) {
+			pending.addLast(fetch(nextOffset));
+			nextOffset += pageSize;
+		}
+	}
+
+
+	private FutureResult fetch(int offset) {
+		final Object[] pageArgs = new Object[args.length + 2];
+		System.arraycopy(args, 0, pageArgs, 0, args.length);
+		pageArgs[args.length] = new Integer(offset);
+		pageArgs[args.length + 1] = new Integer(pageSize);
+
+		final FutureResult result = new FutureResult();
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					result.set(pageMethod.invoke(delegate, pageArgs));
+				} catch (InvocationTargetException e) {
+					result.setException(e.getTargetException());
+				} catch (Throwable t) {
+					result.setException(t);
+				}
+			}
+		});
+		return result;
+	}
+
+
+	private static List toList(Object page) {
+		if (page == null)
+			return Collections.EMPTY_LIST;
+		if (page instanceof List)
+			return (List) page;
+		if (page instanceof Collection)
+			return new ArrayList((Collection) page);
+		int length = Array.getLength(page);
+		List items = new ArrayList(length);
+		for (int i = 0; i < length; i++)
+			items.add(Array.get(page, i));
+		return items;
+	}
+}
@@ -0,0 +1,105 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * Runs a number of indexed tasks in the threads of a
+ * <code>TaskExecutor</code>, with a bounded degree of parallelism, and
+ * waits for all of them to complete.
+ * <p>
+ * Up to <code>parallelism</code> workers run the tasks, one in the calling
+ * thread and the others in the executor, and each worker runs the next task
+ * that has not started yet, so a slow task does not hold back the tasks
+ * that follow it. Since the calling thread also runs tasks, all the tasks
+ * complete even when the workers of the executor cannot start, for example
+ * when the calling thread is itself a thread of a saturated executor.</p>
+ *
+ * @author Spiros Tzavellas
+ */
+class ParallelTasks {
+
+	/**
+	 * A task that is run once for each index.
+	 */
+	interface Task {
+		/**
+		 * Run the task with the specified index. A task should record its
+		 * failures, an exception or error that it throws stops the tasks
+		 * that have not started yet and is thrown to the caller of
+		 * {@link ParallelTasks#run(TaskExecutor, int, int, Task)}.
+		 */
+		void run(int index);
+	}
+
+
+	private ParallelTasks() { }
+
+
+	/**
+	 * Run the specified task for the indexes from zero to
+	 * <code>count - 1</code> and return when all of them have completed.
+	 * The writes of the tasks are visible to the caller when this method
+	 * returns. If a task throws, the tasks that have not started are
+	 * skipped and the first exception or error is thrown once the started
+	 * tasks complete.
+	 *
+	 * @throws IllegalArgumentException if the parallelism is not positive
+	 */
+	static void run(TaskExecutor executor, int count, int parallelism, final Task task) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("The parallelism must be positive");
+
+		final int[] next = new int[1];
+		final int[] completed = new int[1];
+		// lowered to the started tasks when a task fails
+		final int[] last = new int[] { count };
+		final Throwable[] failure = new Throwable[1];
+		Runnable worker = new Runnable() {
+			public void run() {
+				while (true) {
+					int i;
+					synchronized (next) {
+						if (next[0] == last[0])
+							return;
+						i = next[0]++;
+					}
+					Throwable t = null;
+					try {
+						task.run(i);
+					} catch (RuntimeException e) {
+						t = e;
+					} catch (Error e) {
+						t = e;
+					}
+					synchronized (next) {
+						if (t != null && failure[0] == null) {
+							failure[0] = t;
+							last[0] = next[0];
+						}
+						completed[0]++;
+						next.notifyAll();
+					}
+				}
+			}
+		};
+
+		for (int i = 1; i < Math.min(parallelism, count); i++)
+			executor.execute(worker);
+		worker.run();
+
+		boolean interrupted = false;
+		synchronized (next) {
+			while (completed[0] < last[0]) {
+				try {
+					next.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (failure[0] instanceof Error)
+			throw (Error) failure[0];
+		if (failure[0] != null)
+			throw (RuntimeException) failure[0];
+	}
+}
@@ -0,0 +1,423 @@
+package com.tzavellas.dyndelegate;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+import javax.ejb.HomeHandle;
+import javax.rmi.PortableRemoteObject;
+
+/**
+ * An <code>EJBHomeFactory</code> that keeps the <code>HomeHandle</code>s
+ * of the remote homes in a file, so that after a restart the homes are
+ * restored from their handles instead of being looked up in JNDI.
+ * <p>
+ * The handles are kept per JNDI name and home interface. A restored home is
+ * checked with a call to <code>getEJBMetaData()</code>, since restoring a
+ * handle usually does not contact the server. When a handle cannot be
+ * restored (the handle class is missing, the server that it refers to is
+ * gone, the check fails with a <code>RemoteException</code>, or the
+ * restored home does not implement the home interface) it is stale and
+ * the home is looked up using another
+ * <code>EJBHomeFactory</code> (by default a
+ * <code>SimpleEJBHomeFactory</code>), whose handle then replaces the stale
+ * one. Local homes do not have handles, their lookups always go to the
+ * other factory.</p>
+ * <p>
+ * The cache file is read through a memory mapped buffer. A missing or
+ * corrupted file is treated as an empty cache. The added, replaced and
+ * removed handles are written together, to a new file that replaces the
+ * cache file, at most once per {@link #setWriteDelay(long) write delay},
+ * so a cold start with many lookups rewrites the file a few times. Call
+ * {@link #flush()} to write the pending changes, for example when the
+ * application has started. A write that fails, for example because the
+ * cache file cannot be replaced while it is still mapped, is counted in
+ * the statistics and retried with the next write. This factory restores a
+ * home on each
+ * lookup, so wrap it in a <code>CachingEJBHomeFactory</code> to keep the
+ * restored homes:</p>
+ * <pre>
+ * new CachingEJBHomeFactory(new PersistentEJBHomeFactory(new File("homes.cache")))
+ * </pre>
+ *
+ * @see HandleCacheStatistics
+ * @see CachingEJBHomeFactory
+ * @author Spiros Tzavellas
+ */
+public class PersistentEJBHomeFactory implements EJBHomeFactory {
+
+	private static final int MAGIC = 0x44444843;
+	private static final int VERSION = 1;
+
+	/** Writes the pending changes of all the factories. */
+	private static final Timer writer = new Timer(true);
+
+	private final File file;
+	private final EJBHomeFactory homeFactory;
+	private volatile long writeDelay = 1000;
+
+	/** Key -> serialized HomeHandle */
+	private final Map handles = new HashMap();
+	/** Serializes the writes of the cache file. */
+	private final Object writeLock = new Object();
+	private boolean dirty;
+	private boolean writeScheduled;
+
+	private long hits;
+	private long misses;
+	private long staleHandles;
+	private long restoreTime;
+	private long loadTime;
+	private long writes;
+	private long writeFailures;
+
+
+	/**
+	 * Construct a <code>PersistentEJBHomeFactory</code> that keeps the
+	 * handles in the specified file and looks up the homes that are not
+	 * in the file using the specified <code>EJBHomeFactory</code>.
+	 */
+	public PersistentEJBHomeFactory(File file, EJBHomeFactory homeFactory) {
+		this.file = file;
+		this.homeFactory = homeFactory;
+		load();
+	}
+
+
+	/**
+	 * Construct a <code>PersistentEJBHomeFactory</code> that keeps the
+	 * handles in the specified file and looks up the homes that are not
+	 * in the file using a <code>SimpleEJBHomeFactory</code>.
+	 */
+	public PersistentEJBHomeFactory(File file) {
+		this(file, new SimpleEJBHomeFactory());
+	}
+
+
+	/**
+	 * Set the time, in milliseconds, that the changes of the handles wait
+	 * to be written together. A value of zero means that each change is
+	 * written immediately. The default is 1000.
+	 */
+	public void setWriteDelay(long writeDelay) {
+		if (writeDelay < 0)
+			throw new IllegalArgumentException("The write delay cannot be negative");
+		this.writeDelay = writeDelay;
+	}
+
+
+	/** {@inheritDoc} */
+	public EJBHome lookupRemote(String jndiName, Class homeInterface) {
+		Key key = new Key(jndiName, homeInterface.getName());
+		byte[] handle;
+		synchronized (handles) {
+			handle = (byte[]) handles.get(key);
+		}
+
+		if (handle != null) {
+			long start = System.currentTimeMillis();
+			EJBHome home = restore(handle, homeInterface);
+			long elapsed = System.currentTimeMillis() - start;
+			synchronized (handles) {
+				if (home != null) {
+					hits++;
+					restoreTime += elapsed;
+					return home;
+				}
+				staleHandles++;
+			}
+		}
+
+		synchronized (handles) {
+			misses++;
+		}
+		EJBHome home = homeFactory.lookupRemote(jndiName, homeInterface);
+		store(key, home);
+		return home;
+	}
+
+
+	/** {@inheritDoc} */
+	public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+		return homeFactory.lookupLocal(jndiName, homeInterface);
+	}
+
+
+	/**
+	 * Remove the handles of the homes that are bound to the specified JNDI
+	 * name, so that the next lookups go to JNDI.
+	 */
+	public void invalidate(String jndiName) {
+		boolean removed = false;
+		synchronized (handles) {
+			for (Iterator i = handles.keySet().iterator(); i.hasNext(); ) {
+				if (((Key) i.next()).jndiName.equals(jndiName)) {
+					i.remove();
+					removed = true;
+				}
+			}
+			dirty |= removed;
+		}
+		if (removed)
+			scheduleWrite();
+	}
+
+
+	/**
+	 * Write the pending changes of the handles to the cache file.
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			Map snapshot;
+			synchronized (handles) {
+				if (!dirty)
+					return;
+				snapshot = new HashMap(handles);
+				dirty = false;
+			}
+			boolean written = save(snapshot);
+			synchronized (handles) {
+				if (written) {
+					writes++;
+				} else {
+					writeFailures++;
+					dirty = true;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Get a snapshot of the statistics of this factory.
+	 */
+	public HandleCacheStatistics getStatistics() {
+		synchronized (handles) {
+			return new HandleCacheStatistics(handles.size(), hits, misses,
+					staleHandles, restoreTime, loadTime, writes, writeFailures);
+		}
+	}
+
+
+	/**
+	 * Restore a home from a serialized handle.
+	 *
+	 * @return the home, or <code>null</code> if the handle is stale
+	 */
+	private static EJBHome restore(byte[] handle, Class homeInterface) {
+		try {
+			ObjectInputStream in = new ContextObjectInputStream(new ByteArrayInputStream(handle));
+			EJBHome home = ((HomeHandle) in.readObject()).getEJBHome();
+			home = (EJBHome) PortableRemoteObject.narrow(home, homeInterface);
+			// the handle gives a stub without contacting the server, a
+			// RemoteException here means that the handle is stale
+			home.getEJBMetaData();
+			return home;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+
+	private void store(Key key, EJBHome home) {
+		byte[] handle;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(home.getHomeHandle());
+			out.close();
+			handle = bytes.toByteArray();
+		} catch (Exception e) {
+			// the home can still be used, it just cannot be restored later
+			return;
+		}
+		synchronized (handles) {
+			handles.put(key, handle);
+			dirty = true;
+		}
+		scheduleWrite();
+	}
+
+
+	private void scheduleWrite() {
+		long delay = writeDelay;
+		if (delay == 0) {
+			flush();
+			return;
+		}
+		synchronized (handles) {
+			if (writeScheduled)
+				return;
+			writeScheduled = true;
+		}
+		writer.schedule(new TimerTask() {
+			public void run() {
+				synchronized (handles) {
+					writeScheduled = false;
+				}
+				flush();
+			}
+		}, delay);
+	}
+
+
+	/**
+	 * Read the handles from the cache file. A missing or corrupted file is
+	 * ignored.
+	 */
+	private void load() {
+		long start = System.currentTimeMillis();
+		if (file.exists()) {
+			Map loaded = new HashMap();
+			try {
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					FileChannel channel = raf.getChannel();
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+					if (buffer.getInt() == MAGIC && buffer.getInt() == VERSION) {
+						int count = buffer.getInt();
+						for (int i = 0; i < count; i++) {
+							Key key = new Key(readString(buffer), readString(buffer));
+							loaded.put(key, readBytes(buffer));
+						}
+						handles.putAll(loaded);
+					}
+				} finally {
+					raf.close();
+				}
+			} catch (IOException ignore) {
+			} catch (BufferUnderflowException ignore) {
+			} catch (IllegalArgumentException ignore) { }
+		}
+		loadTime = System.currentTimeMillis() - start;
+	}
+
+
+	/**
+	 * Write the specified handles to a new file that replaces the cache
+	 * file. The new file is not mapped, so that it can be renamed.
+	 *
+	 * @return whether the cache file was replaced
+	 */
+	private boolean save(Map snapshot) {
+		File tmp = new File(file.getPath() + ".tmp");
+		try {
+			FileOutputStream fos = new FileOutputStream(tmp);
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(snapshot.size());
+				for (Iterator i = snapshot.entrySet().iterator(); i.hasNext(); ) {
+					Map.Entry e = (Map.Entry) i.next();
+					Key key = (Key) e.getKey();
+					writeBytes(out, key.jndiName.getBytes("UTF-8"));
+					writeBytes(out, key.homeInterface.getBytes("UTF-8"));
+					writeBytes(out, (byte[]) e.getValue());
+				}
+				out.flush();
+				fos.getFD().sync();
+			} finally {
+				fos.close();
+			}
+		} catch (IOException e) {
+			tmp.delete();
+			return false;
+		}
+		if (tmp.renameTo(file))
+			return true;
+		// some platforms do not rename over an existing file
+		file.delete();
+		if (tmp.renameTo(file))
+			return true;
+		tmp.delete();
+		return false;
+	}
+
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+
+	private static String readString(ByteBuffer buffer) throws UnsupportedEncodingException {
+		return new String(readBytes(buffer), "UTF-8");
+	}
+
+
+	private static byte[] readBytes(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining())
+			throw new IllegalArgumentException("Corrupted cache file");
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+
+	private static class Key {
+		final String jndiName;
+		final String homeInterface;
+
+		Key(String jndiName, String homeInterface) {
+			this.jndiName = jndiName;
+			this.homeInterface = homeInterface;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return jndiName.equals(other.jndiName) && homeInterface.equals(other.homeInterface);
+		}
+
+		public int hashCode() {
+			return jndiName.hashCode() * 31 + homeInterface.hashCode();
+		}
+	}
+
+
+	/**
+	 * Resolves the classes of the handles with the context class loader, the
+	 * handle classes of the application server may not be visible to the
+	 * class loader of this class.
+	 */
+	private static class ContextObjectInputStream extends ObjectInputStream {
+
+		ContextObjectInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		protected Class resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			if (loader != null) {
+				try {
+					return Class.forName(desc.getName(), false, loader);
+				} catch (ClassNotFoundException ignore) { }
+			}
+			return super.resolveClass(desc);
+		}
+	}
+}
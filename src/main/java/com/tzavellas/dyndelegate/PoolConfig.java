@@ -0,0 +1,96 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * The settings of the pool of EJB objects behind a pooled delegate.
+ * 
+ * @see DynamicDelegateFactory#createPooledRemoteDelegate(String, Class, Class, PoolConfig)
+ * @see DynamicDelegateFactory#createPooledLocalDelegate(String, Class, Class, PoolConfig)
+ * 
+ * @author Spiros Tzavellas
+ */
+public class PoolConfig {
+
+	private int minIdle = 0;
+	private int maxActive = 8;
+	private long maxWait = -1;
+	private long idleTimeout = 0;
+	
+	
+	/**
+	 * The minimum number of idle EJB objects that the pool keeps. The pool
+	 * is filled with this number of objects when it is created and idle
+	 * objects are not evicted below this number. It cannot be greater than
+	 * {@link #getMaxActive() maxActive} when the pool is created. The
+	 * default is zero.
+	 */
+	public int getMinIdle() {
+		return minIdle;
+	}
+	
+	public void setMinIdle(int minIdle) {
+		if (minIdle < 0)
+			throw new IllegalArgumentException("The minimum idle objects cannot be negative");
+		this.minIdle = minIdle;
+	}
+	
+	
+	/**
+	 * The maximum number of EJB objects that the pool creates. When all of
+	 * them are in use the invocations wait for one to be returned. It
+	 * cannot be less than {@link #getMinIdle() minIdle} when the pool is
+	 * created. The default is 8.
+	 */
+	public int getMaxActive() {
+		return maxActive;
+	}
+	
+	public void setMaxActive(int maxActive) {
+		if (maxActive < 1)
+			throw new IllegalArgumentException("The maximum active objects must be positive");
+		this.maxActive = maxActive;
+	}
+	
+	
+	/**
+	 * Check the settings that depend on each other. The setters do not
+	 * check them, so that the settings can be set in any order.
+	 * 
+	 * @throws IllegalArgumentException if minIdle is greater than maxActive
+	 */
+	void checkLimits() {
+		if (minIdle > maxActive)
+			throw new IllegalArgumentException("The minimum idle objects (" + minIdle
+					+ ") cannot be more than the maximum active objects (" + maxActive + ")");
+	}
+	
+	
+	/**
+	 * The maximum time, in milliseconds, that an invocation waits for an EJB
+	 * object when the pool is exhausted. A negative value (the default) means
+	 * wait indefinitely.
+	 */
+	public long getMaxWait() {
+		return maxWait;
+	}
+	
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+	
+	
+	/**
+	 * The time, in milliseconds, after which an idle EJB object is evicted
+	 * from the pool (unless the pool has only {@link #getMinIdle() minIdle}
+	 * objects). A value of zero (the default) means that idle objects are
+	 * never evicted.
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+	
+	public void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout < 0)
+			throw new IllegalArgumentException("The idle timeout cannot be negative");
+		this.idleTimeout = idleTimeout;
+	}
+}
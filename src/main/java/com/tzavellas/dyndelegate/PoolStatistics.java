@@ -0,0 +1,67 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * A snapshot of the statistics of the pool of EJB objects behind a pooled
+ * delegate.
+ * 
+ * @see DynamicDelegateFactory#getPoolStatistics(Object)
+ * 
+ * @author Spiros Tzavellas
+ */
+public class PoolStatistics {
+
+	private final int active;
+	private final int idle;
+	private final long created;
+	private final long destroyed;
+	private final long borrowed;
+	private final long waited;
+	
+	PoolStatistics(int active, int idle, long created, long destroyed, long borrowed, long waited) {
+		this.active = active;
+		this.idle = idle;
+		this.created = created;
+		this.destroyed = destroyed;
+		this.borrowed = borrowed;
+		this.waited = waited;
+	}
+	
+	/** The number of EJB objects that are currently in use. */
+	public int getActiveCount() {
+		return active;
+	}
+	
+	/** The number of idle EJB objects in the pool. */
+	public int getIdleCount() {
+		return idle;
+	}
+	
+	/** The number of EJB objects that the pool has created. */
+	public long getCreatedCount() {
+		return created;
+	}
+	
+	/**
+	 * The number of EJB objects that the pool has destroyed, because they
+	 * failed with a system exception or because they were idle for too long.
+	 */
+	public long getDestroyedCount() {
+		return destroyed;
+	}
+	
+	/** The number of times an EJB object was taken from the pool. */
+	public long getBorrowedCount() {
+		return borrowed;
+	}
+	
+	/** The number of times an invocation had to wait for an EJB object. */
+	public long getWaitCount() {
+		return waited;
+	}
+	
+	public String toString() {
+		return "PoolStatistics[active=" + active + ", idle=" + idle
+			+ ", created=" + created + ", destroyed=" + destroyed
+			+ ", borrowed=" + borrowed + ", waited=" + waited + "]";
+	}
+}
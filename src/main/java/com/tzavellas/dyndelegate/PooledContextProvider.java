@@ -0,0 +1,111 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.Hashtable;
+import java.util.LinkedList;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+/**
+ * A <code>ContextProvider</code> that keeps a pool of idle
+ * <code>InitialContext</code> objects.
+ * <p>
+ * A context is taken from the pool (or created if the pool is empty) for
+ * each lookup and is returned to the pool when it is released. At most
+ * <code>maxIdle</code> contexts are kept in the pool, any extra released
+ * context is closed. Failed contexts are closed instead of being returned
+ * to the pool.</p>
+ * 
+ * @see ContextProvider
+ * @author Spiros Tzavellas
+ */
+public class PooledContextProvider extends SimpleContextProvider {
+
+	/** The default maximum number of idle contexts. */
+	public static final int DEFAULT_MAX_IDLE = 8;
+	
+	private final LinkedList idle = new LinkedList();
+	private int maxIdle = DEFAULT_MAX_IDLE;
+	private boolean closed = false;
+	
+	
+	/**
+	 * Construct a <code>PooledContextProvider</code> that creates contexts
+	 * using the default JNDI environment.
+	 */
+	public PooledContextProvider() {
+		super();
+	}
+	
+	
+	/**
+	 * Construct a <code>PooledContextProvider</code> that creates contexts
+	 * using the specified JNDI environment properties.
+	 */
+	public PooledContextProvider(Hashtable environment) {
+		super(environment);
+	}
+	
+	
+	/**
+	 * Set the maximum number of idle contexts to keep. The default is
+	 * {@value #DEFAULT_MAX_IDLE}.
+	 */
+	public void setMaxIdle(int maxIdle) {
+		if (maxIdle < 0)
+			throw new IllegalArgumentException("The maximum number of idle contexts cannot be negative");
+		synchronized (idle) {
+			this.maxIdle = maxIdle;
+		}
+	}
+	
+	
+	/**
+	 * The number of idle contexts in the pool.
+	 */
+	public int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+	
+	
+	/** {@inheritDoc} */
+	public Context getContext() throws NamingException {
+		synchronized (idle) {
+			if (closed)
+				throw new IllegalStateException("The context provider is closed");
+			if (!idle.isEmpty())
+				return (Context) idle.removeFirst();
+		}
+		return createContext();
+	}
+	
+	
+	/** {@inheritDoc} */
+	public void releaseContext(Context ctx) {
+		synchronized (idle) {
+			if (!closed && idle.size() < maxIdle) {
+				idle.addFirst(ctx);
+				return;
+			}
+		}
+		closeContext(ctx);
+	}
+	
+	
+	/** {@inheritDoc} */
+	public void invalidateContext(Context ctx) {
+		closeContext(ctx);
+	}
+	
+	
+	/** {@inheritDoc} */
+	public void close() {
+		synchronized (idle) {
+			closed = true;
+			while (!idle.isEmpty())
+				closeContext((Context) idle.removeFirst());
+		}
+	}
+}
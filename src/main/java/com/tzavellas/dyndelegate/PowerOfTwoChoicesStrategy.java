@@ -0,0 +1,39 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.Random;
+
+/**
+ * A <code>LoadBalancingStrategy</code> that picks two endpoints at random
+ * and selects the one with the lower expected latency.
+ * <p>
+ * The expected latency of an endpoint is the moving average of its
+ * latencies multiplied by the number of invocations that would be in
+ * progress, so that slow endpoints and busy endpoints both get fewer
+ * invocations. Comparing only two random endpoints avoids sending all the
+ * invocations to the same endpoint, as long as its statistics are stale.</p>
+ * 
+ * @author Spiros Tzavellas
+ */
+public class PowerOfTwoChoicesStrategy implements LoadBalancingStrategy {
+
+	private final Random random = new Random();
+	
+	public Endpoint select(Endpoint[] endpoints) {
+		if (endpoints.length == 1)
+			return endpoints[0];
+		int first;
+		int second;
+		synchronized (random) {
+			first = random.nextInt(endpoints.length);
+			second = random.nextInt(endpoints.length - 1);
+		}
+		if (second >= first)
+			second++;
+		return cost(endpoints[first]) <= cost(endpoints[second]) ? endpoints[first] : endpoints[second];
+	}
+	
+	private static double cost(Endpoint endpoint) {
+		// one millisecond is added, most local invocations take less than that
+		return (endpoint.getAverageLatency() + 1) * (endpoint.getOutstandingCount() + 1);
+	}
+}
@@ -0,0 +1,75 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Caches the constructors of the dynamic proxy classes per class loader and
+ * business interface.
+ * <p>
+ * <code>Proxy.newProxyInstance</code> looks up (or generates) the proxy
+ * class and its constructor on every call. With this cache creating a proxy
+ * is a single constructor call.</p>
+ * <p>
+ * Both the class loaders and the interfaces are weak keys. The cached
+ * constructors are weakly referenced too, because a proxy constructor
+ * strongly references its class loader. A constructor is kept reachable
+ * by the invocation handlers of the proxies created with it, so an entry
+ * lives for as long as there are proxies of its class and a redeployed
+ * application's class loader can be garbage collected.</p>
+ *
+ * @author Spiros Tzavellas
+ */
+class ProxyClassCache {
+
+	private static final Class[] CONSTRUCTOR_PARAMETERS = new Class[] { InvocationHandler.class };
+
+	/** ClassLoader -> (interface -> WeakReference to the proxy constructor) */
+	private static final Map constructors = new WeakHashMap();
+
+
+	/**
+	 * Return the constructor of the proxy class that implements the specified
+	 * interface in the specified class loader.
+	 */
+	static Constructor getConstructor(ClassLoader loader, Class businessInterface) {
+		synchronized (constructors) {
+			Map perLoader = (Map) constructors.get(loader);
+			if (perLoader == null) {
+				perLoader = new WeakHashMap();
+				constructors.put(loader, perLoader);
+			}
+			WeakReference ref = (WeakReference) perLoader.get(businessInterface);
+			Constructor constructor = (ref == null) ? null : (Constructor) ref.get();
+			if (constructor == null) {
+				Class proxyClass = Proxy.getProxyClass(loader, new Class[] { businessInterface });
+				try {
+					constructor = proxyClass.getConstructor(CONSTRUCTOR_PARAMETERS);
+				} catch (NoSuchMethodException e) {
+					throw new RuntimeException(e);
+				}
+				perLoader.put(businessInterface, new WeakReference(constructor));
+			}
+			return constructor;
+		}
+	}
+
+
+	/**
+	 * Create a new proxy instance using the specified proxy constructor.
+	 */
+	static Object newInstance(Constructor constructor, InvocationHandler handler) {
+		try {
+			return constructor.newInstance(new Object[] { handler });
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(e.getTargetException());
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
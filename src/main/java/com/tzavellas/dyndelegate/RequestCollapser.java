@@ -0,0 +1,135 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A <code>DelegateInterceptor</code> that collapses identical concurrent
+ * invocations of idempotent business methods.
+ * <p>
+ * Only the methods that are registered with {@link #addMethod(Method)} are
+ * collapsed. While an invocation of such a method is in progress, the
+ * invocations with the same JNDI name, method and arguments do not proceed
+ * to the EJB but wait for the first one to complete and share its result or
+ * its exception.</p>
+ * <p>
+ * When used together with a <code>ResultCache</code>, add the
+ * <code>RequestCollapser</code> to the factory after the cache, so that only
+ * the cache misses are collapsed.</p>
+ *
+ * @see DynamicDelegateFactory#addInterceptor(DelegateInterceptor)
+ * @author Spiros Tzavellas
+ */
+public class RequestCollapser implements DelegateInterceptor {
+
+	private final MethodSet methods = new MethodSet();
+
+	/** ArgumentsKey -> Call */
+	private final Map inFlight = new HashMap();
+	private long collapsed;
+
+
+	/**
+	 * Collapse the invocations of the specified method of a business
+	 * interface.
+	 */
+	public void addMethod(Method method) {
+		methods.add(method);
+	}
+
+
+	/**
+	 * Collapse the invocations of all the methods with the specified name
+	 * of the specified business interface.
+	 *
+	 * @throws IllegalArgumentException if the interface does not have a
+	 *         method with the specified name
+	 */
+	public void addMethod(Class businessInterface, String methodName) {
+		methods.add(businessInterface, methodName);
+	}
+
+
+	public Object invoke(DelegateInvocation invocation) throws Throwable {
+		if (!methods.contains(invocation.getMethod()))
+			return invocation.proceed();
+
+		ArgumentsKey key = new ArgumentsKey(invocation);
+		Call call;
+		boolean owner = false;
+		synchronized (inFlight) {
+			call = (Call) inFlight.get(key);
+			if (call != null) {
+				collapsed++;
+			} else {
+				call = new Call();
+				inFlight.put(key, call);
+				owner = true;
+			}
+		}
+		if (!owner)
+			return call.getResult();
+
+		try {
+			Object result = invocation.proceed();
+			call.setResult(result);
+			return result;
+		} catch (Throwable t) {
+			call.setFailure(t);
+			throw t;
+		} finally {
+			synchronized (inFlight) {
+				inFlight.remove(key);
+			}
+		}
+	}
+
+
+	/**
+	 * The number of invocations that shared the result of another invocation.
+	 */
+	public long getCollapsedCount() {
+		synchronized (inFlight) {
+			return collapsed;
+		}
+	}
+
+
+	/**
+	 * An invocation in progress.
+	 */
+	private static class Call {
+		private Object result;
+		private Throwable failure;
+		private boolean done;
+
+		synchronized void setResult(Object result) {
+			this.result = result;
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized void setFailure(Throwable failure) {
+			this.failure = failure;
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized Object getResult() throws Throwable {
+			boolean interrupted = false;
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			if (failure != null)
+				throw failure;
+			return result;
+		}
+	}
+}
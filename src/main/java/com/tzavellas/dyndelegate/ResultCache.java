@@ -0,0 +1,173 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A <code>DelegateInterceptor</code> that caches the results of idempotent
+ * business methods.
+ * <p>
+ * Only the methods that are registered with {@link #addMethod(Method)} are
+ * cached, the invocations of all the other methods proceed to the EJB. The
+ * results are cached per JNDI name, method and arguments (array arguments
+ * are compared by their contents) in a size bounded cache that evicts the
+ * least recently used result. Optionally the cached results expire after a
+ * configurable time to live.</p>
+ * <p>
+ * Exceptions are not cached. The cached results are shared, so the cached
+ * methods should return immutable objects.</p>
+ *
+ * @see DynamicDelegateFactory#addInterceptor(DelegateInterceptor)
+ * @author Spiros Tzavellas
+ */
+public class ResultCache implements DelegateInterceptor {
+
+	/** The default maximum number of cached results. */
+	public static final int DEFAULT_MAX_SIZE = 1024;
+
+	private final MethodSet methods = new MethodSet();
+	private volatile int maxSize = DEFAULT_MAX_SIZE;
+	private volatile long timeToLive = 0;
+
+	private long hits;
+	private long misses;
+
+	private final Map cache = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > maxSize;
+		}
+	};
+
+
+	/**
+	 * Cache the results of the specified method of a business interface.
+	 */
+	public void addMethod(Method method) {
+		methods.add(method);
+	}
+
+
+	/**
+	 * Cache the results of all the methods with the specified name of the
+	 * specified business interface.
+	 *
+	 * @throws IllegalArgumentException if the interface does not have a
+	 *         method with the specified name
+	 */
+	public void addMethod(Class businessInterface, String methodName) {
+		methods.add(businessInterface, methodName);
+	}
+
+
+	/**
+	 * Set the maximum number of results to cache. When the cache is full the
+	 * least recently used result is evicted. The default is
+	 * {@value #DEFAULT_MAX_SIZE}.
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("The maximum size must be positive");
+		this.maxSize = maxSize;
+	}
+
+
+	/**
+	 * Set the time, in milliseconds, that a result stays in the cache. A
+	 * value of zero (the default) means that the results do not expire.
+	 */
+	public void setTimeToLive(long timeToLive) {
+		if (timeToLive < 0)
+			throw new IllegalArgumentException("The time to live cannot be negative");
+		this.timeToLive = timeToLive;
+	}
+
+
+	public Object invoke(DelegateInvocation invocation) throws Throwable {
+		if (!methods.contains(invocation.getMethod()))
+			return invocation.proceed();
+
+		ArgumentsKey key = new ArgumentsKey(invocation);
+		synchronized (cache) {
+			CachedResult cached = (CachedResult) cache.get(key);
+			if (cached != null && !cached.isExpired(timeToLive)) {
+				hits++;
+				return cached.result;
+			}
+			misses++;
+		}
+		Object result = invocation.proceed();
+		synchronized (cache) {
+			cache.put(key, new CachedResult(result));
+		}
+		return result;
+	}
+
+
+	/**
+	 * Evict all the cached results of the specified method.
+	 */
+	public void invalidate(Method method) {
+		synchronized (cache) {
+			for (Iterator i = cache.keySet().iterator(); i.hasNext(); ) {
+				if (((ArgumentsKey) i.next()).getMethod().equals(method))
+					i.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * Evict all the cached results.
+	 */
+	public void invalidateAll() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+
+	/**
+	 * The number of cached results.
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+
+	/**
+	 * The number of invocations that were answered from the cache.
+	 */
+	public long getHitCount() {
+		synchronized (cache) {
+			return hits;
+		}
+	}
+
+
+	/**
+	 * The number of invocations of cached methods that proceeded to the EJB.
+	 */
+	public long getMissCount() {
+		synchronized (cache) {
+			return misses;
+		}
+	}
+
+
+	private static class CachedResult {
+		final Object result;
+		final long cachedAt = System.currentTimeMillis();
+
+		CachedResult(Object result) {
+			this.result = result;
+		}
+
+		boolean isExpired(long timeToLive) {
+			return timeToLive > 0 && System.currentTimeMillis() - cachedAt >= timeToLive;
+		}
+	}
+}
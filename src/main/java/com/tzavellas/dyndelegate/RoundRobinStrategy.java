@@ -0,0 +1,21 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * A <code>LoadBalancingStrategy</code> that selects the available
+ * endpoints in turn.
+ * 
+ * @author Spiros Tzavellas
+ */
+public class RoundRobinStrategy implements LoadBalancingStrategy {
+
+	private int next;
+	
+	public Endpoint select(Endpoint[] endpoints) {
+		int i;
+		synchronized (this) {
+			i = next;
+			next = (next + 1) % Integer.MAX_VALUE;
+		}
+		return endpoints[i % endpoints.length];
+	}
+}
@@ -10,6 +10,20 @@ package com.tzavellas.dyndelegate;
  */
 public class RuntimeExceptionWrapper implements ThrowableConverter {
 	
+	private boolean lightweightWrappers = false;
+	
+	
+	/**
+	 * Whether to wrap the exceptions in
+	 * <code>LightweightRuntimeException</code>s, that do not capture a stack
+	 * trace of their own, instead of <code>RuntimeException</code>s.
+	 * Default is <code>false</code>.
+	 */
+	public void setLightweightWrappers(boolean lightweightWrappers) {
+		this.lightweightWrappers = lightweightWrappers;
+	}
+	
+	
 	/**
 	 * Wrap the specified Throwable to a RuntimeException
 	 * 
@@ -17,6 +31,8 @@ public class RuntimeExceptionWrapper implements ThrowableConverter {
 	 * @return a RuntimeException
 	 */
 	public Throwable convert(Throwable ex) {
+		if (lightweightWrappers)
+			return new LightweightRuntimeException(ex);
 		return new RuntimeException(ex);
 	}
 
@@ -0,0 +1,82 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.Hashtable;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+/**
+ * A <code>ContextProvider</code> that creates a new
+ * <code>InitialContext</code> for every lookup and closes it when it is
+ * released.
+ * 
+ * @see ContextProvider
+ * @author Spiros Tzavellas
+ */
+public class SimpleContextProvider implements ContextProvider {
+
+	private Hashtable environment;
+	
+	
+	/**
+	 * Construct a <code>SimpleContextProvider</code> that creates contexts
+	 * using the default JNDI environment.
+	 */
+	public SimpleContextProvider() {
+		this(null);
+	}
+	
+	
+	/**
+	 * Construct a <code>SimpleContextProvider</code> that creates contexts
+	 * using the specified JNDI environment properties.
+	 * 
+	 * @param environment the environment of the created
+	 *        <code>InitialContext</code> objects, may be <code>null</code>
+	 */
+	public SimpleContextProvider(Hashtable environment) {
+		this.environment = (environment == null) ? null : (Hashtable) environment.clone();
+	}
+	
+	
+	/**
+	 * Create a new <code>InitialContext</code> with the environment of
+	 * this provider.
+	 */
+	protected Context createContext() throws NamingException {
+		return new InitialContext(environment);
+	}
+	
+	
+	/**
+	 * Close the specified context ignoring any exception.
+	 */
+	protected void closeContext(Context ctx) {
+		try {
+			ctx.close();
+		} catch (NamingException ignore) { }
+	}
+	
+	
+	/** {@inheritDoc} */
+	public Context getContext() throws NamingException {
+		return createContext();
+	}
+	
+	
+	/** {@inheritDoc} */
+	public void releaseContext(Context ctx) {
+		closeContext(ctx);
+	}
+	
+	
+	/** {@inheritDoc} */
+	public void invalidateContext(Context ctx) {
+		closeContext(ctx);
+	}
+	
+	
+	/** {@inheritDoc} */
+	public void close() { }
+}
@@ -3,49 +3,95 @@ package com.tzavellas.dyndelegate;
 import javax.ejb.EJBHome;
 import javax.ejb.EJBLocalHome;
 import javax.naming.Context;
-import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
 import javax.naming.NamingException;
 import javax.rmi.PortableRemoteObject;
 
 /**
  * A non-caching implementation of the <code>EJBHomeFactory</code>
  * interface.
- * 
+ * <p>
+ * The JNDI contexts used for the lookups are obtained from a
+ * <code>ContextProvider</code>. By default a new
+ * <code>InitialContext</code> is created (and closed) for each lookup,
+ * use a <code>ThreadLocalContextProvider</code> or a
+ * <code>PooledContextProvider</code> to reuse the contexts.</p>
+ *
  * @see EJBHomeFactory
+ * @see ContextProvider
  * @author Spiros Tzavellas
  */
 public class SimpleEJBHomeFactory implements EJBHomeFactory {
 
+	private ContextProvider contextProvider;
+
+
+	/**
+	 * Construct a <code>SimpleEJBHomeFactory</code> that uses the specified
+	 * <code>ContextProvider</code>.
+	 */
+	public SimpleEJBHomeFactory(ContextProvider contextProvider) {
+		this.contextProvider = contextProvider;
+	}
+
+
+	/**
+	 * Construct a <code>SimpleEJBHomeFactory</code> that uses a
+	 * <code>SimpleContextProvider</code>.
+	 */
+	public SimpleEJBHomeFactory() {
+		this(new SimpleContextProvider());
+	}
+
+
+	/**
+	 * Close the <code>ContextProvider</code> of this factory.
+	 */
+	public void close() {
+		contextProvider.close();
+	}
+
+
 	/** {@inheritDoc} */
 	public EJBHome lookupRemote(String jndiName, Class homeInterface) {
-		try {
-			Context ctx = new InitialContext();
-			Object home = ctx.lookup(jndiName);
-			
-			return (EJBHome) PortableRemoteObject.narrow(home, homeInterface); 
-		
-		} catch (NamingException e) {
-			throw new RuntimeException("Error in JNDI lookup with name'"
-					+ jndiName + "'", e);
-		}
+		Object home = lookup(jndiName);
+		return (EJBHome) PortableRemoteObject.narrow(home, homeInterface);
 	}
-	
+
 
 	/** {@inheritDoc} */
 	public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+		Object home = lookup(jndiName);
+
+		if (! homeInterface.isAssignableFrom(home.getClass()))
+			throw new ClassCastException("The returned Home is does not implement "
+											+ homeInterface.getName());
+
+		return (EJBLocalHome) home;
+	}
+
+
+	private Object lookup(String jndiName) {
+		Context ctx = null;
+		boolean failed = true;
 		try {
-			Context ctx = new InitialContext();
+			ctx = contextProvider.getContext();
 			Object home = ctx.lookup(jndiName);
-			
-			if (! homeInterface.isAssignableFrom(home.getClass()))
-				throw new ClassCastException("The returned Home is does not implement "
-												+ homeInterface.getName());
-			
-			return (EJBLocalHome) home; 
-		
+			failed = false;
+			return home;
+
 		} catch (NamingException e) {
+			// the context is still usable if the name was not bound
+			failed = !(e instanceof NameNotFoundException);
 			throw new RuntimeException("Error in JNDI lookup with name'"
 					+ jndiName + "'", e);
+		} finally {
+			if (ctx != null) {
+				if (failed)
+					contextProvider.invalidateContext(ctx);
+				else
+					contextProvider.releaseContext(ctx);
+			}
 		}
 	}
 }
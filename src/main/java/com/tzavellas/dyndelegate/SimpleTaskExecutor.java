@@ -0,0 +1,143 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.LinkedList;
+
+/**
+ * A <code>TaskExecutor</code> that runs the tasks in a bounded set of
+ * daemon worker threads.
+ * <p>
+ * Worker threads are started on demand, up to the maximum number of
+ * threads, and terminate after being idle for the keep-alive time. Tasks
+ * that are submitted while all the threads are busy wait in an unbounded
+ * queue.</p>
+ * 
+ * @see TaskExecutor
+ * @author Spiros Tzavellas
+ */
+public class SimpleTaskExecutor implements TaskExecutor {
+
+	/** The default time, in milliseconds, that idle threads are kept alive. */
+	public static final long DEFAULT_KEEP_ALIVE = 60000;
+	
+	private final LinkedList queue = new LinkedList();
+	private final int maxThreads;
+	private final String name;
+	private long keepAlive = DEFAULT_KEEP_ALIVE;
+	private int threads;
+	private int idleThreads;
+	private int threadCounter;
+	private boolean shutdown;
+	
+	
+	/**
+	 * Construct a <code>SimpleTaskExecutor</code> with the specified maximum
+	 * number of threads.
+	 * 
+	 * @param name the prefix of the names of the worker threads
+	 * @param maxThreads the maximum number of worker threads
+	 */
+	public SimpleTaskExecutor(String name, int maxThreads) {
+		if (maxThreads < 1)
+			throw new IllegalArgumentException("The maximum number of threads must be positive");
+		this.name = name;
+		this.maxThreads = maxThreads;
+	}
+	
+	
+	/**
+	 * Set the time, in milliseconds, that an idle worker thread waits for a
+	 * task before it terminates. The default is {@value #DEFAULT_KEEP_ALIVE}.
+	 */
+	public void setKeepAlive(long keepAlive) {
+		if (keepAlive < 1)
+			throw new IllegalArgumentException("The keep-alive time must be positive");
+		synchronized (queue) {
+			this.keepAlive = keepAlive;
+		}
+	}
+	
+	
+	/** {@inheritDoc} */
+	public void execute(Runnable task) {
+		synchronized (queue) {
+			if (shutdown)
+				throw new IllegalStateException("The executor is shut down");
+			queue.addLast(task);
+			// a notified worker counts as idle until it wakes up, so compare
+			// the idle workers with all the tasks that are waiting
+			if (queue.size() > idleThreads && threads < maxThreads)
+				startWorker();
+			else
+				queue.notify();
+		}
+	}
+	
+	
+	/**
+	 * The number of live worker threads.
+	 */
+	public int getThreadCount() {
+		synchronized (queue) {
+			return threads;
+		}
+	}
+	
+	
+	/**
+	 * Stop accepting new tasks. The tasks that are already submitted are
+	 * still executed, then the worker threads terminate.
+	 */
+	public void shutdown() {
+		synchronized (queue) {
+			shutdown = true;
+			queue.notifyAll();
+		}
+	}
+	
+	
+	private void startWorker() {
+		Thread worker = new Thread(new Worker(), name + "-" + (++threadCounter));
+		worker.setDaemon(true);
+		threads++;
+		worker.start();
+	}
+	
+	
+	private Runnable nextTask() {
+		synchronized (queue) {
+			while (queue.isEmpty()) {
+				if (shutdown) {
+					threads--;
+					return null;
+				}
+				idleThreads++;
+				try {
+					queue.wait(keepAlive);
+				} catch (InterruptedException e) {
+					// terminate like a timed out worker
+				} finally {
+					idleThreads--;
+				}
+				if (queue.isEmpty() && !shutdown) {
+					threads--;
+					return null;
+				}
+			}
+			return (Runnable) queue.removeFirst();
+		}
+	}
+	
+	
+	private class Worker implements Runnable {
+		public void run() {
+			Runnable task;
+			while ((task = nextTask()) != null) {
+				try {
+					task.run();
+				} catch (Throwable ignore) {
+					// a failing task must not kill the worker
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * An <code>EJBSource</code> that always returns the same EJB.
+ * 
+ * @author Spiros Tzavellas
+ */
+class SingleEJBSource implements EJBSource {
+
+	private final Object ejb;
+	
+	SingleEJBSource(Object ejb) {
+		this.ejb = ejb;
+	}
+	
+	public Object getEJB() {
+		return ejb;
+	}
+
+	public void releaseEJB(Object ejb, Throwable failure) { }
+
+	public boolean isRetryable(Throwable failure) {
+		return false;
+	}
+
+	public Object getBean() {
+		return ejb;
+	}
+
+	public void remove() {
+		DynamicDelegateFactory.removeEJB(ejb);
+	}
+}
@@ -0,0 +1,20 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * A strategy interface for executing tasks asynchronously.
+ * <p>
+ * On JDK 5 or newer this can be a one-line adapter to a
+ * <code>java.util.concurrent.Executor</code>, for example to one that
+ * runs each task in a virtual thread.</p>
+ * 
+ * @see SimpleTaskExecutor
+ * @author Spiros Tzavellas
+ */
+public interface TaskExecutor {
+
+	/**
+	 * Execute the specified task, possibly in another thread.
+	 */
+	void execute(Runnable task);
+
+}
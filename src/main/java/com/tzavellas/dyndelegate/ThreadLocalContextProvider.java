@@ -0,0 +1,132 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+/**
+ * A <code>ContextProvider</code> that keeps one <code>InitialContext</code>
+ * per thread and reuses it for all the lookups of that thread.
+ * <p>
+ * The contexts are closed when they fail or when the provider is
+ * closed. The context of a thread that has terminated, or has been
+ * garbage collected, is closed when another thread creates its context or
+ * when the provider is closed. The provider does not keep the threads
+ * reachable. Once the provider is closed every thread
+ * gets an <code>IllegalStateException</code>, even if it had a
+ * context.</p>
+ * 
+ * @see ContextProvider
+ * @author Spiros Tzavellas
+ */
+public class ThreadLocalContextProvider extends SimpleContextProvider {
+
+	private final ThreadLocal contexts = new ThreadLocal();
+	/** The ContextHolders of the created contexts */
+	private final List created = new ArrayList();
+	private volatile boolean closed = false;
+	
+	
+	/**
+	 * Construct a <code>ThreadLocalContextProvider</code> that creates
+	 * contexts using the default JNDI environment.
+	 */
+	public ThreadLocalContextProvider() {
+		super();
+	}
+	
+	
+	/**
+	 * Construct a <code>ThreadLocalContextProvider</code> that creates
+	 * contexts using the specified JNDI environment properties.
+	 */
+	public ThreadLocalContextProvider(Hashtable environment) {
+		super(environment);
+	}
+	
+	
+	/** {@inheritDoc} */
+	public Context getContext() throws NamingException {
+		Context ctx = (Context) contexts.get();
+		if (closed) {
+			contexts.set(null);
+			throw new IllegalStateException("The context provider is closed");
+		}
+		if (ctx == null) {
+			ctx = createContext();
+			synchronized (created) {
+				if (closed) {
+					closeContext(ctx);
+					throw new IllegalStateException("The context provider is closed");
+				}
+				closeContextsOfTerminatedThreads();
+				created.add(new ContextHolder(Thread.currentThread(), ctx));
+			}
+			contexts.set(ctx);
+		}
+		return ctx;
+	}
+	
+	
+	/**
+	 * Must be called holding the lock of the created contexts.
+	 */
+	private void closeContextsOfTerminatedThreads() {
+		for (Iterator i = created.iterator(); i.hasNext(); ) {
+			ContextHolder holder = (ContextHolder) i.next();
+			Thread thread = (Thread) holder.thread.get();
+			if (thread == null || !thread.isAlive()) {
+				closeContext(holder.context);
+				i.remove();
+			}
+		}
+	}
+	
+	
+	/** {@inheritDoc} */
+	public void releaseContext(Context ctx) { }
+	
+	
+	/** {@inheritDoc} */
+	public void invalidateContext(Context ctx) {
+		if (contexts.get() == ctx)
+			contexts.set(null);
+		synchronized (created) {
+			for (Iterator i = created.iterator(); i.hasNext(); ) {
+				if (((ContextHolder) i.next()).context == ctx)
+					i.remove();
+			}
+		}
+		closeContext(ctx);
+	}
+	
+	
+	/** {@inheritDoc} */
+	public void close() {
+		synchronized (created) {
+			closed = true;
+			for (Iterator i = created.iterator(); i.hasNext(); )
+				closeContext(((ContextHolder) i.next()).context);
+			created.clear();
+		}
+	}
+	
+	
+	/**
+	 * A created context and, weakly, the thread that it belongs to.
+	 */
+	private static class ContextHolder {
+		final WeakReference thread;
+		final Context context;
+		
+		ContextHolder(Thread thread, Context context) {
+			this.thread = new WeakReference(thread);
+			this.context = context;
+		}
+	}
+}
@@ -6,6 +6,7 @@ package com.tzavellas.dyndelegate;
  * 
  * @see RuntimeExceptionWrapper
  * @see EJBExceptionConverter
+ * @see ThrowableConverterChain
  * 
  * @author Spiros Tzavellas
  */
@@ -0,0 +1,101 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A <code>ThrowableConverter</code> that delegates to a chain of
+ * converters, each one registered for a type of exception.
+ * <p>
+ * The converters that are registered for the class of an exception (or
+ * one of its super classes) are tried in the order they were added and the
+ * first one that matches, that is it returns an exception other than the
+ * one it was given, wins. If no converter matches, the exception is
+ * returned unmodified.</p>
+ * <p>
+ * The applicable converters are resolved once per exception class and
+ * cached, so converting an exception does not walk the registrations or
+ * the class hierarchy.</p>
+ *
+ * @see ThrowableConverter
+ * @author Spiros Tzavellas
+ */
+public class ThrowableConverterChain implements ThrowableConverter {
+
+	private static final ThrowableConverter[] NO_CONVERTERS = new ThrowableConverter[0];
+
+	private final List registrations = new ArrayList();
+
+	/** Class -> ThrowableConverter[], replaced on each new class */
+	private volatile Map decisions = Collections.EMPTY_MAP;
+
+
+	/**
+	 * Add a converter for all exceptions at the end of the chain.
+	 */
+	public ThrowableConverterChain add(ThrowableConverter converter) {
+		return add(Throwable.class, converter);
+	}
+
+
+	/**
+	 * Add a converter for the exceptions of the specified type (and its
+	 * sub types) at the end of the chain.
+	 *
+	 * @throws IllegalArgumentException if the type is not a
+	 *         <code>Throwable</code>
+	 */
+	public synchronized ThrowableConverterChain add(Class exceptionType, ThrowableConverter converter) {
+		if (!Throwable.class.isAssignableFrom(exceptionType))
+			throw new IllegalArgumentException(exceptionType.getName() + " is not a Throwable");
+		registrations.add(new Registration(exceptionType, converter));
+		decisions = Collections.EMPTY_MAP;
+		return this;
+	}
+
+
+	public Throwable convert(Throwable ex) {
+		ThrowableConverter[] converters = getConverters(ex.getClass());
+		for (int i = 0; i < converters.length; i++) {
+			Throwable converted = converters[i].convert(ex);
+			if (converted != ex)
+				return converted;
+		}
+		return ex;
+	}
+
+
+	private ThrowableConverter[] getConverters(Class exceptionClass) {
+		ThrowableConverter[] converters = (ThrowableConverter[]) decisions.get(exceptionClass);
+		if (converters != null)
+			return converters;
+		synchronized (this) {
+			List applicable = new ArrayList();
+			for (int i = 0; i < registrations.size(); i++) {
+				Registration r = (Registration) registrations.get(i);
+				if (r.exceptionType.isAssignableFrom(exceptionClass))
+					applicable.add(r.converter);
+			}
+			converters = applicable.isEmpty() ? NO_CONVERTERS
+					: (ThrowableConverter[]) applicable.toArray(new ThrowableConverter[applicable.size()]);
+			Map copy = new HashMap(decisions);
+			copy.put(exceptionClass, converters);
+			decisions = copy;
+			return converters;
+		}
+	}
+
+
+	private static class Registration {
+		final Class exceptionType;
+		final ThrowableConverter converter;
+
+		Registration(Class exceptionType, ThrowableConverter converter) {
+			this.exceptionType = exceptionType;
+			this.converter = converter;
+		}
+	}
+}
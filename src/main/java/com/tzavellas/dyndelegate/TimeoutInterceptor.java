@@ -0,0 +1,199 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A <code>DelegateInterceptor</code> that bounds the duration of the
+ * invocations of the delegates.
+ * <p>
+ * The timeout of an invocation is the timeout of its method, if one is
+ * set, else the timeout of its JNDI name, else the default timeout. If the
+ * calling thread has a {@link Deadline}, the invocation must also complete
+ * before the deadline. Invocations without a timeout or a deadline proceed
+ * in the calling thread.</p>
+ * <p>
+ * The other invocations of remote delegates proceed in the threads of a
+ * <code>TaskExecutor</code>, with a deadline for the nested delegate calls,
+ * while the caller waits. If the invocation does not complete in time the
+ * caller gets a <code>DelegateTimeoutException</code>, that the
+ * <code>ThrowableConverter</code> of the delegate sees like any other
+ * exception of the chain. The timed out invocation is not cancelled, it
+ * keeps a thread of the executor until the EJB returns, so the executor
+ * must have enough threads for the invocations of a stuck backend. The
+ * threads of the executor do not have the transaction, the security
+ * context or the thread scoped JNDI contexts of the caller, none of them
+ * is propagated.</p>
+ * <p>
+ * The invocations of local delegates always proceed in the calling
+ * thread, so that the EJB runs in the caller's transaction and security
+ * context. The deadline is checked before and after the invocation, a local
+ * invocation that completes after its deadline fails with a
+ * <code>DelegateTimeoutException</code> but it cannot be interrupted.</p>
+ *
+ * @see DynamicDelegateFactory#addInterceptor(DelegateInterceptor)
+ * @see DelegateTimeoutException
+ * @author Spiros Tzavellas
+ */
+public class TimeoutInterceptor implements DelegateInterceptor {
+
+	private final TaskExecutor executor;
+	private volatile long defaultTimeout = 0;
+
+	/** JNDI name -> Long, replaced on each change */
+	private volatile Map delegateTimeouts = Collections.EMPTY_MAP;
+	/** Method -> Long, replaced on each change */
+	private volatile Map methodTimeouts = Collections.EMPTY_MAP;
+
+	private long calls;
+	private long timeouts;
+
+
+	/**
+	 * Construct a <code>TimeoutInterceptor</code> that runs the invocations
+	 * in the specified <code>TaskExecutor</code>.
+	 */
+	public TimeoutInterceptor(TaskExecutor executor) {
+		this.executor = executor;
+	}
+
+
+	/**
+	 * Set the timeout, in milliseconds, of the invocations that have no
+	 * other timeout. A value of zero (the default) means no timeout.
+	 */
+	public void setDefaultTimeout(long timeout) {
+		checkTimeout(timeout);
+		this.defaultTimeout = timeout;
+	}
+
+
+	/**
+	 * Set the timeout, in milliseconds, of the invocations of the delegates
+	 * of the specified JNDI name. A value of zero means no timeout.
+	 */
+	public synchronized void setTimeout(String jndiName, long timeout) {
+		checkTimeout(timeout);
+		Map copy = new HashMap(delegateTimeouts);
+		copy.put(jndiName, new Long(timeout));
+		delegateTimeouts = copy;
+	}
+
+
+	/**
+	 * Set the timeout, in milliseconds, of the invocations of the specified
+	 * method of a business interface. A value of zero means no timeout.
+	 */
+	public synchronized void setTimeout(Method method, long timeout) {
+		checkTimeout(timeout);
+		Map copy = new HashMap(methodTimeouts);
+		copy.put(method, new Long(timeout));
+		methodTimeouts = copy;
+	}
+
+
+	private static void checkTimeout(long timeout) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("The timeout cannot be negative");
+	}
+
+
+	public Object invoke(final DelegateInvocation invocation) throws Throwable {
+		long expiresAt = getExpirationTime(invocation);
+		if (expiresAt == Long.MAX_VALUE)
+			return invocation.proceed();
+
+		synchronized (this) {
+			calls++;
+		}
+		long remaining = expiresAt - System.currentTimeMillis();
+		if (remaining <= 0)
+			throw timedOut(invocation, "the deadline expired before the invocation");
+
+		if (!invocation.isRemote())
+			return invokeInCallerThread(invocation, expiresAt);
+
+		final long deadline = expiresAt;
+		final FutureResult result = new FutureResult();
+		executor.execute(new Runnable() {
+			public void run() {
+				Deadline nested = Deadline.beginAt(deadline);
+				try {
+					result.set(invocation.proceed());
+				} catch (Throwable t) {
+					result.setException(t);
+				} finally {
+					nested.end();
+				}
+			}
+		});
+
+		try {
+			return result.get(remaining);
+		} catch (InvocationTargetException e) {
+			throw e.getTargetException();
+		} catch (DelegateTimeoutException e) {
+			throw timedOut(invocation, "it did not complete in " + remaining + " ms");
+		}
+	}
+
+
+	private Object invokeInCallerThread(DelegateInvocation invocation, long expiresAt) throws Throwable {
+		Object value;
+		Deadline nested = Deadline.beginAt(expiresAt);
+		try {
+			value = invocation.proceed();
+		} finally {
+			nested.end();
+		}
+		if (System.currentTimeMillis() > expiresAt)
+			throw timedOut(invocation, "it completed after the deadline");
+		return value;
+	}
+
+
+	/**
+	 * The number of invocations that had a timeout or a deadline.
+	 */
+	public synchronized long getCallCount() {
+		return calls;
+	}
+
+
+	/**
+	 * The number of invocations that timed out.
+	 */
+	public synchronized long getTimeoutCount() {
+		return timeouts;
+	}
+
+
+	/**
+	 * The time when the invocation expires, <code>Long.MAX_VALUE</code> if
+	 * the invocation has no timeout and the thread has no deadline.
+	 */
+	private long getExpirationTime(DelegateInvocation invocation) {
+		Long timeout = (Long) methodTimeouts.get(invocation.getMethod());
+		if (timeout == null)
+			timeout = (Long) delegateTimeouts.get(invocation.getJndiName());
+		long t = (timeout == null) ? defaultTimeout : timeout.longValue();
+
+		long expiresAt = (t == 0) ? Long.MAX_VALUE : System.currentTimeMillis() + t;
+		Deadline deadline = Deadline.current();
+		if (deadline != null && deadline.getExpirationTime() < expiresAt)
+			expiresAt = deadline.getExpirationTime();
+		return expiresAt;
+	}
+
+
+	private DelegateTimeoutException timedOut(DelegateInvocation invocation, String reason) {
+		synchronized (this) {
+			timeouts++;
+		}
+		return new DelegateTimeoutException("The invocation of " + invocation.getMethod().getName()
+				+ " on " + invocation.getJndiName() + " timed out, " + reason);
+	}
+}
@@ -0,0 +1,53 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * An entry of the manifest of delegates that a
+ * <code>DynamicDelegateFactory</code> creates when it is warmed up.
+ * 
+ * @see DynamicDelegateFactory#warmUp(WarmUpEntry[], int)
+ * @author Spiros Tzavellas
+ */
+public class WarmUpEntry {
+
+	private final String jndiName;
+	private final Class homeInterface;
+	private final Class businessInterface;
+	private final boolean remote;
+	
+	
+	/**
+	 * Construct a <code>WarmUpEntry</code>.
+	 * 
+	 * @param jndiName the JNDI name of the EJB
+	 * @param homeInterface the class of the home interface of the EJB
+	 * @param businessInterface the interface that the delegate implements
+	 * @param remote whether the EJB has remote or local access
+	 */
+	public WarmUpEntry(String jndiName, Class homeInterface, Class businessInterface, boolean remote) {
+		this.jndiName = jndiName;
+		this.homeInterface = homeInterface;
+		this.businessInterface = businessInterface;
+		this.remote = remote;
+	}
+	
+	public String getJndiName() {
+		return jndiName;
+	}
+	
+	public Class getHomeInterface() {
+		return homeInterface;
+	}
+	
+	public Class getBusinessInterface() {
+		return businessInterface;
+	}
+	
+	public boolean isRemote() {
+		return remote;
+	}
+	
+	public String toString() {
+		return "WarmUpEntry[" + jndiName + ", " + businessInterface.getName()
+			+ (remote ? ", remote]" : ", local]");
+	}
+}
@@ -0,0 +1,57 @@
+package com.tzavellas.dyndelegate;
+
+/**
+ * The outcome of warming up an entry of a manifest.
+ * 
+ * @see DynamicDelegateFactory#warmUp(WarmUpEntry[], int)
+ * @author Spiros Tzavellas
+ */
+public class WarmUpResult {
+
+	private final WarmUpEntry entry;
+	private final Object delegate;
+	private final Throwable failure;
+	private final long elapsedTime;
+	
+	WarmUpResult(WarmUpEntry entry, Object delegate, Throwable failure, long elapsedTime) {
+		this.entry = entry;
+		this.delegate = delegate;
+		this.failure = failure;
+		this.elapsedTime = elapsedTime;
+	}
+	
+	/** The entry of the manifest. */
+	public WarmUpEntry getEntry() {
+		return entry;
+	}
+	
+	/** Whether the delegate of the entry was created. */
+	public boolean isSuccessful() {
+		return failure == null;
+	}
+	
+	/**
+	 * The created delegate, or <code>null</code> if the creation failed.
+	 */
+	public Object getDelegate() {
+		return delegate;
+	}
+	
+	/**
+	 * The exception that was thrown when creating the delegate, or
+	 * <code>null</code> if the creation succeeded.
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+	
+	/** The time, in milliseconds, that the creation of the delegate took. */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+	
+	public String toString() {
+		return "WarmUpResult[" + entry.getJndiName() + ", " + elapsedTime + " ms"
+			+ (failure == null ? "]" : ", failed: " + failure + "]");
+	}
+}
@@ -0,0 +1,96 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.InvocationTargetException;
+
+import junit.framework.TestCase;
+
+public class AsyncDelegateTest extends TestCase {
+
+	private DynamicDelegateFactory factory;
+	private SlowService delegate;
+	private SimpleTaskExecutor executor = new SimpleTaskExecutor("test", 4);
+	
+	protected void setUp() {
+		factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(new SlowServiceBean()));
+		factory.setTaskExecutor(executor);
+		delegate = (SlowService) factory.createLocalDelegate("ejb/Slow",
+				DelegateClassGeneratorTest.StubHome.class, SlowService.class);
+	}
+	
+	protected void tearDown() {
+		executor.shutdown();
+	}
+	
+	
+	public void testInvocationsRunConcurrently() throws Exception {
+		
+		AsyncSlowService async = (AsyncSlowService)
+			factory.createAsyncDelegate(delegate, SlowService.class, AsyncSlowService.class);
+		
+		long start = System.currentTimeMillis();
+		FutureResult r1 = async.square(2, 200);
+		FutureResult r2 = async.square(3, 200);
+		FutureResult r3 = async.square(4, 200);
+		assertFalse(r1.isDone());
+		assertEquals(new Integer(4), r1.get());
+		assertEquals(new Integer(9), r2.get());
+		assertEquals(new Integer(16), r3.get());
+		assertTrue(System.currentTimeMillis() - start < 550);
+	}
+	
+	
+	public void testExceptionsAreConverted() throws Exception {
+		
+		AsyncSlowService async = (AsyncSlowService)
+			factory.createAsyncDelegate(delegate, SlowService.class, AsyncSlowService.class);
+		try {
+			async.fail().get();
+			fail("Should throw an InvocationTargetException");
+		} catch (InvocationTargetException e) {
+			assertTrue(e.getTargetException() instanceof IllegalStateException);
+		}
+	}
+	
+	
+	public void testTimedGet() throws Exception {
+		
+		AsyncSlowService async = (AsyncSlowService)
+			factory.createAsyncDelegate(delegate, SlowService.class, AsyncSlowService.class);
+		try {
+			async.square(2, 500).get(10);
+			fail("Should timeout");
+		} catch (DelegateTimeoutException expected) { }
+	}
+	
+	
+	public void testInvalidCompanionInterface() {
+		try {
+			factory.createAsyncDelegate(delegate, SlowService.class, Runnable.class);
+			fail("Should throw an IllegalArgumentException since run() does not return a FutureResult");
+		} catch (IllegalArgumentException expected) { }
+	}
+	
+	
+	public static interface SlowService {
+		int square(int i, long delay);
+		void fail();
+	}
+	
+	public static interface AsyncSlowService {
+		FutureResult square(int i, long delay);
+		FutureResult fail();
+	}
+	
+	public static class SlowServiceBean implements SlowService {
+		public int square(int i, long delay) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) { }
+			return i * i;
+		}
+		public void fail() {
+			throw new javax.ejb.EJBException(new IllegalStateException());
+		}
+	}
+}
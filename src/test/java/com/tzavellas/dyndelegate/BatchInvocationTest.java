@@ -0,0 +1,138 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+
+import javax.ejb.EJBException;
+
+import junit.framework.TestCase;
+
+public class BatchInvocationTest extends TestCase {
+
+	private SimpleTaskExecutor executor = new SimpleTaskExecutor("test", 8);
+	private RequestCollapserTest.SlowLookupBean bean = new RequestCollapserTest.SlowLookupBean();
+	private DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+			new DelegateClassGeneratorTest.StubHomeFactory(bean));
+	private Object delegate;
+	private Method find;
+	private Method findAll;
+
+	protected void setUp() throws Exception {
+		factory.setTaskExecutor(executor);
+		delegate = factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+		find = ResultCacheTest.Lookup.class.getMethod("find", new Class[] { String.class });
+		findAll = ResultCacheTest.Lookup.class.getMethod("findAll", new Class[] { String[].class });
+	}
+
+	protected void tearDown() {
+		executor.shutdown();
+	}
+
+
+	public void testInvocationsRunInParallelAndKeepTheirOrder() {
+
+		long start = System.currentTimeMillis();
+		BatchResult[] results = factory.invokeBatch(delegate, find, arguments(new String[] {
+				"a", "b", "fail", "d" }), 4);
+		assertTrue(System.currentTimeMillis() - start < 350);
+
+		assertEquals(4, results.length);
+		assertEquals("a", results[0].getResult());
+		assertEquals("b", results[1].getResult());
+		assertFalse(results[2].isSuccessful());
+		assertTrue(results[2].getFailure() instanceof IllegalStateException);
+		assertEquals("d", results[3].getResult());
+		assertEquals("d", results[3].getArguments()[0]);
+		assertEquals(4, bean.calls);
+	}
+
+
+	public void testParallelismIsBounded() {
+
+		long start = System.currentTimeMillis();
+		factory.invokeBatch(delegate, find, arguments(new String[] { "a", "b", "c", "d" }), 2);
+		assertTrue(System.currentTimeMillis() - start >= 390);
+	}
+
+
+	public void testBatchCanBeInvokedFromAThreadOfTheExecutor() throws Exception {
+
+		SimpleTaskExecutor single = new SimpleTaskExecutor("single", 1);
+		factory.setTaskExecutor(single);
+		final FutureResult result = new FutureResult();
+		single.execute(new Runnable() {
+			public void run() {
+				result.set(factory.invokeBatch(delegate, find, arguments(new String[] { "a", "b" }), 2));
+			}
+		});
+		try {
+			BatchResult[] results = (BatchResult[]) result.get(2000);
+			assertEquals("b", results[1].getResult());
+		} finally {
+			single.shutdown();
+		}
+	}
+
+
+	public void testBatchIsRoutedToTheBulkMethod() {
+
+		BatchResult[] results = factory.invokeBulk(delegate, find, findAll,
+				arguments(new String[] { "a", "b" }));
+		assertEquals(2, results.length);
+		assertEquals("a", results[0].getResult());
+		assertEquals("b", results[1].getResult());
+		assertEquals(0, bean.calls);
+	}
+
+
+	public void testFailureOfTheBulkMethodFailsAllTheItems() throws Exception {
+
+		Object failing = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(new FailingBulkBean()))
+				.createLocalDelegate("ejb/Lookup", DelegateClassGeneratorTest.StubHome.class,
+						ResultCacheTest.Lookup.class);
+		BatchResult[] results = factory.invokeBulk(failing, find, findAll,
+				arguments(new String[] { "a", "b" }));
+		assertTrue(results[0].getFailure() instanceof IllegalStateException);
+		assertSame(results[0].getFailure(), results[1].getFailure());
+	}
+
+
+	public void testBulkMethodMustMatch() throws Exception {
+
+		Method update = ResultCacheTest.Lookup.class.getMethod("update", new Class[] { String.class });
+		try {
+			factory.invokeBulk(delegate, update, findAll, arguments(new String[] { "a" }));
+			fail("findAll is not the bulk method of update");
+		} catch (IllegalArgumentException expected) { }
+	}
+
+
+	public void testBulkArgumentsMustMatchTheParameters() {
+
+		try {
+			factory.invokeBulk(delegate, find, findAll, new Object[][] { { "a" }, { "b", "c" } });
+			fail("The second item has too many arguments");
+		} catch (IllegalArgumentException expected) { }
+		try {
+			factory.invokeBulk(delegate, find, findAll, new Object[][] { { new Integer(1) } });
+			fail("An Integer is not a String");
+		} catch (IllegalArgumentException expected) { }
+		assertEquals(0, bean.calls);
+	}
+
+
+	private static Object[][] arguments(String[] keys) {
+		Object[][] arguments = new Object[keys.length][];
+		for (int i = 0; i < keys.length; i++)
+			arguments[i] = new Object[] { keys[i] };
+		return arguments;
+	}
+
+
+	public static class FailingBulkBean extends ResultCacheTest.CountingLookupBean {
+		public String[] findAll(String[] keys) {
+			throw new EJBException(new IllegalStateException());
+		}
+	}
+}
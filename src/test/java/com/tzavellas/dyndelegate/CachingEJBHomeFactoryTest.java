@@ -0,0 +1,150 @@
+package com.tzavellas.dyndelegate;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+
+import javax.ejb.CreateException;
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+import javax.ejb.EJBMetaData;
+import javax.ejb.Handle;
+import javax.ejb.HomeHandle;
+
+import junit.framework.TestCase;
+
+public class CachingEJBHomeFactoryTest extends TestCase {
+
+	private CountingHomeFactory target = new CountingHomeFactory();
+	private CachingEJBHomeFactory factory = new CachingEJBHomeFactory(target);
+
+
+	public void testHomesAreCached() {
+
+		EJBHome home = factory.lookupRemote("ejb/A", StubHome.class);
+		assertSame(home, factory.lookupRemote("ejb/A", StubHome.class));
+		assertEquals(1, target.lookups);
+
+		factory.lookupRemote("ejb/B", StubHome.class);
+		assertEquals(2, target.lookups);
+		assertEquals(2, factory.size());
+	}
+
+
+	public void testLeastRecentlyUsedHomeIsEvicted() {
+
+		factory.setMaxSize(2);
+		factory.lookupRemote("ejb/A", StubHome.class);
+		factory.lookupRemote("ejb/B", StubHome.class);
+		factory.lookupRemote("ejb/A", StubHome.class);
+		factory.lookupRemote("ejb/C", StubHome.class);
+		assertEquals(3, target.lookups);
+
+		factory.lookupRemote("ejb/A", StubHome.class);
+		assertEquals(3, target.lookups);
+		factory.lookupRemote("ejb/B", StubHome.class);
+		assertEquals(4, target.lookups);
+	}
+
+
+	public void testHomesExpire() throws Exception {
+
+		factory.setTimeToLive(10);
+		factory.lookupRemote("ejb/A", StubHome.class);
+		Thread.sleep(20);
+		factory.lookupRemote("ejb/A", StubHome.class);
+		assertEquals(2, target.lookups);
+	}
+
+
+	public void testHomeIsEvictedWhenItThrowsRemoteException() throws Exception {
+
+		StubHome home = (StubHome) factory.lookupRemote("ejb/A", StubHome.class);
+		target.failing = true;
+		try {
+			home.create();
+			fail("Should throw the NoSuchObjectException of the home");
+		} catch (NoSuchObjectException expected) { }
+		assertEquals(0, factory.size());
+
+		factory.lookupRemote("ejb/A", StubHome.class);
+		assertEquals(2, target.lookups);
+	}
+
+
+	public void testInvalidate() {
+
+		factory.lookupRemote("ejb/A", StubHome.class);
+		factory.lookupRemote("ejb/B", StubHome.class);
+		factory.invalidate("ejb/A");
+		assertEquals(1, factory.size());
+	}
+
+
+	public void testConcurrentLookupsShareOneLookup() throws Exception {
+
+		target.delay = 100;
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					factory.lookupRemote("ejb/A", StubHome.class);
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		assertEquals(1, target.lookups);
+	}
+
+
+	public void testFailedLookupsAreNotCached() {
+
+		target.lookupFailure = new RuntimeException("Error in JNDI lookup");
+		try {
+			factory.lookupRemote("ejb/A", StubHome.class);
+			fail("Should throw the exception of the lookup");
+		} catch (RuntimeException expected) { }
+		assertEquals(0, factory.size());
+	}
+
+
+
+	public static interface StubHome extends EJBHome {
+		Object create() throws CreateException, RemoteException;
+	}
+
+	static class CountingHomeFactory implements EJBHomeFactory {
+		volatile int lookups;
+		volatile long delay;
+		volatile boolean failing;
+		volatile RuntimeException lookupFailure;
+
+		public synchronized EJBHome lookupRemote(String jndiName, Class homeInterface) {
+			lookups++;
+			if (lookupFailure != null)
+				throw lookupFailure;
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) { }
+			return new StubHomeImpl(this);
+		}
+
+		public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	static class StubHomeImpl implements StubHome {
+		private CountingHomeFactory factory;
+		StubHomeImpl(CountingHomeFactory factory) { this.factory = factory; }
+		public Object create() throws RemoteException {
+			if (factory.failing) throw new NoSuchObjectException("");
+			return new Object();
+		}
+		public EJBMetaData getEJBMetaData() { return null; }
+		public HomeHandle getHomeHandle() { return null; }
+		public void remove(Handle handle) { }
+		public void remove(Object primaryKey) { }
+	}
+}
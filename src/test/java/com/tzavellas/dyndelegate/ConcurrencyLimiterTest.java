@@ -0,0 +1,124 @@
+package com.tzavellas.dyndelegate;
+
+import junit.framework.TestCase;
+
+public class ConcurrencyLimiterTest extends TestCase {
+
+	private ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+	private ResultCacheTest.Lookup delegate;
+
+	protected void setUp() {
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(new RequestCollapserTest.SlowLookupBean()));
+		factory.addInterceptor(limiter);
+		limiter.setLatencyThreshold(0);
+		delegate = (ResultCacheTest.Lookup) factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+	}
+
+
+	public void testInvocationsOverTheLimitFailFast() throws Exception {
+
+		limiter.setInitialLimit(2);
+		Thread[] callers = startCallers(2);
+		Thread.sleep(50);
+		try {
+			delegate.find("a");
+			fail("Should reject the invocation");
+		} catch (ConcurrencyLimitExceededException expected) { }
+
+		LimiterStatistics stats = limiter.getStatistics("ejb/Lookup");
+		assertEquals(2, stats.getInFlightCount());
+		assertEquals(1, stats.getRejectedCount());
+		join(callers);
+		assertEquals(0, limiter.getStatistics("ejb/Lookup").getInFlightCount());
+	}
+
+
+	public void testInvocationsOverTheLimitWait() throws Exception {
+
+		limiter.setInitialLimit(2);
+		limiter.setMaxWait(2000);
+		Thread[] callers = startCallers(2);
+		Thread.sleep(50);
+		assertEquals("a", delegate.find("a"));
+		join(callers);
+		assertEquals(0, limiter.getStatistics("ejb/Lookup").getRejectedCount());
+	}
+
+
+	public void testFailuresDecreaseTheLimit() {
+
+		limiter.setInitialLimit(10);
+		for (int i = 0; i < 5; i++) {
+			try {
+				delegate.find("fail");
+			} catch (IllegalStateException expected) { }
+		}
+		assertTrue(limiter.getStatistics("ejb/Lookup").getLimit() < 10);
+	}
+
+
+	public void testSlowInvocationsDecreaseTheLimit() {
+
+		limiter.setInitialLimit(10);
+		limiter.setLatencyThreshold(50);
+		delegate.find("a");
+		delegate.find("a");
+		assertEquals(8, limiter.getStatistics("ejb/Lookup").getLimit());
+	}
+
+
+	public void testBurstOfSlowInvocationsDecreasesTheLimitOnce() throws Exception {
+
+		limiter.setInitialLimit(10);
+		limiter.setLatencyThreshold(50);
+		join(startCallers(5));
+		assertEquals(9, limiter.getStatistics("ejb/Lookup").getLimit());
+	}
+
+
+	public void testInitialLimitIsClampedToTheRange() {
+
+		limiter.setInitialLimit(500);
+		limiter.setLimitRange(1, 50);
+		assertEquals(50, limiter.getStatistics("ejb/Lookup").getLimit());
+	}
+
+
+	public void testSuccessfulInvocationsIncreaseTheLimit() {
+
+		limiter.setInitialLimit(1);
+		delegate.update("a");
+		delegate.update("a");
+		assertEquals(2, limiter.getStatistics("ejb/Lookup").getLimit());
+	}
+
+
+	public void testLimitsAreKeptPerJndiName() throws Exception {
+
+		limiter.setInitialLimit(1);
+		join(startCallers(1));
+		assertEquals(1, limiter.getStatistics("ejb/Lookup").getAcceptedCount());
+		assertEquals(0, limiter.getStatistics("ejb/Other").getAcceptedCount());
+	}
+
+
+	private Thread[] startCallers(int count) {
+		Thread[] callers = new Thread[count];
+		for (int i = 0; i < count; i++) {
+			callers[i] = new Thread() {
+				public void run() {
+					delegate.find("a");
+				}
+			};
+			callers[i].start();
+		}
+		return callers;
+	}
+
+	private static void join(Thread[] threads) throws InterruptedException {
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+	}
+}
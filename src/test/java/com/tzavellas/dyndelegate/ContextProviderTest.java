@@ -0,0 +1,130 @@
+package com.tzavellas.dyndelegate;
+
+import javax.ejb.EJBLocalHome;
+
+import junit.framework.TestCase;
+
+public class ContextProviderTest extends TestCase {
+
+	private EJBLocalHome home = new DelegateClassGeneratorTest.StubHome(null);
+	
+	protected void setUp() {
+		InMemoryContextFactory.reset();
+		InMemoryContextFactory.bindings.put("ejb/Home", home);
+	}
+	
+	
+	public void testSimpleProviderClosesEveryContext() {
+		
+		SimpleEJBHomeFactory factory = new SimpleEJBHomeFactory(
+				new SimpleContextProvider(InMemoryContextFactory.environment()));
+		assertSame(home, factory.lookupLocal("ejb/Home", EJBLocalHome.class));
+		assertSame(home, factory.lookupLocal("ejb/Home", EJBLocalHome.class));
+		
+		assertEquals(2, InMemoryContextFactory.created);
+		assertEquals(2, InMemoryContextFactory.closed);
+	}
+	
+	
+	public void testPooledProviderReusesContexts() {
+		
+		PooledContextProvider provider = new PooledContextProvider(InMemoryContextFactory.environment());
+		SimpleEJBHomeFactory factory = new SimpleEJBHomeFactory(provider);
+		for (int i = 0; i < 5; i++)
+			assertSame(home, factory.lookupLocal("ejb/Home", EJBLocalHome.class));
+		
+		assertEquals(1, InMemoryContextFactory.created);
+		assertEquals(1, provider.getIdleCount());
+		
+		factory.close();
+		assertEquals(1, InMemoryContextFactory.closed);
+		assertEquals(0, provider.getIdleCount());
+	}
+	
+	
+	public void testPooledProviderKeepsContextWhenNameIsNotBound() {
+		
+		PooledContextProvider provider = new PooledContextProvider(InMemoryContextFactory.environment());
+		SimpleEJBHomeFactory factory = new SimpleEJBHomeFactory(provider);
+		try {
+			factory.lookupLocal("ejb/Missing", EJBLocalHome.class);
+			fail("Should throw a RuntimeException since the name is not bound");
+		} catch (RuntimeException expected) { }
+		
+		assertEquals(1, provider.getIdleCount());
+		assertEquals(0, InMemoryContextFactory.closed);
+	}
+	
+	
+	public void testThreadLocalProviderReusesContextPerThread() throws Exception {
+		
+		ThreadLocalContextProvider provider = new ThreadLocalContextProvider(InMemoryContextFactory.environment());
+		final SimpleEJBHomeFactory factory = new SimpleEJBHomeFactory(provider);
+		factory.lookupLocal("ejb/Home", EJBLocalHome.class);
+		factory.lookupLocal("ejb/Home", EJBLocalHome.class);
+		assertEquals(1, InMemoryContextFactory.created);
+		
+		Thread other = new Thread() {
+			public void run() {
+				factory.lookupLocal("ejb/Home", EJBLocalHome.class);
+			}
+		};
+		other.start();
+		other.join();
+		assertEquals(2, InMemoryContextFactory.created);
+		
+		factory.close();
+		assertEquals(2, InMemoryContextFactory.closed);
+	}
+	
+	
+	public void testThreadLocalProviderClosesContextsOfTerminatedThreads() throws Exception {
+		
+		ThreadLocalContextProvider provider = new ThreadLocalContextProvider(InMemoryContextFactory.environment());
+		final SimpleEJBHomeFactory factory = new SimpleEJBHomeFactory(provider);
+		Thread other = new Thread() {
+			public void run() {
+				factory.lookupLocal("ejb/Home", EJBLocalHome.class);
+			}
+		};
+		other.start();
+		other.join();
+		assertEquals(0, InMemoryContextFactory.closed);
+		
+		factory.lookupLocal("ejb/Home", EJBLocalHome.class);
+		assertEquals(2, InMemoryContextFactory.created);
+		assertEquals(1, InMemoryContextFactory.closed);
+	}
+	
+	
+	public void testThreadLocalProviderClosesContextsOfCollectedThreads() throws Exception {
+		
+		ThreadLocalContextProvider provider = new ThreadLocalContextProvider(InMemoryContextFactory.environment());
+		final SimpleEJBHomeFactory factory = new SimpleEJBHomeFactory(provider);
+		Thread other = new Thread() {
+			public void run() {
+				factory.lookupLocal("ejb/Home", EJBLocalHome.class);
+			}
+		};
+		other.start();
+		other.join();
+		other = null;
+		System.gc();
+		
+		factory.close();
+		assertEquals(1, InMemoryContextFactory.created);
+		assertEquals(1, InMemoryContextFactory.closed);
+	}
+	
+	
+	public void testThreadLocalProviderFailsAfterClose() throws Exception {
+		
+		ThreadLocalContextProvider provider = new ThreadLocalContextProvider(InMemoryContextFactory.environment());
+		provider.getContext();
+		provider.close();
+		try {
+			provider.getContext();
+			fail("The provider is closed");
+		} catch (IllegalStateException expected) { }
+	}
+}
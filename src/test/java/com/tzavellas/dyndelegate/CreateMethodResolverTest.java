@@ -0,0 +1,71 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+public class CreateMethodResolverTest extends TestCase {
+
+	private CreateMethodResolver resolver = new CreateMethodResolver();
+	
+	
+	public void testNoArguments() {
+		Method create = resolver.resolve(Home.class, new Object[0]);
+		assertEquals(0, create.getParameterTypes().length);
+	}
+	
+	public void testPrimitiveParameters() {
+		Method create = resolver.resolve(Home.class, new Object[] { new Integer(1), new Long(2) });
+		assertEquals(Integer.TYPE, create.getParameterTypes()[0]);
+		assertEquals(Long.TYPE, create.getParameterTypes()[1]);
+	}
+	
+	public void testSupertypeParameters() {
+		Method create = resolver.resolve(Home.class, new Object[] { new StringBuffer() });
+		assertEquals(CharSequence.class, create.getParameterTypes()[0]);
+	}
+	
+	public void testMostSpecificMethodIsChosen() {
+		Method create = resolver.resolve(Home.class, new Object[] { "arg" });
+		assertEquals(String.class, create.getParameterTypes()[0]);
+	}
+	
+	public void testNullArguments() {
+		Method create = resolver.resolve(Home.class, new Object[] { null });
+		assertEquals(String.class, create.getParameterTypes()[0]);
+		
+		try {
+			resolver.resolve(Home.class, new Object[] { null, new Long(2) });
+			fail("Should throw an IllegalArgumentException since null does not match a primitive");
+		} catch (IllegalArgumentException expected) { }
+	}
+	
+	public void testResolvedMethodsAreCached() {
+		Method create = resolver.resolve(Home.class, new Object[] { "arg" });
+		assertSame(create, resolver.resolve(Home.class, new Object[] { "other" }));
+	}
+	
+	public void testNoMatchingMethod() {
+		try {
+			resolver.resolve(Home.class, new Object[] { new Object() });
+			fail("Should throw an IllegalArgumentException since no create method matches");
+		} catch (IllegalArgumentException expected) { }
+	}
+	
+	public void testAmbiguousMethods() {
+		try {
+			resolver.resolve(Home.class, new Object[] { null, null, null });
+			fail("Should throw an IllegalArgumentException since the create methods are ambiguous");
+		} catch (IllegalArgumentException expected) { }
+	}
+	
+	
+	public static interface Home {
+		Object create();
+		Object create(int a, long b);
+		Object create(CharSequence chars);
+		Object create(String s);
+		Object create(String a, Object b, Object c);
+		Object create(Object a, String b, Object c);
+	}
+}
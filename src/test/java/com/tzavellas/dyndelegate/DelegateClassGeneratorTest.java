@@ -0,0 +1,135 @@
+package com.tzavellas.dyndelegate;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import javax.ejb.EJBException;
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+
+import junit.framework.TestCase;
+
+public class DelegateClassGeneratorTest extends TestCase {
+
+	private DynamicDelegateFactory delegateFactory;
+	private CalculatorBean bean;
+
+	protected void setUp() {
+		bean = new CalculatorBean();
+		delegateFactory = new DynamicDelegateFactory(new EJBExceptionConverter(), new StubHomeFactory(bean));
+		delegateFactory.setGenerateDelegateClasses(true);
+	}
+
+
+	public void testGeneratedDelegateCallsTheBean() {
+
+		Calculator delegate = (Calculator) delegateFactory.createLocalDelegate("ejb/Calculator", StubHome.class, Calculator.class);
+
+		assertTrue(delegate instanceof GeneratedDelegate);
+		assertFalse(Proxy.isProxyClass(delegate.getClass()));
+		assertEquals(5, delegate.add(2, 3));
+		assertEquals(6000000000L, delegate.mul(2000000000L, 3));
+		assertEquals(0.5d, delegate.div(1, 2), 0.0d);
+		assertFalse(delegate.not(true));
+		assertEquals("a-b", delegate.join(new String[] {"a", "b"}, '-'));
+		assertNull(delegate.join(null, '-'));
+		assertEquals(Calculator.class.getName() + "[ejb/Calculator]", delegate.toString());
+		assertSame(bean, delegateFactory.getBean(delegate));
+	}
+
+
+	public void testTheGeneratedClassIsReused() {
+
+		Object d1 = delegateFactory.createLocalDelegate("ejb/Calculator", StubHome.class, Calculator.class);
+		Object d2 = delegateFactory.createLocalDelegate("ejb/Calculator", StubHome.class, Calculator.class);
+		assertSame(d1.getClass(), d2.getClass());
+	}
+
+
+	public void testExceptionsAreConverted() throws Exception {
+
+		Calculator delegate = (Calculator) delegateFactory.createLocalDelegate("ejb/Calculator", StubHome.class, Calculator.class);
+
+		try {
+			delegate.check(1);
+			fail("Should throw the declared IOException");
+		} catch (IOException expected) { }
+
+		try {
+			delegate.check(2);
+			fail("Should throw the cause of the EJBException");
+		} catch (IllegalStateException expected) { }
+
+		delegateFactory.setExceptionConverter(new ThrowableConverter() {
+			public Throwable convert(Throwable ex) {
+				return new Exception(ex);
+			}
+		});
+		try {
+			delegate.check(2);
+			fail("Should wrap the undeclared checked exception");
+		} catch (UndeclaredThrowableException expected) { }
+	}
+
+
+	public void testNonPublicInterfacesUseProxies() {
+
+		Object delegate = delegateFactory.createLocalDelegate("ejb/Calculator", StubHome.class, NonPublic.class);
+		assertTrue(Proxy.isProxyClass(delegate.getClass()));
+		assertEquals(5, ((NonPublic) delegate).add(2, 3));
+	}
+
+
+
+	public static interface Calculator {
+		int add(int a, int b);
+		long mul(long a, long b);
+		double div(double a, double b);
+		boolean not(boolean b);
+		String join(String[] values, char separator);
+		void check(int code) throws IOException;
+	}
+
+	static interface NonPublic {
+		int add(int a, int b);
+	}
+
+	public static class CalculatorBean implements Calculator, NonPublic {
+		public int add(int a, int b) { return a + b; }
+		public long mul(long a, long b) { return a * b; }
+		public double div(double a, double b) { return a / b; }
+		public boolean not(boolean b) { return !b; }
+		public String join(String[] values, char separator) {
+			if (values == null) return null;
+			StringBuffer buf = new StringBuffer();
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) buf.append(separator);
+				buf.append(values[i]);
+			}
+			return buf.toString();
+		}
+		public void check(int code) throws IOException {
+			if (code == 1) throw new IOException();
+			if (code == 2) throw new EJBException(new IllegalStateException());
+		}
+	}
+
+	public static class StubHome implements EJBLocalHome {
+		private Object bean;
+		public StubHome(Object bean) { this.bean = bean; }
+		public Object create() { return bean; }
+		public void remove(Object primaryKey) { }
+	}
+
+	static class StubHomeFactory implements EJBHomeFactory {
+		private Object bean;
+		StubHomeFactory(Object bean) { this.bean = bean; }
+		public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+			return new StubHome(bean);
+		}
+		public EJBHome lookupRemote(String jndiName, Class homeInterface) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+public class DelegateMetricsTest extends TestCase {
+
+	private static final String FIND_KEY = "ejb/Lookup#find(java.lang.String)";
+
+	private MBeanServer server = MBeanServerFactory.newMBeanServer();
+	private ObjectName name;
+	private DynamicDelegateFactory factory;
+	private DelegateMetrics metrics;
+	private ResultCacheTest.Lookup delegate;
+
+	protected void setUp() throws Exception {
+		name = new ObjectName("com.tzavellas.dyndelegate:type=DelegateMetrics");
+		factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(new ResultCacheTest.CountingLookupBean()));
+		factory.setGenerateDelegateClasses(true);
+		metrics = new DelegateMetrics();
+		server.registerMBean(metrics, name);
+		factory.addInvocationListener(metrics);
+		delegate = (ResultCacheTest.Lookup) factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+	}
+
+
+	public void testCallsAndErrorsAreCounted() {
+
+		delegate.find("a");
+		delegate.find("b");
+		delegate.update("a");
+		try {
+			delegate.find("fail");
+			fail("Should throw the exception of the bean");
+		} catch (IllegalStateException expected) { }
+
+		assertEquals(3, metrics.getCallCount(FIND_KEY));
+		assertEquals(1, metrics.getErrorCount(FIND_KEY));
+		assertEquals(4, metrics.getTotalCallCount());
+		assertEquals(1, metrics.getTotalErrorCount());
+		Map errors = metrics.getErrorsByType(FIND_KEY);
+		assertEquals(new Long(1), errors.get(IllegalStateException.class.getName()));
+
+		long[] histogram = metrics.getLatencyHistogram(FIND_KEY);
+		long total = 0;
+		for (int i = 0; i < histogram.length; i++)
+			total += histogram[i];
+		assertEquals(3, total);
+		assertEquals(metrics.getLatencyBuckets().length, histogram.length);
+	}
+
+
+	public void testLatenciesAreBucketed() throws Exception {
+
+		Method find = ResultCacheTest.Lookup.class.getMethod("find", new Class[] { String.class });
+		metrics.invocationCompleted("ejb/Lookup", find, 0, null);
+		metrics.invocationCompleted("ejb/Lookup", find, 15, null);
+		metrics.invocationCompleted("ejb/Lookup", find, 60000, null);
+
+		long[] histogram = metrics.getLatencyHistogram(FIND_KEY);
+		assertEquals(1, histogram[0]);
+		assertEquals(1, histogram[4]);
+		assertEquals(1, histogram[histogram.length - 1]);
+		assertEquals(60000, metrics.getMaxTime(FIND_KEY));
+		assertEquals(60015, metrics.getTotalTime(FIND_KEY));
+	}
+
+
+	public void testMetricsAreAccessibleViaJMX() throws Exception {
+
+		delegate.find("a");
+		String[] keys = (String[]) server.getAttribute(name, "MethodKeys");
+		assertEquals(1, keys.length);
+		assertEquals(FIND_KEY, keys[0]);
+		assertEquals(new Long(1), server.invoke(name, "getCallCount",
+				new Object[] { FIND_KEY }, new String[] { String.class.getName() }));
+
+		server.invoke(name, "reset", null, null);
+		assertEquals(0, metrics.getTotalCallCount());
+	}
+
+
+	public void testFailingListenersAreIgnored() {
+
+		factory.addInvocationListener(new InvocationListener() {
+			public void invocationCompleted(String jndiName, Method method, long elapsedTime, Throwable failure) {
+				throw new IllegalStateException();
+			}
+		});
+		ResultCacheTest.Lookup other = (ResultCacheTest.Lookup) factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+		assertEquals("a1", other.find("a"));
+	}
+}
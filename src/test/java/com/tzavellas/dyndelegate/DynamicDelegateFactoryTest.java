@@ -1,6 +1,9 @@
 package com.tzavellas.dyndelegate;
 
+import java.lang.reflect.Method;
 import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.Iterator;
 
 import javax.ejb.CreateException;
 import javax.ejb.EJBHome;
@@ -153,6 +156,76 @@ public class DynamicDelegateFactoryTest extends TestCase {
 	}
 	
 	
+	public void testNullAndPrimitiveArguments() throws Exception {
+		
+		MockControl beanControl = MockControl.createControl(MyEJBLocal.class);
+		MyEJBLocal bean = (MyEJBLocal) beanControl.getMock();
+		MockControl homeControl = MockControl.createControl(MyEJBLocalHome.class);
+		MyEJBLocalHome home = (MyEJBLocalHome) homeControl.getMock();
+		MockControl factoryControl = MockControl.createControl(EJBHomeFactory.class);
+		EJBHomeFactory factory = (EJBHomeFactory) factoryControl.getMock();
+		
+		factory.lookupLocal("ejb/MyEJBLocalHome", MyEJBLocalHome.class);
+		factoryControl.setReturnValue(home);
+		home.create();
+		homeControl.setReturnValue(bean);
+		bean.businessMethod2(null);
+		bean.businessMethod3(3, null);
+		beanControl.setReturnValue(new Integer(4));
+		
+		factoryControl.replay();
+		homeControl.replay();
+		beanControl.replay();
+		
+		DynamicDelegateFactory delegateFactory = new DynamicDelegateFactory();
+		delegateFactory.setHomeFactory(factory);
+		BusinessInterface delegate = (BusinessInterface) delegateFactory.createLocalDelegate("ejb/MyEJBLocalHome", MyEJBLocalHome.class, BusinessInterface.class);
+		delegate.businessMethod2(null);
+		assertEquals(4, delegate.businessMethod3(3, null));
+		
+		factoryControl.verify();
+		homeControl.verify();
+		beanControl.verify();
+	}
+	
+	
+	public void testSuppressAccessChecks() throws Exception {
+		
+		MockControl beanControl = MockControl.createControl(MyEJBLocal.class);
+		MyEJBLocal bean = (MyEJBLocal) beanControl.getMock();
+		MockControl homeControl = MockControl.createControl(MyEJBLocalHome.class);
+		MyEJBLocalHome home = (MyEJBLocalHome) homeControl.getMock();
+		MockControl factoryControl = MockControl.createControl(EJBHomeFactory.class);
+		EJBHomeFactory factory = (EJBHomeFactory) factoryControl.getMock();
+		
+		factory.lookupLocal("ejb/MyEJBLocalHome", MyEJBLocalHome.class);
+		factoryControl.setReturnValue(home);
+		home.create();
+		homeControl.setReturnValue(bean);
+		bean.businessMethod3(1, "arg");
+		beanControl.setReturnValue(new Integer(2));
+		
+		factoryControl.replay();
+		homeControl.replay();
+		beanControl.replay();
+		
+		DynamicDelegateFactory delegateFactory = new DynamicDelegateFactory();
+		delegateFactory.setHomeFactory(factory);
+		delegateFactory.setSuppressAccessChecks(true);
+		BusinessInterface delegate = (BusinessInterface) delegateFactory.createLocalDelegate("ejb/MyEJBLocalHome", MyEJBLocalHome.class, BusinessInterface.class);
+		assertEquals(2, delegate.businessMethod3(1, "arg"));
+		
+		Collection targets = delegateFactory.getDispatchTable(delegate).values();
+		assertFalse(targets.isEmpty());
+		for (Iterator i = targets.iterator(); i.hasNext(); )
+			assertTrue(((Method) i.next()).isAccessible());
+		
+		factoryControl.verify();
+		homeControl.verify();
+		beanControl.verify();
+	}
+	
+	
 	public void testGetBean() throws Exception {
 		
 		MockControl beanControl = MockControl.createControl(MyEJBLocal.class);
@@ -225,6 +298,7 @@ public class DynamicDelegateFactoryTest extends TestCase {
 	static interface BusinessInterface {
 		void businessMethod();
 		void businessMethod2(String arg);
+		int businessMethod3(int i, Object arg);
 	}
 	static interface MyEJBLocal extends EJBLocalObject, BusinessInterface { }
 	static interface MyEJBLocalHome extends EJBLocalHome {
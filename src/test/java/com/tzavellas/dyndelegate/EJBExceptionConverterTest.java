@@ -43,6 +43,19 @@ public class EJBExceptionConverterTest extends TestCase {
 	}
 	
 	
+	public void testLightweightWrappers() {
+
+		EJBExceptionConverter lightweight = new EJBExceptionConverter();
+		lightweight.setLightweightWrappers(true);
+		RemoteException remote = new RemoteException("");
+		
+		Throwable converted = lightweight.convert(remote);
+		assertTrue(converted instanceof LightweightRuntimeException);
+		assertSame(remote, converted.getCause());
+		assertEquals(remote.getStackTrace().length, converted.getStackTrace().length);
+	}
+	
+	
 	public void testConvertOthrer() {
 		
 		Throwable t = new Throwable();
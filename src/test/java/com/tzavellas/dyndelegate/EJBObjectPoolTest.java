@@ -0,0 +1,168 @@
+package com.tzavellas.dyndelegate;
+
+import java.rmi.RemoteException;
+
+import junit.framework.TestCase;
+
+public class EJBObjectPoolTest extends TestCase {
+
+	private PoolConfig config = new PoolConfig();
+	private CountingCreator creator = new CountingCreator();
+	
+	
+	public void testObjectsAreReused() {
+		
+		EJBObjectPool pool = new EJBObjectPool(config, creator);
+		Object ejb = pool.getEJB();
+		pool.releaseEJB(ejb, null);
+		assertSame(ejb, pool.getEJB());
+		
+		PoolStatistics stats = pool.getStatistics();
+		assertEquals(1, stats.getCreatedCount());
+		assertEquals(2, stats.getBorrowedCount());
+		assertEquals(1, stats.getActiveCount());
+		assertEquals(0, stats.getIdleCount());
+	}
+	
+	
+	public void testObjectsThatThrowSystemExceptionsAreDiscarded() {
+		
+		EJBObjectPool pool = new EJBObjectPool(config, creator);
+		Object ejb = pool.getEJB();
+		pool.releaseEJB(ejb, new RemoteException());
+		assertNotSame(ejb, pool.getEJB());
+		assertEquals(1, pool.getStatistics().getDestroyedCount());
+		
+		ejb = pool.getEJB();
+		pool.releaseEJB(ejb, new Exception("application exception"));
+		assertEquals(1, pool.getStatistics().getIdleCount());
+	}
+	
+	
+	public void testPrefill() {
+		
+		config.setMinIdle(3);
+		EJBObjectPool pool = new EJBObjectPool(config, creator);
+		pool.prefill();
+		assertEquals(3, creator.created);
+		assertEquals(3, pool.getStatistics().getIdleCount());
+	}
+	
+	
+	public void testMinIdleCannotExceedMaxActive() {
+		
+		config.setMinIdle(10);
+		config.setMaxActive(20);
+		new EJBObjectPool(config, creator);
+		
+		config.setMaxActive(5);
+		try {
+			new EJBObjectPool(config, creator);
+			fail("Should throw an IllegalArgumentException since minIdle > maxActive");
+		} catch (IllegalArgumentException expected) { }
+	}
+	
+	
+	public void testExhaustedPoolTimesOut() {
+		
+		config.setMaxActive(1);
+		config.setMaxWait(10);
+		EJBObjectPool pool = new EJBObjectPool(config, creator);
+		pool.getEJB();
+		try {
+			pool.getEJB();
+			fail("Should timeout since the only object of the pool is in use");
+		} catch (IllegalStateException expected) { }
+		assertEquals(1, pool.getStatistics().getWaitCount());
+	}
+	
+	
+	public void testWaitingInvocationGetsReleasedObject() throws Exception {
+		
+		config.setMaxActive(1);
+		final EJBObjectPool pool = new EJBObjectPool(config, creator);
+		final Object ejb = pool.getEJB();
+		Thread releaser = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) { }
+				pool.releaseEJB(ejb, null);
+			}
+		};
+		releaser.start();
+		assertSame(ejb, pool.getEJB());
+		releaser.join();
+		assertEquals(1, creator.created);
+	}
+	
+	
+	public void testIdleObjectsAreEvicted() throws Exception {
+		
+		config.setIdleTimeout(10);
+		config.setMinIdle(1);
+		EJBObjectPool pool = new EJBObjectPool(config, creator);
+		Object ejb1 = pool.getEJB();
+		Object ejb2 = pool.getEJB();
+		pool.releaseEJB(ejb1, null);
+		pool.releaseEJB(ejb2, null);
+		Thread.sleep(20);
+		
+		assertSame(ejb2, pool.getEJB());
+		assertEquals(1, pool.getStatistics().getDestroyedCount());
+		assertEquals(0, pool.getStatistics().getIdleCount());
+	}
+	
+	
+	public void testRemoveClosesThePool() {
+		
+		EJBObjectPool pool = new EJBObjectPool(config, creator);
+		pool.releaseEJB(pool.getEJB(), null);
+		pool.remove();
+		assertEquals(1, pool.getStatistics().getDestroyedCount());
+		try {
+			pool.getEJB();
+			fail("Should throw an IllegalStateException since the pool is closed");
+		} catch (IllegalStateException expected) { }
+	}
+	
+	
+	public void testPooledDelegate() {
+		
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(new DelegateClassGeneratorTest.CalculatorBean()));
+		DelegateClassGeneratorTest.Calculator delegate = (DelegateClassGeneratorTest.Calculator)
+			factory.createPooledLocalDelegate("ejb/Calculator",
+					DelegateClassGeneratorTest.StubHome.class,
+					DelegateClassGeneratorTest.Calculator.class,
+					config);
+		
+		assertEquals(3, delegate.add(1, 2));
+		try {
+			delegate.check(2);
+			fail("Should throw the cause of the EJBException");
+		} catch (IllegalStateException expected) {
+		} catch (Exception e) {
+			fail("Unexpected exception " + e);
+		}
+		
+		PoolStatistics stats = factory.getPoolStatistics(delegate);
+		assertEquals(3, stats.getBorrowedCount());
+		assertEquals(1, stats.getDestroyedCount());
+		assertEquals(0, stats.getActiveCount());
+		
+		try {
+			factory.getBean(delegate);
+			fail("Should throw an IllegalArgumentException since the delegate is pooled");
+		} catch (IllegalArgumentException expected) { }
+	}
+	
+	
+	static class CountingCreator implements EJBCreator {
+		int created;
+		public synchronized Object createEJB() {
+			created++;
+			return new Object();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.tzavellas.dyndelegate;
+
+import junit.framework.TestCase;
+
+public class HedgingInterceptorTest extends TestCase {
+
+	private SimpleTaskExecutor executor = new SimpleTaskExecutor("test", 4);
+	private HedgingInterceptor hedging = new HedgingInterceptor(executor);
+	private UnevenLookupBean bean = new UnevenLookupBean();
+	private ResultCacheTest.Lookup delegate;
+
+	protected void setUp() {
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new TimeoutInterceptorTest.RemoteStubHomeFactory(bean));
+		factory.addInterceptor(hedging);
+		hedging.addMethod(ResultCacheTest.Lookup.class, "find");
+		hedging.setDelay(50);
+		hedging.setBudgetRatio(1);
+		delegate = (ResultCacheTest.Lookup) factory.createRemoteDelegate("ejb/Lookup",
+				TimeoutInterceptorTest.RemoteStubHome.class, ResultCacheTest.Lookup.class);
+	}
+
+	protected void tearDown() {
+		executor.shutdown();
+	}
+
+
+	public void testSlowInvocationIsHedged() {
+
+		bean.slowCalls = 1;
+		long start = System.currentTimeMillis();
+		assertEquals("a", delegate.find("a"));
+		assertTrue(System.currentTimeMillis() - start < 300);
+		assertEquals(1, hedging.getHedgeCount());
+		assertEquals(1, hedging.getHedgeWinCount());
+	}
+
+
+	public void testLocalInvocationsAreNotHedged() {
+
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(bean));
+		factory.addInterceptor(hedging);
+		ResultCacheTest.Lookup local = (ResultCacheTest.Lookup) factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+
+		bean.slowCalls = 1;
+		assertEquals("a", local.find("a"));
+		assertSame(Thread.currentThread(), bean.lastThread);
+		assertEquals(0, hedging.getCallCount());
+		assertEquals(0, hedging.getHedgeCount());
+	}
+
+
+	public void testHedgeAnswersWhenTheSlowInvocationFails() {
+
+		bean.slowCalls = 1;
+		bean.failSlowCalls = true;
+		assertEquals("a", delegate.find("a"));
+		assertEquals(1, hedging.getHedgeWinCount());
+	}
+
+
+	public void testFastInvocationIsNotHedged() {
+
+		assertEquals("a", delegate.find("a"));
+		assertEquals(0, hedging.getHedgeCount());
+		assertEquals(1, hedging.getCallCount());
+	}
+
+
+	public void testHedgesAreLimitedByTheBudget() {
+
+		hedging.setBudgetRatio(0);
+		bean.slowCalls = 1;
+		delegate.find("a");
+		assertEquals(0, hedging.getHedgeCount());
+	}
+
+
+	public void testExceptionIsThrownWhenAllInvocationsFail() {
+
+		bean.slowCalls = 1;
+		try {
+			delegate.find("fail");
+			fail("Should throw the exception of the bean");
+		} catch (IllegalStateException expected) { }
+		assertEquals(1, hedging.getHedgeCount());
+		assertEquals(0, hedging.getHedgeWinCount());
+	}
+
+
+	public void testPercentileDelay() {
+
+		hedging.setPercentileDelay(true);
+		hedging.setDelay(0);
+		for (int i = 0; i < 20; i++)
+			delegate.find("a");
+		long hedges = hedging.getHedgeCount();
+		bean.slowCalls = 1;
+		assertEquals("a", delegate.find("a"));
+		assertEquals(hedges + 1, hedging.getHedgeCount());
+	}
+
+
+	public static class UnevenLookupBean implements ResultCacheTest.Lookup {
+		volatile int slowCalls;
+		volatile boolean failSlowCalls;
+		volatile Thread lastThread;
+		public String find(String key) {
+			boolean slow;
+			synchronized (this) {
+				slow = slowCalls > 0;
+				if (slow) slowCalls--;
+			}
+			lastThread = Thread.currentThread();
+			try {
+				Thread.sleep(slow ? 500 : 5);
+			} catch (InterruptedException e) { }
+			if ("fail".equals(key) || (slow && failSlowCalls)) throw new IllegalStateException();
+			return key;
+		}
+		public String[] findAll(String[] keys) { return keys; }
+		public void update(String key) { }
+	}
+}
@@ -0,0 +1,60 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.spi.InitialContextFactory;
+
+/**
+ * A JNDI provider for the tests that keeps the bindings in memory and
+ * counts the created and closed contexts.
+ */
+public class InMemoryContextFactory implements InitialContextFactory {
+
+	static final Map bindings = new HashMap();
+	static int created;
+	static int closed;
+	
+	static Hashtable environment() {
+		Hashtable env = new Hashtable();
+		env.put(Context.INITIAL_CONTEXT_FACTORY, InMemoryContextFactory.class.getName());
+		return env;
+	}
+	
+	static synchronized void reset() {
+		bindings.clear();
+		created = 0;
+		closed = 0;
+	}
+
+	public Context getInitialContext(Hashtable environment) {
+		synchronized (InMemoryContextFactory.class) {
+			created++;
+		}
+		return (Context) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class[] { Context.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("lookup")) {
+							Object bound = bindings.get(String.valueOf(args[0]));
+							if (bound == null)
+								throw new NameNotFoundException(String.valueOf(args[0]));
+							return bound;
+						}
+						if (method.getName().equals("close")) {
+							synchronized (InMemoryContextFactory.class) {
+								closed++;
+							}
+							return null;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+}
@@ -0,0 +1,104 @@
+package com.tzavellas.dyndelegate;
+
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+import javax.ejb.NoSuchObjectLocalException;
+
+import junit.framework.TestCase;
+
+public class LazyDelegateTest extends TestCase {
+
+	private CountingHomeFactory homes = new CountingHomeFactory();
+	private DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(), homes);
+	private ResultCacheTest.Lookup delegate;
+
+	protected void setUp() {
+		delegate = (ResultCacheTest.Lookup) factory.createLazyLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+	}
+
+
+	public void testEJBIsCreatedOnFirstInvocation() {
+
+		assertEquals(0, homes.lookups);
+		assertEquals("ejb/Lookup", delegate.find("a"));
+		assertEquals("ejb/Lookup", delegate.find("a"));
+		assertEquals(1, homes.lookups);
+	}
+
+
+	public void testConcurrentFirstInvocationsCreateOneEJB() throws Exception {
+
+		homes.delay = 100;
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					delegate.find("a");
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		assertEquals(1, homes.lookups);
+	}
+
+
+	public void testStaleEJBIsReplacedAndInvocationRetried() {
+
+		delegate.find("a");
+		homes.bean.failing = true;
+		homes.bean = new LoadBalancingTest.NamedLookupBean("ejb/Lookup");
+		assertEquals("ejb/Lookup", delegate.find("a"));
+		assertEquals(2, homes.lookups);
+	}
+
+
+	public void testLookupErrorsAreThrownFromTheFirstInvocation() {
+
+		homes.failure = new RuntimeException("Error in JNDI lookup");
+		try {
+			delegate.find("a");
+			fail("Should throw the exception of the lookup");
+		} catch (RuntimeException expected) {
+			assertSame(homes.failure, expected);
+		}
+		homes.failure = null;
+		assertEquals("ejb/Lookup", delegate.find("a"));
+	}
+
+
+	public void testInvocationIsRetriedOnce() {
+
+		delegate.find("a");
+		homes.bean.failing = true;
+		try {
+			delegate.find("a");
+			fail("Should throw the exception of the bean");
+		} catch (NoSuchObjectLocalException expected) { }
+		assertEquals(2, homes.lookups);
+	}
+
+
+	static class CountingHomeFactory implements EJBHomeFactory {
+		volatile LoadBalancingTest.NamedLookupBean bean = new LoadBalancingTest.NamedLookupBean("ejb/Lookup");
+		volatile int lookups;
+		volatile long delay;
+		volatile RuntimeException failure;
+
+		public synchronized EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+			lookups++;
+			if (failure != null)
+				throw failure;
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) { }
+			return new DelegateClassGeneratorTest.StubHome(bean);
+		}
+
+		public EJBHome lookupRemote(String jndiName, Class homeInterface) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.tzavellas.dyndelegate;
+
+import java.rmi.ConnectException;
+import java.rmi.ServerException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+import javax.ejb.NoSuchObjectLocalException;
+
+import junit.framework.TestCase;
+
+public class LoadBalancingTest extends TestCase {
+
+	private static final String[] NAMES = { "ejb/A", "ejb/B" };
+
+	private NamedHomeFactory homeFactory = new NamedHomeFactory();
+	private DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(), homeFactory);
+
+	protected void setUp() {
+		homeFactory.bind("ejb/A");
+		homeFactory.bind("ejb/B");
+		factory.setProbeInterval(50);
+	}
+
+
+	public void testRoundRobin() {
+
+		ResultCacheTest.Lookup delegate = createDelegate(NAMES, new RoundRobinStrategy());
+		assertEquals("ejb/A", delegate.find("a"));
+		assertEquals("ejb/B", delegate.find("a"));
+		assertEquals("ejb/A", delegate.find("a"));
+
+		Endpoint[] endpoints = factory.getEndpoints(delegate);
+		assertEquals(2, endpoints[0].getInvocationCount());
+		assertEquals(1, endpoints[1].getInvocationCount());
+		assertEquals(0, endpoints[0].getOutstandingCount());
+	}
+
+
+	public void testFailedEndpointIsMarkedDownAndProbed() throws Exception {
+
+		ResultCacheTest.Lookup delegate = createDelegate(NAMES, new RoundRobinStrategy());
+		homeFactory.bean("ejb/A").failing = true;
+		try {
+			delegate.find("a");
+			fail("Should throw the exception of the bean");
+		} catch (NoSuchObjectLocalException expected) { }
+
+		Endpoint a = factory.getEndpoints(delegate)[0];
+		assertFalse(a.isAvailable());
+		assertEquals(1, a.getFailureCount());
+		for (int i = 0; i < 3; i++)
+			assertEquals("ejb/B", delegate.find("a"));
+
+		homeFactory.bind("ejb/A");
+		Thread.sleep(300);
+		assertTrue(a.isAvailable());
+	}
+
+
+	public void testApplicationFailuresKeepTheEndpointUp() {
+
+		Endpoint endpoint = new Endpoint("ejb/A", new EJBCreator() {
+			public Object createEJB() {
+				return homeFactory.bean("ejb/A");
+			}
+		});
+		LoadBalancedEJBSource source = new LoadBalancedEJBSource(new Endpoint[] { endpoint },
+				new RoundRobinStrategy(), new Timer(true), 1000);
+		source.start();
+
+		source.releaseEJB(source.getEJB(), new ServerException("Bad argument", new IllegalArgumentException()));
+		assertTrue(endpoint.isAvailable());
+
+		source.releaseEJB(source.getEJB(), new ConnectException("Connection refused"));
+		assertFalse(endpoint.isAvailable());
+		source.remove();
+	}
+
+
+	public void testUnavailableEndpointAtCreation() throws Exception {
+
+		ResultCacheTest.Lookup delegate = createDelegate(new String[] { "ejb/A", "ejb/C" }, new RoundRobinStrategy());
+		assertFalse(factory.getEndpoints(delegate)[1].isAvailable());
+		assertEquals("ejb/A", delegate.find("a"));
+		assertEquals("ejb/A", delegate.find("a"));
+
+		homeFactory.bind("ejb/C");
+		Thread.sleep(300);
+		assertTrue(factory.getEndpoints(delegate)[1].isAvailable());
+	}
+
+
+	public void testCreationFailsWhenNoEndpointIsAvailable() {
+		try {
+			createDelegate(new String[] { "ejb/C", "ejb/D" }, new RoundRobinStrategy());
+			fail("Should throw the exception of the lookup");
+		} catch (RuntimeException expected) { }
+	}
+
+
+	public void testLeastOutstanding() {
+
+		Endpoint a = new Endpoint("ejb/A", null);
+		Endpoint b = new Endpoint("ejb/B", null);
+		a.acquire();
+		assertSame(b, new LeastOutstandingStrategy().select(new Endpoint[] { a, b }));
+		b.acquire();
+		b.acquire();
+		assertSame(a, new LeastOutstandingStrategy().select(new Endpoint[] { a, b }));
+	}
+
+
+	public void testPowerOfTwoChoicesPrefersTheFasterEndpoint() {
+
+		Endpoint slow = new Endpoint("ejb/A", null);
+		Endpoint fast = new Endpoint("ejb/B", null);
+		slow.acquire();
+		slow.release(100);
+		fast.acquire();
+		fast.release(1);
+		LoadBalancingStrategy strategy = new PowerOfTwoChoicesStrategy();
+		for (int i = 0; i < 10; i++)
+			assertSame(fast, strategy.select(new Endpoint[] { slow, fast }));
+	}
+
+
+	private ResultCacheTest.Lookup createDelegate(String[] names, LoadBalancingStrategy strategy) {
+		return (ResultCacheTest.Lookup) factory.createLoadBalancedLocalDelegate(names,
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class, strategy);
+	}
+
+
+	static class NamedHomeFactory implements EJBHomeFactory {
+		private final Map beans = new HashMap();
+
+		synchronized void bind(String jndiName) {
+			beans.put(jndiName, new NamedLookupBean(jndiName));
+		}
+
+		synchronized NamedLookupBean bean(String jndiName) {
+			return (NamedLookupBean) beans.get(jndiName);
+		}
+
+		public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+			NamedLookupBean bean = bean(jndiName);
+			if (bean == null)
+				throw new RuntimeException("Error in JNDI lookup with name '" + jndiName + "'");
+			return new DelegateClassGeneratorTest.StubHome(bean);
+		}
+
+		public EJBHome lookupRemote(String jndiName, Class homeInterface) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	public static class NamedLookupBean implements ResultCacheTest.Lookup {
+		final String name;
+		volatile boolean failing;
+		NamedLookupBean(String name) { this.name = name; }
+		public String find(String key) {
+			if (failing) throw new NoSuchObjectLocalException(name);
+			return name;
+		}
+		public String[] findAll(String[] keys) { return keys; }
+		public void update(String key) { }
+	}
+}
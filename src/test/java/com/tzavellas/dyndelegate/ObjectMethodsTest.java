@@ -0,0 +1,142 @@
+package com.tzavellas.dyndelegate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+
+import junit.framework.TestCase;
+
+public class ObjectMethodsTest extends TestCase {
+
+	private static final String LOOKUP = ResultCacheTest.Lookup.class.getName();
+
+	private ObjectMethodsBean bean = new ObjectMethodsBean("42");
+	private DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+			new DelegateClassGeneratorTest.StubHomeFactory(bean));
+
+
+	public void testObjectMethodsDoNotInvokeTheEJB() {
+
+		Object delegate = createDelegate();
+		assertEquals(LOOKUP + "[ejb/Lookup]", delegate.toString());
+		assertEquals(delegate.hashCode(), delegate.hashCode());
+		assertTrue(delegate.equals(delegate));
+		assertFalse(delegate.equals(bean));
+		assertFalse(delegate.equals(null));
+
+		Set set = new HashSet();
+		set.add(delegate);
+		assertTrue(set.contains(delegate));
+		assertEquals(0, bean.objectMethodCalls);
+	}
+
+
+	public void testDelegatesOfTheSameEJBAreEqual() {
+
+		Object proxy = createDelegate();
+		factory.setGenerateDelegateClasses(true);
+		Object generated = createDelegate();
+		assertTrue(generated instanceof GeneratedDelegate);
+
+		assertEquals(proxy, generated);
+		assertEquals(generated, proxy);
+		assertEquals(proxy.hashCode(), generated.hashCode());
+		assertEquals(proxy.toString(), generated.toString());
+
+		DynamicDelegateFactory other = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(new ObjectMethodsBean("42")));
+		assertFalse(proxy.equals(other.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class)));
+		assertEquals(0, bean.objectMethodCalls);
+	}
+
+
+	public void testDelegatesOfEntitiesAreIdentifiedByThePrimaryKey() {
+
+		factory.setHomeFactory(new EntityHomeFactory());
+		Object d1 = factory.createLocalDelegate("ejb/Lookup", EntityHome.class, ResultCacheTest.Lookup.class);
+		Object d2 = factory.createLocalDelegate("ejb/Lookup", EntityHome.class, ResultCacheTest.Lookup.class);
+
+		assertNotSame(factory.getBean(d1), factory.getBean(d2));
+		assertEquals(d1, d2);
+		assertEquals(d1.hashCode(), d2.hashCode());
+		assertEquals(LOOKUP + "[ejb/Lookup, 42]", d1.toString());
+	}
+
+
+	public void testObjectMethodsCanBeForwarded() {
+
+		factory.setForwardObjectMethods(true);
+		Object delegate = createDelegate();
+		assertEquals("ObjectMethodsBean", delegate.toString());
+		assertEquals(1, bean.objectMethodCalls);
+	}
+
+
+	public void testLocalMethodsAreAnsweredFromTheDelegate() {
+
+		factory.addLocalMethod(VersionedLookup.class, "getVersion");
+		VersionedLookup delegate = (VersionedLookup) factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, VersionedLookup.class);
+
+		assertEquals("v1", delegate.getVersion());
+		assertEquals("v1", delegate.getVersion());
+		delegate.update("a");
+		delegate.update("a");
+		assertEquals(3, bean.calls);
+
+		VersionedLookup other = (VersionedLookup) factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, VersionedLookup.class);
+		assertEquals("v4", other.getVersion());
+	}
+
+
+	public void testLocalMethodsCannotHaveParameters() {
+
+		try {
+			factory.addLocalMethod(ResultCacheTest.Lookup.class, "find");
+			fail("find has parameters");
+		} catch (IllegalArgumentException expected) { }
+	}
+
+
+	private Object createDelegate() {
+		return factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+	}
+
+
+	public static interface VersionedLookup extends ResultCacheTest.Lookup {
+		String getVersion();
+	}
+
+
+	public static class ObjectMethodsBean extends ResultCacheTest.CountingLookupBean
+			implements VersionedLookup {
+		int objectMethodCalls;
+		private final Object primaryKey;
+		ObjectMethodsBean(Object primaryKey) { this.primaryKey = primaryKey; }
+		public Object getPrimaryKey() { return primaryKey; }
+		public String getVersion() { return "v" + (++calls); }
+		public boolean equals(Object obj) { objectMethodCalls++; return super.equals(obj); }
+		public int hashCode() { objectMethodCalls++; return super.hashCode(); }
+		public String toString() { objectMethodCalls++; return "ObjectMethodsBean"; }
+	}
+
+	public static class EntityHome implements EJBLocalHome {
+		public Object create() { return new ObjectMethodsBean("42"); }
+		public Object findByPrimaryKey(Object primaryKey) { return new ObjectMethodsBean(primaryKey); }
+		public void remove(Object primaryKey) { }
+	}
+
+	static class EntityHomeFactory implements EJBHomeFactory {
+		public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+			return new EntityHome();
+		}
+		public EJBHome lookupRemote(String jndiName, Class homeInterface) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.ejb.EJBException;
+
+import junit.framework.TestCase;
+
+public class PagedIteratorTest extends TestCase {
+
+	private SimpleTaskExecutor executor = new SimpleTaskExecutor("test", 8);
+	private ReportBean bean = new ReportBean();
+	private DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+			new DelegateClassGeneratorTest.StubHomeFactory(bean));
+	private Object delegate;
+	private Method rows;
+	private Method numbers;
+
+	protected void setUp() throws Exception {
+		factory.setTaskExecutor(executor);
+		delegate = factory.createLocalDelegate("ejb/Report",
+				DelegateClassGeneratorTest.StubHome.class, Report.class);
+		rows = Report.class.getMethod("rows", new Class[] { String.class, Integer.TYPE, Integer.TYPE });
+		numbers = Report.class.getMethod("numbers", new Class[] { Integer.TYPE, Integer.TYPE });
+	}
+
+	protected void tearDown() {
+		executor.shutdown();
+	}
+
+
+	public void testAllTheItemsAreIteratedInOrder() {
+
+		bean.total = 25;
+		PagedIterator i = factory.iteratePages(delegate, rows, new Object[] { "r" }, 10, 2);
+		List items = consume(i);
+		assertEquals(25, items.size());
+		assertEquals("r0", items.get(0));
+		assertEquals("r24", items.get(24));
+		assertEquals(3, i.getPageCount());
+	}
+
+
+	public void testArrayPages() {
+
+		bean.total = 20;
+		List items = consume(factory.iteratePages(delegate, numbers, null, 10, 1));
+		assertEquals(20, items.size());
+		assertEquals(new Integer(19), items.get(19));
+	}
+
+
+	public void testNextPagesArePrefetched() throws Exception {
+
+		bean.total = 100;
+		PagedIterator i = factory.iteratePages(delegate, rows, new Object[] { "r" }, 10, 2);
+		i.next();
+		Thread.sleep(100);
+		assertEquals(3, bean.calls);
+		i.close();
+		assertFalse(i.hasNext());
+	}
+
+
+	public void testWithoutPrefetchPagesAreFetchedWhenNeeded() throws Exception {
+
+		bean.total = 100;
+		PagedIterator i = factory.iteratePages(delegate, rows, new Object[] { "r" }, 10, 0);
+		for (int n = 0; n < 10; n++)
+			i.next();
+		Thread.sleep(100);
+		assertEquals(1, bean.calls);
+	}
+
+
+	public void testExceptionsOfTheDelegateAreThrown() {
+
+		bean.total = 100;
+		bean.failAt = 10;
+		Iterator i = factory.iteratePages(delegate, rows, new Object[] { "r" }, 10, 1);
+		for (int n = 0; n < 10; n++)
+			i.next();
+		try {
+			i.hasNext();
+			fail("Should throw the converted exception of the bean");
+		} catch (IllegalStateException expected) { }
+	}
+
+
+	public void testMethodMustBePaged() throws Exception {
+
+		try {
+			factory.iteratePages(delegate, rows, null, 10, 1);
+			fail("rows needs a prefix argument");
+		} catch (IllegalArgumentException expected) { }
+	}
+
+
+	private static List consume(Iterator i) {
+		List items = new ArrayList();
+		while (i.hasNext())
+			items.add(i.next());
+		return items;
+	}
+
+
+	public static interface Report {
+		List rows(String prefix, int offset, int limit);
+		int[] numbers(int offset, int limit);
+	}
+
+	public static class ReportBean implements Report {
+		int total;
+		int failAt = -1;
+		int calls;
+		public List rows(String prefix, int offset, int limit) {
+			synchronized (this) { calls++; }
+			if (offset == failAt) throw new EJBException(new IllegalStateException());
+			List page = new ArrayList();
+			for (int i = offset; i < Math.min(total, offset + limit); i++)
+				page.add(prefix + i);
+			return page;
+		}
+		public int[] numbers(int offset, int limit) {
+			int[] page = new int[Math.max(0, Math.min(total, offset + limit) - offset)];
+			for (int i = 0; i < page.length; i++)
+				page[i] = offset + i;
+			return page;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.tzavellas.dyndelegate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+import javax.ejb.EJBMetaData;
+import javax.ejb.Handle;
+import javax.ejb.HomeHandle;
+
+import junit.framework.TestCase;
+
+public class PersistentEJBHomeFactoryTest extends TestCase {
+
+	/** The remote homes that the handles refer to, by JNDI name. */
+	static final Map SERVER = new HashMap();
+
+	private File file;
+	private CountingHomeFactory jndi = new CountingHomeFactory();
+
+	protected void setUp() throws Exception {
+		file = File.createTempFile("homes", ".cache");
+		file.delete();
+		SERVER.clear();
+		SERVER.put("ejb/Catalog", new StubRemoteHome("ejb/Catalog"));
+		SERVER.put("ejb/Orders", new StubRemoteHome("ejb/Orders"));
+	}
+
+	protected void tearDown() {
+		file.delete();
+	}
+
+
+	public void testHomesAreRestoredAfterRestart() {
+
+		PersistentEJBHomeFactory factory = new PersistentEJBHomeFactory(file, jndi);
+		factory.lookupRemote("ejb/Catalog", StubRemoteHome.class);
+		factory.lookupRemote("ejb/Orders", StubRemoteHome.class);
+		assertEquals(2, jndi.lookups);
+		factory.flush();
+		assertTrue(file.exists());
+
+		PersistentEJBHomeFactory restarted = new PersistentEJBHomeFactory(file, jndi);
+		assertSame(SERVER.get("ejb/Catalog"), restarted.lookupRemote("ejb/Catalog", StubRemoteHome.class));
+		assertSame(SERVER.get("ejb/Orders"), restarted.lookupRemote("ejb/Orders", StubRemoteHome.class));
+		assertEquals(2, jndi.lookups);
+
+		HandleCacheStatistics stats = restarted.getStatistics();
+		assertEquals(2, stats.getHandleCount());
+		assertEquals(2, stats.getHitCount());
+		assertEquals(0, stats.getMissCount());
+		assertEquals(1.0d, stats.getHitRatio(), 0.0d);
+	}
+
+
+	public void testStaleHandlesFallBackToJNDI() {
+
+		PersistentEJBHomeFactory factory = new PersistentEJBHomeFactory(file, jndi);
+		factory.lookupRemote("ejb/Catalog", StubRemoteHome.class);
+		factory.flush();
+		SERVER.put("ejb/Catalog", new StubRemoteHome("ejb/Catalog2"));
+
+		PersistentEJBHomeFactory restarted = new PersistentEJBHomeFactory(file, jndi);
+		assertSame(SERVER.get("ejb/Catalog"), restarted.lookupRemote("ejb/Catalog", StubRemoteHome.class));
+		assertEquals(2, jndi.lookups);
+		HandleCacheStatistics stats = restarted.getStatistics();
+		assertEquals(1, stats.getStaleHandleCount());
+		assertEquals(1, stats.getMissCount());
+
+		// the stale handle was replaced
+		restarted.lookupRemote("ejb/Catalog", StubRemoteHome.class);
+		assertEquals(2, jndi.lookups);
+	}
+
+
+	public void testHandlesOfUnreachableHomesAreStale() {
+
+		PersistentEJBHomeFactory factory = new PersistentEJBHomeFactory(file, jndi);
+		factory.lookupRemote("ejb/Catalog", StubRemoteHome.class);
+		factory.flush();
+		// the handle still restores the old home, but its server is down
+		((StubRemoteHome) SERVER.get("ejb/Catalog")).down = true;
+		SERVER.put("down", SERVER.get("ejb/Catalog"));
+		SERVER.put("ejb/Catalog", new StubRemoteHome("ejb/Catalog2"));
+
+		PersistentEJBHomeFactory restarted = new PersistentEJBHomeFactory(file, jndi);
+		assertSame(SERVER.get("ejb/Catalog"), restarted.lookupRemote("ejb/Catalog", StubRemoteHome.class));
+		assertEquals(1, restarted.getStatistics().getStaleHandleCount());
+	}
+
+
+	public void testChangesAreWrittenTogether() {
+
+		PersistentEJBHomeFactory factory = new PersistentEJBHomeFactory(file, jndi);
+		factory.setWriteDelay(60000);
+		factory.lookupRemote("ejb/Catalog", StubRemoteHome.class);
+		factory.lookupRemote("ejb/Orders", StubRemoteHome.class);
+		assertFalse(file.exists());
+
+		factory.flush();
+		factory.flush();
+		assertEquals(2, new PersistentEJBHomeFactory(file, jndi).getStatistics().getHandleCount());
+		assertEquals(1, factory.getStatistics().getWriteCount());
+		assertEquals(0, factory.getStatistics().getWriteFailureCount());
+	}
+
+
+	public void testInvalidatedHandlesAreLookedUp() {
+
+		PersistentEJBHomeFactory factory = new PersistentEJBHomeFactory(file, jndi);
+		factory.lookupRemote("ejb/Catalog", StubRemoteHome.class);
+		factory.invalidate("ejb/Catalog");
+		factory.flush();
+		assertEquals(0, new PersistentEJBHomeFactory(file, jndi).getStatistics().getHandleCount());
+		factory.lookupRemote("ejb/Catalog", StubRemoteHome.class);
+		assertEquals(2, jndi.lookups);
+	}
+
+
+	public void testCorruptedFileIsIgnored() throws Exception {
+
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] { 1, 2, 3, 4, 5 });
+		out.close();
+
+		PersistentEJBHomeFactory factory = new PersistentEJBHomeFactory(file, jndi);
+		assertEquals(0, factory.getStatistics().getHandleCount());
+		factory.lookupRemote("ejb/Catalog", StubRemoteHome.class);
+		factory.flush();
+		assertEquals(1, new PersistentEJBHomeFactory(file, jndi).getStatistics().getHandleCount());
+	}
+
+
+	public static class StubRemoteHome implements EJBHome {
+		private final String name;
+		volatile boolean down;
+		StubRemoteHome(String name) { this.name = name; }
+		public EJBMetaData getEJBMetaData() throws RemoteException {
+			if (down) throw new RemoteException("The server is down");
+			return null;
+		}
+		public HomeHandle getHomeHandle() { return new StubHomeHandle(name); }
+		public void remove(Handle handle) { }
+		public void remove(Object primaryKey) { }
+	}
+
+	static class StubHomeHandle implements HomeHandle, Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String name;
+		StubHomeHandle(String name) { this.name = name; }
+		public EJBHome getEJBHome() throws RemoteException {
+			for (Iterator i = SERVER.values().iterator(); i.hasNext(); ) {
+				StubRemoteHome home = (StubRemoteHome) i.next();
+				if (home.name.equals(name))
+					return home;
+			}
+			throw new RemoteException("No home " + name);
+		}
+	}
+
+	static class CountingHomeFactory implements EJBHomeFactory {
+		int lookups;
+		public EJBHome lookupRemote(String jndiName, Class homeInterface) {
+			lookups++;
+			return (EJBHome) SERVER.get(jndiName);
+		}
+		public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
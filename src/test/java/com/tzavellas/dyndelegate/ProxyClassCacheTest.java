@@ -0,0 +1,37 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import junit.framework.TestCase;
+
+public class ProxyClassCacheTest extends TestCase {
+
+	private ClassLoader loader = getClass().getClassLoader();
+
+	public void testConstructorIsCachedPerLoaderAndInterface() {
+		
+		Constructor c1 = ProxyClassCache.getConstructor(loader, Runnable.class);
+		Constructor c2 = ProxyClassCache.getConstructor(loader, Runnable.class);
+		assertSame(c1, c2);
+		
+		Constructor other = ProxyClassCache.getConstructor(loader, Comparable.class);
+		assertNotSame(c1, other);
+	}
+	
+	public void testNewInstance() {
+		
+		InvocationHandler handler = new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return null;
+			}
+		};
+		Constructor constructor = ProxyClassCache.getConstructor(loader, Runnable.class);
+		Object proxy = ProxyClassCache.newInstance(constructor, handler);
+		
+		assertTrue(proxy instanceof Runnable);
+		assertSame(handler, Proxy.getInvocationHandler(proxy));
+	}
+}
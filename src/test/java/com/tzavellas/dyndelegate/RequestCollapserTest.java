@@ -0,0 +1,121 @@
+package com.tzavellas.dyndelegate;
+
+import junit.framework.TestCase;
+
+public class RequestCollapserTest extends TestCase {
+
+	private SlowLookupBean bean = new SlowLookupBean();
+	private RequestCollapser collapser = new RequestCollapser();
+	private ResultCacheTest.Lookup delegate;
+
+	protected void setUp() {
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(bean));
+		factory.addInterceptor(collapser);
+		collapser.addMethod(ResultCacheTest.Lookup.class, "find");
+		delegate = (ResultCacheTest.Lookup) factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+	}
+
+
+	public void testConcurrentIdenticalCallsShareOneInvocation() throws Exception {
+
+		Caller[] callers = startCallers("a", 8);
+		for (int i = 0; i < callers.length; i++) {
+			callers[i].join();
+			assertEquals("a", callers[i].result);
+		}
+		assertEquals(1, bean.calls);
+		assertEquals(7, collapser.getCollapsedCount());
+	}
+
+
+	public void testDifferentArgumentsAreNotCollapsed() throws Exception {
+
+		Caller[] a = startCallers("a", 1);
+		Caller[] b = startCallers("b", 1);
+		a[0].join();
+		b[0].join();
+		assertEquals(2, bean.calls);
+	}
+
+
+	public void testExceptionIsShared() throws Exception {
+
+		Caller[] callers = startCallers("fail", 4);
+		for (int i = 0; i < callers.length; i++) {
+			callers[i].join();
+			assertTrue(callers[i].failure instanceof IllegalStateException);
+		}
+		assertEquals(1, bean.calls);
+	}
+
+
+	public void testOtherMethodsAreNotCollapsed() throws Exception {
+
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					delegate.update("a");
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		assertEquals(4, bean.calls);
+	}
+
+
+	public void testSequentialCallsAreNotCollapsed() {
+
+		delegate.find("a");
+		delegate.find("a");
+		assertEquals(2, bean.calls);
+	}
+
+
+	private Caller[] startCallers(String key, int count) {
+		Caller[] callers = new Caller[count];
+		for (int i = 0; i < count; i++) {
+			callers[i] = new Caller(key);
+			callers[i].start();
+		}
+		return callers;
+	}
+
+
+	private class Caller extends Thread {
+		final String key;
+		volatile String result;
+		volatile Throwable failure;
+		Caller(String key) { this.key = key; }
+		public void run() {
+			try {
+				result = delegate.find(key);
+			} catch (Throwable t) {
+				failure = t;
+			}
+		}
+	}
+
+	public static class SlowLookupBean implements ResultCacheTest.Lookup {
+		int calls;
+		public String find(String key) {
+			synchronized (this) { calls++; }
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) { }
+			if ("fail".equals(key)) throw new IllegalStateException();
+			return key;
+		}
+		public String[] findAll(String[] keys) { return keys; }
+		public void update(String key) {
+			synchronized (this) { calls++; }
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) { }
+		}
+	}
+}
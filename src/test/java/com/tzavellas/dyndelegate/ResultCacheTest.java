@@ -0,0 +1,132 @@
+package com.tzavellas.dyndelegate;
+
+import junit.framework.TestCase;
+
+public class ResultCacheTest extends TestCase {
+
+	private CountingLookupBean bean = new CountingLookupBean();
+	private ResultCache cache = new ResultCache();
+	private Lookup delegate;
+
+	protected void setUp() throws Exception {
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(bean));
+		factory.setGenerateDelegateClasses(true);
+		factory.addInterceptor(cache);
+		cache.addMethod(Lookup.class, "find");
+		cache.addMethod(Lookup.class.getMethod("findAll", new Class[] { String[].class }));
+		delegate = (Lookup) factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, Lookup.class);
+	}
+
+
+	public void testResultsAreCachedPerArguments() {
+
+		assertEquals("a1", delegate.find("a"));
+		assertEquals("a1", delegate.find("a"));
+		assertEquals("b2", delegate.find("b"));
+		assertEquals(2, bean.calls);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+
+	public void testArrayArgumentsAreComparedByContents() {
+
+		delegate.findAll(new String[] { "a", "b" });
+		delegate.findAll(new String[] { "a", "b" });
+		assertEquals(1, bean.calls);
+	}
+
+
+	public void testNullResultsAreCached() {
+
+		assertNull(delegate.find(null));
+		assertNull(delegate.find(null));
+		assertEquals(1, bean.calls);
+	}
+
+
+	public void testOtherMethodsAreNotCached() {
+
+		delegate.update("a");
+		delegate.update("a");
+		assertEquals(2, bean.calls);
+		assertEquals(0, cache.size());
+	}
+
+
+	public void testExceptionsAreNotCached() {
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				delegate.find("fail");
+				fail("Should throw the exception of the bean");
+			} catch (IllegalStateException expected) { }
+		}
+		assertEquals(2, bean.calls);
+	}
+
+
+	public void testResultsExpire() throws Exception {
+
+		cache.setTimeToLive(10);
+		delegate.find("a");
+		Thread.sleep(20);
+		delegate.find("a");
+		assertEquals(2, bean.calls);
+	}
+
+
+	public void testLeastRecentlyUsedResultIsEvicted() {
+
+		cache.setMaxSize(2);
+		delegate.find("a");
+		delegate.find("b");
+		delegate.find("a");
+		delegate.find("c");
+		assertEquals(2, cache.size());
+		delegate.find("a");
+		assertEquals(3, bean.calls);
+		delegate.find("b");
+		assertEquals(4, bean.calls);
+	}
+
+
+	public void testInvalidate() throws Exception {
+
+		delegate.find("a");
+		delegate.findAll(new String[] { "a" });
+		cache.invalidate(Lookup.class.getMethod("find", new Class[] { String.class }));
+		assertEquals(1, cache.size());
+		delegate.find("a");
+		assertEquals(3, bean.calls);
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+
+
+
+	public static interface Lookup {
+		String find(String key);
+		String[] findAll(String[] keys);
+		void update(String key);
+	}
+
+	public static class CountingLookupBean implements Lookup {
+		int calls;
+		public String find(String key) {
+			calls++;
+			if ("fail".equals(key)) throw new IllegalStateException();
+			return (key == null) ? null : key + calls;
+		}
+		public String[] findAll(String[] keys) {
+			calls++;
+			return keys;
+		}
+		public void update(String key) {
+			calls++;
+		}
+	}
+}
@@ -15,4 +15,16 @@ public class RuntimeExceptionWrapperTest extends TestCase {
 		
 		assertSame(cause, converted.getCause());
 	}
+	
+	public void testLightweightWrappers() {
+		
+		RuntimeExceptionWrapper converter = new RuntimeExceptionWrapper();
+		converter.setLightweightWrappers(true);
+		Throwable cause = new Throwable();
+		Throwable converted = converter.convert(cause);
+		
+		assertTrue(converted instanceof LightweightRuntimeException);
+		assertSame(cause, converted.getCause());
+		assertEquals(cause.getStackTrace()[0], converted.getStackTrace()[0]);
+	}
 }
@@ -0,0 +1,79 @@
+package com.tzavellas.dyndelegate;
+
+import junit.framework.TestCase;
+
+public class SharedDelegateTest extends TestCase {
+
+	private LazyDelegateTest.CountingHomeFactory homes = new LazyDelegateTest.CountingHomeFactory();
+	private DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(), homes);
+
+
+	public void testSameDelegateIsReturned() {
+
+		Object d1 = getShared("ejb/Lookup");
+		assertSame(d1, getShared("ejb/Lookup"));
+		assertNotSame(d1, getShared("ejb/Other"));
+		assertEquals(2, homes.lookups);
+	}
+
+
+	public void testConcurrentRequestsCreateOneDelegate() throws Exception {
+
+		homes.delay = 100;
+		final Object[] delegates = new Object[8];
+		Thread[] threads = new Thread[delegates.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					delegates[index] = getShared("ejb/Lookup");
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++)
+			threads[i].join();
+		assertEquals(1, homes.lookups);
+		for (int i = 1; i < delegates.length; i++)
+			assertSame(delegates[0], delegates[i]);
+	}
+
+
+	public void testRemovedDelegateIsReplaced() {
+
+		Object d1 = getShared("ejb/Lookup");
+		factory.remove(d1);
+		assertNotSame(d1, getShared("ejb/Lookup"));
+	}
+
+
+	public void testEviction() {
+
+		Object d1 = getShared("ejb/Lookup");
+		Object other = getShared("ejb/Other");
+		factory.evictSharedDelegates("ejb/Lookup");
+		assertNotSame(d1, getShared("ejb/Lookup"));
+		assertSame(other, getShared("ejb/Other"));
+
+		factory.clearSharedDelegates();
+		assertNotSame(other, getShared("ejb/Other"));
+	}
+
+
+	public void testFailedCreationIsNotRegistered() {
+
+		homes.failure = new RuntimeException("Error in JNDI lookup");
+		try {
+			getShared("ejb/Lookup");
+			fail("Should throw the exception of the lookup");
+		} catch (RuntimeException expected) { }
+		homes.failure = null;
+		assertNotNull(getShared("ejb/Lookup"));
+	}
+
+
+	private Object getShared(String jndiName) {
+		return factory.getSharedLocalDelegate(jndiName,
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+	}
+}
@@ -0,0 +1,64 @@
+package com.tzavellas.dyndelegate;
+
+import junit.framework.TestCase;
+
+public class SimpleTaskExecutorTest extends TestCase {
+
+	private SimpleTaskExecutor executor = new SimpleTaskExecutor("test", 32);
+	private int running;
+	private int maxRunning;
+	private int completed;
+
+	protected void tearDown() {
+		executor.shutdown();
+	}
+
+
+	public void testBurstAfterWorkersGoIdleRunsInParallel() throws Exception {
+
+		for (int i = 0; i < 4; i++)
+			executor.execute(task(0));
+		awaitCompleted(4);
+		Thread.sleep(100);
+		assertEquals(4, executor.getThreadCount());
+
+		long start = System.currentTimeMillis();
+		synchronized (this) {
+			maxRunning = 0;
+		}
+		for (int i = 0; i < 8; i++)
+			executor.execute(task(300));
+		awaitCompleted(12);
+
+		assertTrue(System.currentTimeMillis() - start < 550);
+		synchronized (this) {
+			assertEquals(8, maxRunning);
+		}
+		assertEquals(8, executor.getThreadCount());
+	}
+
+
+	private Runnable task(final long duration) {
+		return new Runnable() {
+			public void run() {
+				synchronized (SimpleTaskExecutorTest.this) {
+					running++;
+					maxRunning = Math.max(maxRunning, running);
+				}
+				try {
+					Thread.sleep(duration);
+				} catch (InterruptedException e) { }
+				synchronized (SimpleTaskExecutorTest.this) {
+					running--;
+					completed++;
+					SimpleTaskExecutorTest.this.notifyAll();
+				}
+			}
+		};
+	}
+
+	private synchronized void awaitCompleted(int count) throws InterruptedException {
+		while (completed < count)
+			wait();
+	}
+}
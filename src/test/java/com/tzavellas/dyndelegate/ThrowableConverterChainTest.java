@@ -0,0 +1,59 @@
+package com.tzavellas.dyndelegate;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+import junit.framework.TestCase;
+
+public class ThrowableConverterChainTest extends TestCase {
+
+	private ThrowableConverterChain chain = new ThrowableConverterChain();
+
+
+	public void testFirstMatchingConverterWins() {
+
+		final RuntimeException first = new IllegalStateException();
+		chain.add(new EJBExceptionConverter())
+			.add(IOException.class, new ConstantConverter(first))
+			.add(new RuntimeExceptionWrapper());
+
+		RemoteException remote = new RemoteException("");
+		assertSame(remote, chain.convert(remote).getCause());
+		assertSame(first, chain.convert(new IOException()));
+		assertTrue(chain.convert(new Exception()).getCause() instanceof Exception);
+	}
+
+
+	public void testConvertersAreSelectedByType() {
+
+		chain.add(IOException.class, new RuntimeExceptionWrapper());
+
+		Exception other = new Exception();
+		assertSame(other, chain.convert(other));
+		assertTrue(chain.convert(new RemoteException("")) instanceof RuntimeException);
+	}
+
+
+	public void testConvertersAddedLaterApply() {
+
+		Exception e = new Exception();
+		assertSame(e, chain.convert(e));
+		chain.add(new RuntimeExceptionWrapper());
+		assertNotSame(e, chain.convert(e));
+	}
+
+
+	public void testOnlyThrowableTypesCanBeRegistered() {
+		try {
+			chain.add(String.class, new RuntimeExceptionWrapper());
+			fail("Should not accept a non Throwable type");
+		} catch (IllegalArgumentException expected) { }
+	}
+
+
+	private static class ConstantConverter implements ThrowableConverter {
+		private final Throwable result;
+		ConstantConverter(Throwable result) { this.result = result; }
+		public Throwable convert(Throwable ex) { return result; }
+	}
+}
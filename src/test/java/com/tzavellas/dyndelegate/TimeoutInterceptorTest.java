@@ -0,0 +1,194 @@
+package com.tzavellas.dyndelegate;
+
+import java.lang.reflect.Method;
+
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+import javax.ejb.EJBMetaData;
+import javax.ejb.Handle;
+import javax.ejb.HomeHandle;
+
+import junit.framework.TestCase;
+
+public class TimeoutInterceptorTest extends TestCase {
+
+	private static final String FIND_KEY = "ejb/Lookup#find(java.lang.String)";
+
+	private SimpleTaskExecutor executor = new SimpleTaskExecutor("test", 8);
+	private TimeoutInterceptor timeouts = new TimeoutInterceptor(executor);
+	private RequestCollapserTest.SlowLookupBean bean = new RequestCollapserTest.SlowLookupBean();
+	private DelegateMetrics metrics = new DelegateMetrics();
+	private ResultCacheTest.Lookup delegate;
+	private Method find;
+
+	protected void setUp() throws Exception {
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new RemoteStubHomeFactory(bean));
+		factory.addInterceptor(timeouts);
+		factory.addInvocationListener(metrics);
+		delegate = (ResultCacheTest.Lookup) factory.createRemoteDelegate("ejb/Lookup",
+				RemoteStubHome.class, ResultCacheTest.Lookup.class);
+		find = ResultCacheTest.Lookup.class.getMethod("find", new Class[] { String.class });
+	}
+
+	protected void tearDown() {
+		executor.shutdown();
+	}
+
+
+	public void testInvocationsWithoutTimeoutProceed() {
+
+		assertEquals("a", delegate.find("a"));
+		assertEquals(0, timeouts.getCallCount());
+	}
+
+
+	public void testSlowInvocationsTimeOut() {
+
+		timeouts.setTimeout(find, 50);
+		long start = System.currentTimeMillis();
+		try {
+			delegate.find("a");
+			fail("Should time out");
+		} catch (DelegateTimeoutException expected) { }
+		assertTrue(System.currentTimeMillis() - start < 150);
+
+		assertEquals(1, timeouts.getTimeoutCount());
+		assertEquals(1, metrics.getTimeoutCount(FIND_KEY));
+		assertEquals(1, metrics.getTotalTimeoutCount());
+	}
+
+
+	public void testMethodTimeoutOverridesTheDelegateTimeout() {
+
+		timeouts.setTimeout("ejb/Lookup", 50);
+		timeouts.setTimeout(find, 1000);
+		assertEquals("a", delegate.find("a"));
+		assertEquals(1, timeouts.getCallCount());
+		assertEquals(0, timeouts.getTimeoutCount());
+	}
+
+
+	public void testExceptionsOfTheInvocationAreThrown() {
+
+		timeouts.setDefaultTimeout(1000);
+		try {
+			delegate.find("fail");
+			fail("Should throw the exception of the bean");
+		} catch (IllegalStateException expected) { }
+	}
+
+
+	public void testThreadDeadline() {
+
+		Deadline deadline = Deadline.begin(50);
+		try {
+			delegate.find("a");
+			fail("Should time out at the deadline");
+		} catch (DelegateTimeoutException expected) {
+		} finally {
+			deadline.end();
+		}
+		assertNull(Deadline.current());
+		assertEquals("a", delegate.find("a"));
+	}
+
+
+	public void testExpiredDeadlineFailsWithoutInvokingTheEJB() {
+
+		Deadline deadline = Deadline.begin(0);
+		try {
+			delegate.find("a");
+			fail("The deadline has expired");
+		} catch (DelegateTimeoutException expected) {
+		} finally {
+			deadline.end();
+		}
+		assertEquals(0, bean.calls);
+	}
+
+
+	public void testNestedDeadlinesCannotExtendTheEnclosingDeadline() {
+
+		Deadline outer = Deadline.begin(1000);
+		Deadline inner = Deadline.begin(5000);
+		assertTrue(inner.getExpirationTime() <= outer.getExpirationTime());
+		try {
+			outer.end();
+			fail("Only the current deadline can end");
+		} catch (IllegalStateException expected) { }
+		inner.end();
+		assertSame(outer, Deadline.current());
+		outer.end();
+	}
+
+
+	public void testInvocationsInheritTheDeadline() throws Exception {
+
+		final Deadline[] seen = new Deadline[1];
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new RemoteStubHomeFactory(new ResultCacheTest.CountingLookupBean() {
+					public String find(String key) {
+						seen[0] = Deadline.current();
+						return key;
+					}
+				}));
+		factory.addInterceptor(timeouts);
+		ResultCacheTest.Lookup other = (ResultCacheTest.Lookup) factory.createRemoteDelegate("ejb/Lookup",
+				RemoteStubHome.class, ResultCacheTest.Lookup.class);
+
+		Deadline deadline = Deadline.begin(1000);
+		try {
+			other.find("a");
+		} finally {
+			deadline.end();
+		}
+		assertEquals(deadline.getExpirationTime(), seen[0].getExpirationTime());
+	}
+
+
+	public void testLocalInvocationsProceedInTheCallingThread() {
+
+		final Thread[] seen = new Thread[1];
+		DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+				new DelegateClassGeneratorTest.StubHomeFactory(new RequestCollapserTest.SlowLookupBean() {
+					public String find(String key) {
+						seen[0] = Thread.currentThread();
+						return super.find(key);
+					}
+				}));
+		factory.addInterceptor(timeouts);
+		ResultCacheTest.Lookup local = (ResultCacheTest.Lookup) factory.createLocalDelegate("ejb/Lookup",
+				DelegateClassGeneratorTest.StubHome.class, ResultCacheTest.Lookup.class);
+
+		timeouts.setTimeout(find, 50);
+		try {
+			local.find("a");
+			fail("Should fail after the deadline");
+		} catch (DelegateTimeoutException expected) { }
+		assertSame(Thread.currentThread(), seen[0]);
+		assertEquals(1, timeouts.getTimeoutCount());
+	}
+
+
+	public static class RemoteStubHome implements EJBHome {
+		private Object bean;
+		public RemoteStubHome(Object bean) { this.bean = bean; }
+		public Object create() { return bean; }
+		public EJBMetaData getEJBMetaData() { throw new UnsupportedOperationException(); }
+		public HomeHandle getHomeHandle() { throw new UnsupportedOperationException(); }
+		public void remove(Handle handle) { }
+		public void remove(Object primaryKey) { }
+	}
+
+	static class RemoteStubHomeFactory implements EJBHomeFactory {
+		private Object bean;
+		RemoteStubHomeFactory(Object bean) { this.bean = bean; }
+		public EJBHome lookupRemote(String jndiName, Class homeInterface) {
+			return new RemoteStubHome(bean);
+		}
+		public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
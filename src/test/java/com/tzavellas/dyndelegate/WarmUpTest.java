@@ -0,0 +1,100 @@
+package com.tzavellas.dyndelegate;
+
+import javax.ejb.EJBHome;
+import javax.ejb.EJBLocalHome;
+
+import junit.framework.TestCase;
+
+public class WarmUpTest extends TestCase {
+
+	private LoadBalancingTest.NamedHomeFactory homes = new LoadBalancingTest.NamedHomeFactory();
+	private SimpleTaskExecutor executor = new SimpleTaskExecutor("test", 8);
+	private DynamicDelegateFactory factory = new DynamicDelegateFactory(new EJBExceptionConverter(),
+			new SlowHomeFactory(homes));
+
+	protected void setUp() {
+		factory.setTaskExecutor(executor);
+		homes.bind("ejb/A");
+		homes.bind("ejb/B");
+		homes.bind("ejb/C");
+		homes.bind("ejb/D");
+	}
+
+	protected void tearDown() {
+		executor.shutdown();
+	}
+
+
+	public void testDelegatesAreCreatedInParallel() {
+
+		long start = System.currentTimeMillis();
+		WarmUpResult[] results = factory.warmUp(new WarmUpEntry[] {
+				entry("ejb/A"), entry("ejb/B"), entry("ejb/C"), entry("ejb/D") }, 4);
+		assertTrue(System.currentTimeMillis() - start < 350);
+
+		assertEquals(4, results.length);
+		for (int i = 0; i < results.length; i++) {
+			assertTrue(results[i].isSuccessful());
+			assertTrue(results[i].getElapsedTime() >= 90);
+		}
+		assertEquals("ejb/C", ((ResultCacheTest.Lookup) results[2].getDelegate()).find("a"));
+	}
+
+
+	public void testParallelismIsBounded() {
+
+		long start = System.currentTimeMillis();
+		factory.warmUp(new WarmUpEntry[] {
+				entry("ejb/A"), entry("ejb/B"), entry("ejb/C"), entry("ejb/D") }, 2);
+		assertTrue(System.currentTimeMillis() - start >= 190);
+	}
+
+
+	public void testFailuresAreReported() {
+
+		WarmUpResult[] results = factory.warmUp(new WarmUpEntry[] {
+				entry("ejb/A"), entry("ejb/Missing") }, 2);
+		assertTrue(results[0].isSuccessful());
+		assertFalse(results[1].isSuccessful());
+		assertNull(results[1].getDelegate());
+		assertTrue(results[1].getFailure() instanceof RuntimeException);
+		assertSame("ejb/Missing", results[1].getEntry().getJndiName());
+	}
+
+
+	public void testErrorsAreThrownToTheCaller() {
+
+		try {
+			factory.warmUp(new WarmUpEntry[] { entry("ejb/Broken"), entry("ejb/A") }, 1);
+			fail("Should throw the error of the lookup");
+		} catch (NoClassDefFoundError expected) { }
+	}
+
+
+	public void testEmptyManifest() {
+		assertEquals(0, factory.warmUp(new WarmUpEntry[0], 4).length);
+	}
+
+
+	private static WarmUpEntry entry(String jndiName) {
+		return new WarmUpEntry(jndiName, DelegateClassGeneratorTest.StubHome.class,
+				ResultCacheTest.Lookup.class, false);
+	}
+
+
+	static class SlowHomeFactory implements EJBHomeFactory {
+		private final EJBHomeFactory target;
+		SlowHomeFactory(EJBHomeFactory target) { this.target = target; }
+		public EJBLocalHome lookupLocal(String jndiName, Class homeInterface) {
+			if (jndiName.equals("ejb/Broken"))
+				throw new NoClassDefFoundError("BrokenHome");
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) { }
+			return target.lookupLocal(jndiName, homeInterface);
+		}
+		public EJBHome lookupRemote(String jndiName, Class homeInterface) {
+			return target.lookupRemote(jndiName, homeInterface);
+		}
+	}
+}